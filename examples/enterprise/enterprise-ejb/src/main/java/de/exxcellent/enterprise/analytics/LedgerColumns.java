@@ -0,0 +1,241 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.analytics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read access to a file written by {@link LedgerColumnsWriter}. Every row group
+ * is mapped read-only on request and its columns are exposed as buffer views on
+ * the mapping, so a scan reads the values straight from the page cache without
+ * copying them or creating objects per row.
+ *
+ * <p>
+ * The groups may be scanned by several threads, each on groups of its own.
+ *
+ * @author ostauss
+ */
+public final class LedgerColumns {
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final List<String> currencies;
+
+    private final long[] groupOffsets;
+
+    private final int[] groupRows;
+
+    private final long rowCount;
+
+    private LedgerColumns(File file, RandomAccessFile raf, List<String> currencies, long[] groupOffsets, int[] groupRows) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.currencies = currencies;
+        this.groupOffsets = groupOffsets;
+        this.groupRows = groupRows;
+        long rows = 0L;
+        for (int count : groupRows) {
+            rows += count;
+        }
+        this.rowCount = rows;
+    }
+
+    /**
+     * Reads the footer of a file.
+     *
+     * @throws IOException the file is no complete columns file
+     */
+    public static LedgerColumns open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length < 8 + 4 + 4 + 8) {
+                throw new IOException("File " + file + " is no ledger columns file.");
+            }
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = read(channel, 0, 8);
+            long footerOffset = read(channel, length - 8, 8).getLong();
+            if (header.getInt() != LedgerColumnsWriter.MAGIC || header.getInt() != LedgerColumnsWriter.VERSION
+                    || footerOffset < 8 || footerOffset > length - 8 - 8) {
+                throw new IOException("File " + file + " is no ledger columns file of version " + LedgerColumnsWriter.VERSION + ".");
+            }
+            ByteBuffer footer = read(channel, footerOffset, (int) (length - 8 - footerOffset));
+            List<String> currencies = new ArrayList<String>();
+            for (int i = footer.getInt(); i > 0; i--) {
+                byte[] code = new byte[footer.get()];
+                footer.get(code);
+                currencies.add(new String(code, LedgerColumnsWriter.ASCII));
+            }
+            int groups = footer.getInt();
+            long[] offsets = new long[groups];
+            int[] rows = new int[groups];
+            for (int i = 0; i < groups; i++) {
+                offsets[i] = footer.getLong();
+                rows[i] = (int) footer.getLong();
+            }
+            return new LedgerColumns(file, raf, Collections.unmodifiableList(currencies), offsets, rows);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw new IOException("File " + file + " is corrupt: " + e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the currency codes, indexed by the values of the currency column
+     */
+    public List<String> getCurrencies() {
+        return currencies;
+    }
+
+    public int getGroupCount() {
+        return groupRows.length;
+    }
+
+    /**
+     * Maps a row group.
+     */
+    public Group group(int index) throws IOException {
+        int rows = groupRows[index];
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, groupOffsets[index], LedgerColumnsWriter.groupSize(rows));
+        mapped.order(ByteOrder.nativeOrder());
+        return new Group(mapped, rows);
+    }
+
+    /**
+     * Sums up all rows, see {@link Turnover}.
+     */
+    public Turnover turnover() throws IOException {
+        Turnover.Aggregation aggregation = new Turnover.Aggregation(currencies.size());
+        for (int i = 0; i < groupRows.length; i++) {
+            aggregation.add(group(i));
+        }
+        return aggregation.toTurnover(currencies);
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The columns of one mapped row group. The views share the mapping; index
+     * them with absolute gets from 0 to {@link #getRows()}.
+     */
+    public static final class Group {
+
+        private final int rows;
+
+        private final LongBuffer accountIds;
+
+        private final LongBuffer units;
+
+        private final ShortBuffer currencies;
+
+        private final ByteBuffer entryTypes;
+
+        private final ByteBuffer scales;
+
+        private final ByteBuffer accountStates;
+
+        Group(ByteBuffer mapped, int rows) {
+            this.rows = rows;
+            int longs = LedgerColumnsWriter.padded(rows * 8);
+            int shorts = LedgerColumnsWriter.padded(rows * 2);
+            int bytes = LedgerColumnsWriter.padded(rows);
+            this.accountIds = column(mapped, 0, rows * 8).asLongBuffer();
+            this.units = column(mapped, longs, rows * 8).asLongBuffer();
+            this.currencies = column(mapped, 2 * longs, rows * 2).asShortBuffer();
+            this.entryTypes = column(mapped, 2 * longs + shorts, rows);
+            this.scales = column(mapped, 2 * longs + shorts + bytes, rows);
+            this.accountStates = column(mapped, 2 * longs + shorts + 2 * bytes, rows);
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public LongBuffer getAccountIds() {
+            return accountIds;
+        }
+
+        /**
+         * @return the unscaled amounts
+         */
+        public LongBuffer getUnits() {
+            return units;
+        }
+
+        /**
+         * @return the currency ordinals, see {@link LedgerColumns#getCurrencies()}
+         */
+        public ShortBuffer getCurrencies() {
+            return currencies;
+        }
+
+        /**
+         * @return the ordinals of {@link de.exxcellent.enterprise.model.EntryType}
+         */
+        public ByteBuffer getEntryTypes() {
+            return entryTypes;
+        }
+
+        public ByteBuffer getScales() {
+            return scales;
+        }
+
+        /**
+         * @return the ordinals of {@link de.exxcellent.enterprise.model.AccountState},
+         *         -1 for accounts without state
+         */
+        public ByteBuffer getAccountStates() {
+            return accountStates;
+        }
+
+        private static ByteBuffer column(ByteBuffer mapped, int offset, int size) {
+            ByteBuffer column = mapped.duplicate();
+            column.position(offset);
+            column.limit(offset + size);
+            return column.slice().order(ByteOrder.nativeOrder());
+        }
+    }
+}
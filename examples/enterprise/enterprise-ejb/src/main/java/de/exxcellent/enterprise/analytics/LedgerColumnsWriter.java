@@ -0,0 +1,269 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.analytics;
+
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes entries into the columnar file format read by {@link LedgerColumns}.
+ * Rows are collected into row groups of up to {@link #DEFAULT_ROWS_PER_GROUP}
+ * rows; a full group is written column by column, every column padded to eight
+ * bytes:
+ *
+ * <pre>
+ * long[]  account id
+ * long[]  unscaled amount
+ * short[] currency ordinal
+ * byte[]  entry type ordinal
+ * byte[]  scale
+ * byte[]  account state ordinal, -1 for none
+ * </pre>
+ *
+ * The footer written by {@link #close()} holds the currency codes, in the order
+ * of their ordinals, and the offset and row count of every group; the last eight
+ * bytes of the file are the offset of the footer. All values are in native byte
+ * order, so a scan reads them without swapping.
+ *
+ * <p>
+ * Not thread safe.
+ *
+ * @author ostauss
+ */
+public class LedgerColumnsWriter {
+
+    static final int MAGIC = 0x4C434F4C;
+
+    static final int VERSION = 1;
+
+    /**
+     * Largest scale of an amount, larger scales are reduced if exact.
+     */
+    static final int MAX_SCALE = 18;
+
+    static final byte NO_STATE = -1;
+
+    static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Rows of one group, about 21 MB mapped at once by a scan.
+     */
+    public static final int DEFAULT_ROWS_PER_GROUP = 1 << 20;
+
+    private final File file;
+
+    private final FileOutputStream out;
+
+    private final FileChannel channel;
+
+    private final long[] accountIds;
+
+    private final long[] units;
+
+    private final short[] currencies;
+
+    private final byte[] entryTypes;
+
+    private final byte[] scales;
+
+    private final byte[] states;
+
+    private int rows = 0;
+
+    private final Map<String, Short> currencyOrdinals = new HashMap<String, Short>();
+
+    private final List<String> currencyCodes = new ArrayList<String>();
+
+    private final List<long[]> groups = new ArrayList<long[]>();
+
+    private long written = 0L;
+
+    /**
+     * Reused for every group.
+     */
+    private ByteBuffer buffer = null;
+
+    private boolean closed = false;
+
+    public LedgerColumnsWriter(File file) throws IOException {
+        this(file, DEFAULT_ROWS_PER_GROUP);
+    }
+
+    public LedgerColumnsWriter(File file, int rowsPerGroup) throws IOException {
+        if (rowsPerGroup < 1) {
+            throw new IllegalArgumentException("rowsPerGroup must be positive, was " + rowsPerGroup);
+        }
+        this.file = file;
+        this.accountIds = new long[rowsPerGroup];
+        this.units = new long[rowsPerGroup];
+        this.currencies = new short[rowsPerGroup];
+        this.entryTypes = new byte[rowsPerGroup];
+        this.scales = new byte[rowsPerGroup];
+        this.states = new byte[rowsPerGroup];
+        this.out = new FileOutputStream(file);
+        this.channel = out.getChannel();
+        ByteBuffer header = allocate(8);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        write(header);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of rows added
+     */
+    public long getRowCount() {
+        return written + rows;
+    }
+
+    /**
+     * Adds one entry.
+     *
+     * @param accountState state of the account, may be <code>null</code>
+     * @throws IllegalArgumentException the amount does not fit into an unscaled
+     *         <code>long</code> with a scale up to {@link #MAX_SCALE}
+     */
+    public void add(long accountId, EntryType entryType, BigDecimal amount, String currency, AccountState accountState) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        BigDecimal value = amount;
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        } else if (value.scale() > MAX_SCALE) {
+            value = value.stripTrailingZeros();
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (value.scale() > MAX_SCALE || unscaled.bitLength() > 63) {
+            throw new IllegalArgumentException("Amount " + amount + " does not fit into the columns.");
+        }
+        accountIds[rows] = accountId;
+        units[rows] = unscaled.longValue();
+        currencies[rows] = ordinalOf(currency);
+        entryTypes[rows] = (byte) entryType.ordinal();
+        scales[rows] = (byte) value.scale();
+        states[rows] = accountState != null ? (byte) accountState.ordinal() : NO_STATE;
+        if (++rows == accountIds.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the last group and the footer.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            long footerOffset = channel.position();
+            int size = 4 + 4 + groups.size() * 16 + 8;
+            for (String code : currencyCodes) {
+                size += 1 + code.length();
+            }
+            ByteBuffer footer = allocate(size);
+            footer.putInt(currencyCodes.size());
+            for (String code : currencyCodes) {
+                byte[] bytes = code.getBytes(ASCII);
+                footer.put((byte) bytes.length);
+                footer.put(bytes);
+            }
+            footer.putInt(groups.size());
+            for (long[] group : groups) {
+                footer.putLong(group[0]);
+                footer.putLong(group[1]);
+            }
+            footer.putLong(footerOffset);
+            write(footer);
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    private short ordinalOf(String currency) {
+        Short ordinal = currencyOrdinals.get(currency);
+        if (ordinal == null) {
+            if (currencyCodes.size() == Short.MAX_VALUE || currency.length() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Currency " + currency + " cannot be added to the columns.");
+            }
+            ordinal = Short.valueOf((short) currencyCodes.size());
+            currencyOrdinals.put(currency, ordinal);
+            currencyCodes.add(currency);
+        }
+        return ordinal.shortValue();
+    }
+
+    /**
+     * Writes the collected rows as one group.
+     */
+    private void flush() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = allocate(groupSize(accountIds.length));
+        }
+        ByteBuffer group = buffer;
+        group.clear();
+        group.asLongBuffer().put(accountIds, 0, rows);
+        group.position(padded(rows * 8));
+        group.asLongBuffer().put(units, 0, rows);
+        group.position(group.position() + padded(rows * 8));
+        group.asShortBuffer().put(currencies, 0, rows);
+        group.position(group.position() + padded(rows * 2));
+        group.put(entryTypes, 0, rows);
+        group.position(group.position() + padded(rows) - rows);
+        group.put(scales, 0, rows);
+        group.position(group.position() + padded(rows) - rows);
+        group.put(states, 0, rows);
+        group.position(groupSize(rows));
+        groups.add(new long[] {channel.position(), rows});
+        write(group);
+        written += rows;
+        rows = 0;
+    }
+
+    /**
+     * Bytes of a group with a number of rows.
+     */
+    static int groupSize(int rows) {
+        return 2 * padded(rows * 8) + padded(rows * 2) + 3 * padded(rows);
+    }
+
+    static int padded(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.analytics;
+
+import de.exxcellent.enterprise.dao.EntityManagerFactoryProvider;
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+
+/**
+ * Export stage of the nightly analytics: streams all entries, the archived ones
+ * included, with the state of their account into a {@link LedgerColumnsWriter}
+ * file. The rows are read as scalar projections through a
+ * {@link StatelessSession} with a forward only cursor, so neither entities nor
+ * the persistence context grow with the number of entries. The analytics then
+ * run on the file, see {@link LedgerColumns}, without touching the database.
+ *
+ * @author ostauss
+ */
+public class LedgerExporter {
+
+    /**
+     * Rows fetched per round trip, set by system property
+     * <code>de.exxcellent.enterprise.analytics.fetchSize</code>.
+     */
+    public static final int DEFAULT_FETCH_SIZE = Integer.getInteger("de.exxcellent.enterprise.analytics.fetchSize", 1000).intValue();
+
+    static final String SELECT_ENTRIES = "select a.id, e.entryType, e.money.cash, e.money.currency, a.accountState"
+            + " from Entry as e join e.account as a";
+
+    static final String SELECT_ARCHIVED_ENTRIES = "select a.id, e.entryType, e.cash, e.currency, a.accountState"
+            + " from ArchivedEntry as e, Account as a where a.id = e.accountId";
+
+    private final EntityManagerFactory emf;
+
+    public LedgerExporter() {
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public LedgerExporter(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Writes all entries into a file, replacing it. Entries without type or
+     * amount are skipped.
+     *
+     * @return number of exported entries
+     */
+    public long export(File file) throws IOException {
+        LedgerColumnsWriter writer = new LedgerColumnsWriter(file);
+        StatelessSession session = null;
+        boolean written = false;
+        try {
+            session = ((HibernateEntityManagerFactory) emf).getSessionFactory().openStatelessSession();
+            session.beginTransaction();
+            copy(session, SELECT_ENTRIES, writer);
+            copy(session, SELECT_ARCHIVED_ENTRIES, writer);
+            session.getTransaction().commit();
+            writer.close();
+            written = true;
+            return writer.getRowCount();
+        } finally {
+            if (session != null) {
+                if (session.getTransaction().isActive()) {
+                    session.getTransaction().rollback();
+                }
+                session.close();
+            }
+            if (!written) {
+                writer.close();
+                file.delete();
+            }
+        }
+    }
+
+    private static void copy(StatelessSession session, String query, LedgerColumnsWriter writer) throws IOException {
+        ScrollableResults rows = session.createQuery(query)
+                .setFetchSize(DEFAULT_FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (rows.next()) {
+                EntryType entryType = (EntryType) rows.get(1);
+                BigDecimal cash = (BigDecimal) rows.get(2);
+                String currency = (String) rows.get(3);
+                if (entryType == null || cash == null || currency == null) {
+                    continue;
+                }
+                writer.add(((Long) rows.get(0)).longValue(), entryType, cash, currency, (AccountState) rows.get(4));
+            }
+        } finally {
+            rows.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.analytics;
+
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+/**
+ * Sum and number of entries per {@link EntryType}, {@link AccountState} and
+ * currency, computed by {@link LedgerColumns#turnover()}. The account state is
+ * the one at export time.
+ *
+ * @author ostauss
+ */
+public final class Turnover implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Slot 0 is for accounts without state.
+     */
+    private static final int STATE_SLOTS = AccountState.values().length + 1;
+
+    private static final int SCALE_SLOTS = LedgerColumnsWriter.MAX_SCALE + 1;
+
+    private final String[] currencies;
+
+    private final BigDecimal[] sums;
+
+    private final long[] counts;
+
+    private Turnover(String[] currencies, BigDecimal[] sums, long[] counts) {
+        this.currencies = currencies;
+        this.sums = sums;
+        this.counts = counts;
+    }
+
+    /**
+     * @param accountState <code>null</code> for accounts without state
+     * @return the sum, zero in the currency if there is no such entry
+     */
+    public Money get(EntryType entryType, AccountState accountState, String currency) {
+        int key = key(entryType, accountState, currency);
+        return new Money(key >= 0 && sums[key] != null ? sums[key] : BigDecimal.ZERO, currency);
+    }
+
+    /**
+     * @param accountState <code>null</code> for accounts without state
+     */
+    public long getCount(EntryType entryType, AccountState accountState, String currency) {
+        int key = key(entryType, accountState, currency);
+        return key >= 0 ? counts[key] : 0L;
+    }
+
+    /**
+     * @return the sum over all account states
+     */
+    public Money total(EntryType entryType, String currency) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int state = 0; state < STATE_SLOTS; state++) {
+            int key = key(entryType.ordinal(), state, indexOf(currency));
+            if (key >= 0 && sums[key] != null) {
+                total = total.add(sums[key]);
+            }
+        }
+        return new Money(total, currency);
+    }
+
+    /**
+     * @return the currencies of the summed entries
+     */
+    public String[] getCurrencies() {
+        return currencies.clone();
+    }
+
+    private int key(EntryType entryType, AccountState accountState, String currency) {
+        return key(entryType.ordinal(), accountState != null ? accountState.ordinal() + 1 : 0, indexOf(currency));
+    }
+
+    private int key(int entryType, int stateSlot, int currency) {
+        return currency < 0 ? -1 : (entryType * STATE_SLOTS + stateSlot) * currencies.length + currency;
+    }
+
+    private int indexOf(String currency) {
+        for (int i = 0; i < currencies.length; i++) {
+            if (currencies[i].equals(currency)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sums up row groups. The inner loop reads the columns with absolute gets
+     * and adds every amount to a <code>long</code> per entry type, account state,
+     * currency and scale, without creating objects; a sum overflowing a
+     * <code>long</code> is carried over to a {@link BigInteger}. Scales are only
+     * aligned once, in {@link #toTurnover(List)}.
+     */
+    static final class Aggregation {
+
+        private final int currencyCount;
+
+        private final long[] units;
+
+        private final long[] counts;
+
+        private final BigInteger[] carried;
+
+        Aggregation(int currencyCount) {
+            this.currencyCount = currencyCount;
+            int slots = EntryType.values().length * STATE_SLOTS * currencyCount * SCALE_SLOTS;
+            this.units = new long[slots];
+            this.counts = new long[slots];
+            this.carried = new BigInteger[slots];
+        }
+
+        void add(LedgerColumns.Group group) {
+            LongBuffer amounts = group.getUnits();
+            ShortBuffer currencies = group.getCurrencies();
+            ByteBuffer entryTypes = group.getEntryTypes();
+            ByteBuffer scales = group.getScales();
+            ByteBuffer states = group.getAccountStates();
+            long[] sums = this.units;
+            int rows = group.getRows();
+            for (int i = 0; i < rows; i++) {
+                int slot = ((entryTypes.get(i) * STATE_SLOTS + states.get(i) + 1) * currencyCount + currencies.get(i)) * SCALE_SLOTS + scales.get(i);
+                long amount = amounts.get(i);
+                long sum = sums[slot];
+                long result = sum + amount;
+                if (((sum ^ result) & (amount ^ result)) < 0) {
+                    carry(slot, sum);
+                    result = amount;
+                }
+                sums[slot] = result;
+                counts[slot]++;
+            }
+        }
+
+        private void carry(int slot, long sum) {
+            BigInteger value = BigInteger.valueOf(sum);
+            carried[slot] = carried[slot] != null ? carried[slot].add(value) : value;
+        }
+
+        Turnover toTurnover(List<String> currencies) {
+            int keys = units.length / SCALE_SLOTS;
+            BigDecimal[] sums = new BigDecimal[keys];
+            long[] keyCounts = new long[keys];
+            for (int key = 0; key < keys; key++) {
+                for (int scale = 0; scale < SCALE_SLOTS; scale++) {
+                    int slot = key * SCALE_SLOTS + scale;
+                    if (counts[slot] == 0) {
+                        continue;
+                    }
+                    BigInteger unscaled = BigInteger.valueOf(units[slot]);
+                    if (carried[slot] != null) {
+                        unscaled = unscaled.add(carried[slot]);
+                    }
+                    BigDecimal value = new BigDecimal(unscaled, scale);
+                    sums[key] = sums[key] != null ? sums[key].add(value) : value;
+                    keyCounts[key] += counts[slot];
+                }
+            }
+            return new Turnover(currencies.toArray(new String[currencies.size()]), sums, keyCounts);
+        }
+    }
+}
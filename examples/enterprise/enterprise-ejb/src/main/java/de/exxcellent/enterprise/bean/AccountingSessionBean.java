@@ -5,6 +5,29 @@
 
 package de.exxcellent.enterprise.bean;
 
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.EntrySummary;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.Transfer;
+import de.exxcellent.enterprise.posting.GroupCommitter;
+import de.exxcellent.enterprise.posting.PostingEngine;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 
 /**
@@ -13,9 +36,168 @@ import javax.ejb.Stateless;
  */
 @Stateless
 public class AccountingSessionBean implements AccountingSessionBeanRemote {
-    
-    // Add business logic below. (Right-click in editor and choose
-    // "Insert Code > Add Business Method")
 
- 
+    /**
+     * Longest wait for a queued posting or transfer to be booked, set by system
+     * property <code>de.exxcellent.enterprise.bean.awaitMillis</code>. A posting
+     * timing out may still be booked later.
+     */
+    public static final long AWAIT_MILLIS = Long.getLong("de.exxcellent.enterprise.bean.awaitMillis", 30000L).longValue();
+
+    private static final AsyncLimiter ASYNC = new AsyncLimiter();
+
+    private final AccountJpaController accounts = new AccountJpaController();
+
+    private final EntryJpaController entries = new EntryJpaController();
+
+    public List<Money> balanceOf(Long accountId) {
+        if (LedgerJournal.ENABLED) {
+            Money balance = journal().balanceOf(accountId);
+            if (balance != null) {
+                return Collections.singletonList(balance);
+            }
+        }
+        return balancesOf(Collections.singleton(accountId)).get(accountId);
+    }
+
+    public Map<Long, List<Money>> balancesOf(Collection<Long> accountIds) {
+        return accounts.findBalances(accountIds);
+    }
+
+    public Map<Long, List<Money>> balancesByPerson(Long personId) {
+        return accounts.findBalancesByPerson(personId);
+    }
+
+    public Long post(Long accountId, EntryType entryType, Money amount) throws NonexistentEntityException {
+        Entry entry = new Entry();
+        entry.setEntryType(entryType);
+        entry.setMoney(amount);
+        if (LedgerJournal.ENABLED) {
+            try {
+                return journal().post(accountId, entry);
+            } catch (IOException e) {
+                throw new EJBException(e);
+            }
+        }
+        Future<Long> booked;
+        try {
+            booked = PostingEngine.getInstance().post(accountId, entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException(e);
+        }
+        return await(booked);
+    }
+
+    public void transfer(Long fromAccountId, Long toAccountId, Money amount) throws NonexistentEntityException {
+        transfer(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * Books through the {@link GroupCommitter} when it is enabled.
+     */
+    public void transfer(Long fromAccountId, Long toAccountId, Money amount, String idempotencyKey) throws NonexistentEntityException {
+        Transfer transfer = new Transfer(fromAccountId, toAccountId, amount, idempotencyKey);
+        if (GroupCommitter.ENABLED) {
+            Future<Void> booked;
+            try {
+                booked = GroupCommitter.getInstance().submit(transfer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EJBException(e);
+            }
+            await(booked);
+        } else {
+            entries.transfer(transfer);
+        }
+    }
+
+    public List<EntrySummary> statementOf(Long accountId) {
+        return entries.findEntrySummaries(accountId);
+    }
+
+    @Asynchronous
+    public Future<List<Money>> balanceOfAsync(Long accountId) {
+        acquire();
+        try {
+            return new AsyncResult<List<Money>>(balanceOf(accountId));
+        } finally {
+            ASYNC.release();
+        }
+    }
+
+    @Asynchronous
+    public Future<Map<Long, List<Money>>> balancesOfAsync(Collection<Long> accountIds) {
+        acquire();
+        try {
+            return new AsyncResult<Map<Long, List<Money>>>(balancesOf(accountIds));
+        } finally {
+            ASYNC.release();
+        }
+    }
+
+    @Asynchronous
+    public Future<Void> transferAsync(Long fromAccountId, Long toAccountId, Money amount, String idempotencyKey) throws NonexistentEntityException {
+        acquire();
+        try {
+            transfer(fromAccountId, toAccountId, amount, idempotencyKey);
+            return new AsyncResult<Void>(null);
+        } finally {
+            ASYNC.release();
+        }
+    }
+
+    @Asynchronous
+    public Future<List<EntrySummary>> statementOfAsync(Long accountId) {
+        acquire();
+        try {
+            return new AsyncResult<List<EntrySummary>>(statementOf(accountId));
+        } finally {
+            ASYNC.release();
+        }
+    }
+
+    public AsyncMetrics getAsyncMetrics() {
+        return ASYNC.getMetrics();
+    }
+
+    private static void acquire() {
+        try {
+            ASYNC.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException(e);
+        }
+    }
+
+    private static LedgerJournal journal() {
+        try {
+            return LedgerJournal.getInstance();
+        } catch (IOException e) {
+            throw new EJBException(e);
+        }
+    }
+
+    private static <T> T await(Future<T> result) throws NonexistentEntityException {
+        try {
+            return result.get(AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException(e);
+        } catch (TimeoutException e) {
+            throw new EJBException("Not booked within " + AWAIT_MILLIS + " ms.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NonexistentEntityException) {
+                throw (NonexistentEntityException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new EJBException((Exception) e.getCause());
+        }
+    }
+
 }
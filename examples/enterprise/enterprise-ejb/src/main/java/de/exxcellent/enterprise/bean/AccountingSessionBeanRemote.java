@@ -5,6 +5,14 @@
 
 package de.exxcellent.enterprise.bean;
 
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.EntrySummary;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 import javax.ejb.Remote;
 
 /**
@@ -13,5 +21,72 @@ import javax.ejb.Remote;
  */
 @Remote
 public interface AccountingSessionBeanRemote {
-    
+
+    /**
+     * @return balance of the account, one amount per currency; the journal
+     *         balance for accounts posted to through the ledger journal
+     */
+    List<Money> balanceOf(Long accountId);
+
+    /**
+     * @return balances by account id, one amount per currency
+     */
+    Map<Long, List<Money>> balancesOf(Collection<Long> accountIds);
+
+    /**
+     * @return balances of the accounts of a person by account id, one amount per currency
+     */
+    Map<Long, List<Money>> balancesByPerson(Long personId);
+
+    /**
+     * Books an entry on an account and updates its balance.
+     *
+     * @return id of the booked entry; with the ledger journal enabled, the id
+     *         the entry has once it is projected
+     * @throws IllegalArgumentException the currency differs from the balance
+     */
+    Long post(Long accountId, EntryType entryType, Money amount) throws NonexistentEntityException;
+
+    /**
+     * Books a debit on one and a credit on the other account in one transaction.
+     *
+     * @throws IllegalArgumentException the currency differs from a balance
+     * @throws IllegalStateException the ledger journal is enabled, it books no transfers
+     */
+    void transfer(Long fromAccountId, Long toAccountId, Money amount) throws NonexistentEntityException;
+
+    /**
+     * Books a transfer at most once: a retry with the same idempotency key
+     * returns without booking again.
+     *
+     * @throws IllegalArgumentException the currency differs from a balance, or
+     *         the key was used for a different transfer
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    void transfer(Long fromAccountId, Long toAccountId, Money amount, String idempotencyKey) throws NonexistentEntityException;
+
+    /**
+     * @return the entries of the account ordered by id
+     */
+    List<EntrySummary> statementOf(Long accountId);
+
+    /*
+     * Asynchronous variants: the calls return at once, the work is bounded by the
+     * AsyncLimiter of the bean. A rejected call fails its Future with a
+     * RejectedExecutionException.
+     */
+
+    Future<List<Money>> balanceOfAsync(Long accountId);
+
+    Future<Map<Long, List<Money>>> balancesOfAsync(Collection<Long> accountIds);
+
+    Future<Void> transferAsync(Long fromAccountId, Long toAccountId, Money amount, String idempotencyKey) throws NonexistentEntityException;
+
+    Future<List<EntrySummary>> statementOfAsync(Long accountId);
+
+    /**
+     * @return queue depth, wait times and rejections of the asynchronous calls
+     */
+    AsyncMetrics getAsyncMetrics();
+
 }
@@ -0,0 +1,149 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.bean;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the asynchronous calls working on the database at the same time. A
+ * call beyond {@link #getMaxConcurrent()} waits for a permit, at most
+ * {@link #getMaxWaitMillis()}; a call finding {@link #getMaxQueued()} calls
+ * already waiting is rejected at once, so a slow database turns into fast
+ * failures instead of exhausted thread pools. A waiting call blocks a thread of
+ * the container's pool for asynchronous calls, hence the short wait.
+ *
+ * <p>
+ * The wait times measured start when the call runs: the time it spent in the
+ * queue of the container before is not seen here.
+ *
+ * @author ostauss
+ */
+public final class AsyncLimiter {
+
+    /**
+     * Threads of the container's pool for asynchronous calls, set by system
+     * property <code>de.exxcellent.enterprise.bean.asyncPoolSize</code>; it
+     * must match the configuration of the container.
+     */
+    public static final int ASYNC_POOL_SIZE = Integer.getInteger("de.exxcellent.enterprise.bean.asyncPoolSize", 16).intValue();
+
+    /**
+     * Calls running at the same time, set by system property
+     * <code>de.exxcellent.enterprise.bean.asyncMaxConcurrent</code>. Kept below
+     * the threads the {@link de.exxcellent.enterprise.concurrent.WorkerPool} leaves in the container pool, so calls
+     * holding a permit never take all of them.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = Math.max(1, Math.min(
+            Integer.getInteger("de.exxcellent.enterprise.bean.asyncMaxConcurrent", 16).intValue(),
+            ASYNC_POOL_SIZE - PersistenceLifecycleBean.WORKERS - 1));
+
+    /**
+     * Calls waiting for a permit, set by system property
+     * <code>de.exxcellent.enterprise.bean.asyncMaxQueued</code>.
+     */
+    public static final int DEFAULT_MAX_QUEUED = Integer.getInteger("de.exxcellent.enterprise.bean.asyncMaxQueued", 256).intValue();
+
+    /**
+     * Longest wait for a permit, set by system property
+     * <code>de.exxcellent.enterprise.bean.asyncMaxWaitMillis</code>.
+     */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = Long.getLong("de.exxcellent.enterprise.bean.asyncMaxWaitMillis", 250L).longValue();
+
+    private final int maxConcurrent;
+
+    private final int maxQueued;
+
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public AsyncLimiter() {
+        this(DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUED, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    public AsyncLimiter(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        if (maxConcurrent < 1 || maxQueued < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive, maxQueued and maxWaitMillis not negative, were "
+                    + maxConcurrent + ", " + maxQueued + " and " + maxWaitMillis);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Waits for a permit, to be given back with {@link #release()}.
+     *
+     * @throws RejectedExecutionException too many calls are waiting, or no
+     *         permit was given back within {@link #getMaxWaitMillis()}
+     */
+    public void acquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            accepted.incrementAndGet();
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("More than " + maxQueued + " asynchronous calls are waiting.");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("No asynchronous call finished within " + maxWaitMillis + " ms.");
+        }
+        long wait = System.nanoTime() - start;
+        accepted.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        long max = maxWaitNanos.get();
+        while (wait > max && !maxWaitNanos.compareAndSet(max, wait)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public AsyncMetrics getMetrics() {
+        long acceptedCount = accepted.get();
+        return new AsyncMetrics(queued.get(), maxConcurrent - permits.availablePermits(), acceptedCount, rejected.get(),
+                acceptedCount > 0 ? totalWaitNanos.get() / acceptedCount : 0, maxWaitNanos.get());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.bean;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the {@link AsyncLimiter} of the accounting bean. Wait times count
+ * from the start of the asynchronous call until it got its permit; the time the
+ * call was queued by the container before it started is not included.
+ *
+ * @author ostauss
+ */
+public final class AsyncMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int queueDepth;
+
+    private final int running;
+
+    private final long accepted;
+
+    private final long rejected;
+
+    private final long averageWaitNanos;
+
+    private final long maxWaitNanos;
+
+    public AsyncMetrics(int queueDepth, int running, long accepted, long rejected, long averageWaitNanos, long maxWaitNanos) {
+        this.queueDepth = queueDepth;
+        this.running = running;
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.averageWaitNanos = averageWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * @return calls waiting for a permit
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return calls holding a permit
+     */
+    public int getRunning() {
+        return running;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getAverageWaitNanos() {
+        return averageWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.bean.AsyncMetrics[queueDepth=" + queueDepth + ", running=" + running + ", accepted=" + accepted
+                + ", rejected=" + rejected + ", averageWaitNanos=" + averageWaitNanos + ", maxWaitNanos=" + maxWaitNanos + "]";
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.bean;
+
+import java.util.concurrent.Executor;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Local;
+import javax.ejb.Singleton;
+
+/**
+ * Runs the workers of the {@link de.exxcellent.enterprise.concurrent.WorkerPool}
+ * on threads of the container's asynchronous pool, so they are managed and
+ * stopped with the application. The bean manages its
+ * own concurrency: with the default write lock every task would wait for the
+ * one before.
+ *
+ * @author ostauss
+ */
+@Singleton
+@Local(Executor.class)
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ManagedExecutorBean implements Executor {
+
+    @Asynchronous
+    public void execute(Runnable command) {
+        command.run();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.bean;
+
+import de.exxcellent.enterprise.concurrent.ExecutorProvider;
+import de.exxcellent.enterprise.concurrent.WorkerPool;
+import de.exxcellent.enterprise.dao.EntityManagerFactoryProvider;
+import de.exxcellent.enterprise.dao.SchemaMigration;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.posting.GroupCommitter;
+import de.exxcellent.enterprise.posting.PostingEngine;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+/**
+ * Boots the shared EntityManagerFactory, migrates the data of older schemas, see
+ * {@link SchemaMigration}, and boots the ledger journal if enabled, when the
+ * application is deployed and closes it, together with its connection pool, on
+ * undeploy. Background work runs on a {@link WorkerPool} started on the
+ * {@link ManagedExecutorBean}. The ledger journal, the posting engine and the
+ * group committer are shut down first, so journaled postings are projected and
+ * queued postings and transfers are still booked.
+ *
+ * @author ostauss
+ */
+@Singleton
+@Startup
+@DependsOn("ManagedExecutorBean")
+public class PersistenceLifecycleBean {
+
+    /**
+     * Workers of the {@link WorkerPool}: a busy posting lane keeps its worker,
+     * so there is one per lane, and {@link WorkerPool#DEFAULT_WORKERS} for the
+     * rest.
+     */
+    static final int WORKERS = PostingEngine.DEFAULT_LANES + WorkerPool.DEFAULT_WORKERS;
+
+    private WorkerPool workers;
+
+    @EJB(beanName = "ManagedExecutorBean")
+    private Executor executor;
+
+    @PostConstruct
+    public void start() {
+        workers = new WorkerPool(WORKERS);
+        workers.start(executor);
+        ExecutorProvider.setExecutor(workers);
+        new SchemaMigration(EntityManagerFactoryProvider.getEntityManagerFactory()).migrate();
+        if (LedgerJournal.ENABLED) {
+            // recovers the balances and resumes the projection
+            try {
+                LedgerJournal.getInstance();
+            } catch (IOException e) {
+                throw new EJBException(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            LedgerJournal.close();
+        } catch (IOException e) {
+            throw new EJBException(e);
+        } finally {
+            PostingEngine.close();
+            GroupCommitter.close();
+            workers.shutdown();
+            ExecutorProvider.setExecutor(null);
+            EntityManagerFactoryProvider.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.concurrent;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Holds the {@link Executor} running the background work of the application:
+ * the posting lanes, the group committer, the journal projection and the import
+ * stages. An EJB must not start threads of its own, so the application runs
+ * the work on a {@link WorkerPool} holding container threads, see
+ * {@link de.exxcellent.enterprise.bean.ManagedExecutorBean}; never on the
+ * threads serving asynchronous calls.
+ *
+ * @author ostauss
+ */
+public final class ExecutorProvider {
+
+    private static volatile Executor executor = null;
+
+    private ExecutorProvider() {
+    }
+
+    /**
+     * @throws IllegalStateException no executor is set, the application is not deployed
+     */
+    public static Executor getExecutor() {
+        Executor result = executor;
+        if (result == null) {
+            throw new IllegalStateException("No executor for background work is set.");
+        }
+        return result;
+    }
+
+    /**
+     * @param executor <code>null</code> on undeploy
+     */
+    public static void setExecutor(Executor executor) {
+        ExecutorProvider.executor = executor;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A fixed set of workers running background work, sized apart from the
+ * container's pool for asynchronous calls. The workers are handed to the
+ * container executor once, when the application is deployed, and keep their
+ * threads until {@link #shutdown()}; a task never waits for a thread of the
+ * container pool. Without them, a caller blocking a pooled thread on work
+ * queued behind it, as a transfer awaiting its group commit, could take the
+ * last thread that work needed.
+ *
+ * @author ostauss
+ */
+public final class WorkerPool implements Executor {
+
+    /**
+     * Workers besides one per posting lane, set by system property
+     * <code>de.exxcellent.enterprise.concurrent.workers</code>: the group
+     * committer, the journal projection and the two stages of an import.
+     */
+    public static final int DEFAULT_WORKERS = Integer.getInteger("de.exxcellent.enterprise.concurrent.workers", 4).intValue();
+
+    /**
+     * Queued once per worker on shutdown, after the tasks queued before.
+     */
+    private static final Runnable STOP = new Runnable() {
+
+        public void run() {
+        }
+    };
+
+    private final int workers;
+
+    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+
+    private final CountDownLatch stopped;
+
+    private final Runnable worker = new Runnable() {
+
+        public void run() {
+            try {
+                work();
+            } finally {
+                stopped.countDown();
+            }
+        }
+    };
+
+    /**
+     * Guarded by this.
+     */
+    private boolean started = false;
+
+    private boolean closed = false;
+
+    private volatile RuntimeException lastFailure = null;
+
+    public WorkerPool(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive, was " + workers);
+        }
+        this.workers = workers;
+        this.stopped = new CountDownLatch(workers);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return the last exception a task failed with, <code>null</code> if none did
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Hands the workers to the container executor, each taking one of its
+     * threads until {@link #shutdown()}.
+     */
+    public synchronized void start(Executor container) {
+        if (started || closed) {
+            throw new IllegalStateException("The worker pool is already started.");
+        }
+        started = true;
+        int handedOver = 0;
+        try {
+            for (; handedOver < workers; handedOver++) {
+                container.execute(worker);
+            }
+        } finally {
+            // the workers never handed over do not have to be awaited
+            for (int i = handedOver; i < workers; i++) {
+                stopped.countDown();
+            }
+        }
+    }
+
+    /**
+     * Queues a task for the next free worker.
+     *
+     * @throws RejectedExecutionException the pool is shut down
+     */
+    public void execute(Runnable command) {
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("The worker pool is shut down.");
+            }
+            tasks.add(command);
+        }
+    }
+
+    /**
+     * Runs the tasks queued so far and waits for the workers to stop. Tasks
+     * queued afterwards are rejected.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                return;
+            }
+            for (int i = 0; i < workers; i++) {
+                tasks.add(STOP);
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                stopped.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while ((task = tasks.take()) != STOP) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // the worker outlives a failing task
+                    lastFailure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // the container stops the thread
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.MoneyAccumulator;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+/**
+ * Offline job recomputing the running balance of every account from its entries
+ * and its latest {@link de.exxcellent.enterprise.model.PeriodClosingBalance}.
+ * Accounts are walked page by page, so it runs in constant memory; each page of
+ * corrections is written in its own transaction.
+ *
+ * @author ostauss
+ */
+public class AccountBalanceReconciler {
+
+    public static final int PAGE_SIZE = 500;
+
+    public AccountBalanceReconciler() {
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public AccountBalanceReconciler(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+    private EntityManagerFactory emf = null;
+
+    /**
+     * @return ids of the accounts whose running balance differs from their entries
+     */
+    public List<Long> verify() {
+        return reconcile(false);
+    }
+
+    /**
+     * Corrects the running balance of every account differing from its entries.
+     * An account posted to meanwhile fails with an optimistic lock error and has
+     * to be rebuilt again. Runs the {@link SchemaMigration} first, entries still
+     * linked through the old join table would not count.
+     *
+     * @return ids of the corrected accounts
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public List<Long> rebuild() {
+        LedgerJournal.checkDisabled("Rebuilding balances");
+        new SchemaMigration(emf).migrate();
+        return reconcile(true);
+    }
+
+    /**
+     * Latest closing balance of an account plus its entries not yet archived.
+     *
+     * @throws IllegalArgumentException if the entries have different currencies
+     */
+    public Money computeBalance(Long accountId) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return computeBalance(em, accountId);
+        } finally {
+            em.close();
+        }
+    }
+
+    private List<Long> reconcile(boolean write) {
+        List<Long> differing = new ArrayList<Long>();
+        AccountJpaController accounts = new AccountJpaController(emf);
+        String token = null;
+        do {
+            Page<Account> page = accounts.findAccountPage(token, PAGE_SIZE);
+            EntityManager em = emf.createEntityManager();
+            try {
+                if (write) {
+                    em.getTransaction().begin();
+                }
+                for (Account account : page.getItems()) {
+                    Money computed = computeBalance(em, account.getId());
+                    if (!computed.equals(account.getBalance())) {
+                        differing.add(account.getId());
+                        if (write) {
+                            Account managed = em.merge(account);
+                            managed.setBalance(computed);
+                        }
+                    }
+                }
+                if (write) {
+                    em.getTransaction().commit();
+                }
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+            token = page.getContinuationToken();
+        } while (token != null);
+        return differing;
+    }
+
+    private Money computeBalance(EntityManager em, Long accountId) {
+        Query q = em.createQuery("select e.entryType, e.money.currency, sum(e.money.cash) from Entry as e"
+                + " where e.account.id = :accountId group by e.entryType, e.money.currency");
+        q.setParameter("accountId", accountId);
+        MoneyAccumulator balance = new MoneyAccumulator();
+        for (Object row : q.getResultList()) {
+            Object[] columns = (Object[]) row;
+            Money sum = new Money((BigDecimal) columns[2], (String) columns[1]);
+            if (columns[0] == EntryType.DEBIT) {
+                balance.subtract(sum);
+            } else {
+                balance.add(sum);
+            }
+        }
+        q = em.createQuery(AccountJpaController.SELECT_CLOSING_BALANCES + " where c.accountId = :accountId" + AccountJpaController.LATEST_CLOSING);
+        q.setParameter("accountId", accountId);
+        for (Object row : q.getResultList()) {
+            Object[] columns = (Object[]) row;
+            balance.add(new Money((BigDecimal) columns[2], (String) columns[1]));
+        }
+        return balance.toMoney();
+    }
+}
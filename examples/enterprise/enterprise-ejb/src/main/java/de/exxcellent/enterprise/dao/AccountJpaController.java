@@ -6,11 +6,24 @@
 package de.exxcellent.enterprise.dao;
 
 import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.AccountSummary;
 import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.MoneyAccumulator;
+import de.exxcellent.enterprise.model.Person;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 import javax.persistence.Query;
 import javax.persistence.EntityNotFoundException;
 
@@ -20,11 +33,46 @@ import javax.persistence.EntityNotFoundException;
  */
 public class AccountJpaController {
 
+    private static final String SELECT_SUMMARIES = "select new de.exxcellent.enterprise.dto.AccountSummary(o.id, o.ean, o.accountState, p.id) from Account as o left join o.person as p";
+
+    private static final KeysetQuery<Account> ACCOUNT_PAGES = new KeysetQuery<Account>("select object(o) from Account as o") {
+        @Override
+        Long idOf(Account row) {
+            return row.getId();
+        }
+    };
+
+    private static final KeysetQuery<AccountSummary> SUMMARY_PAGES = new KeysetQuery<AccountSummary>(SELECT_SUMMARIES) {
+        @Override
+        Long idOf(AccountSummary row) {
+            return row.getId();
+        }
+    };
+
+    /**
+     * Upper bound of ids bound to one <code>in</code> list of a balance query.
+     */
+    public static final int MAX_IDS_PER_QUERY = 1000;
+
+    static final String SELECT_BALANCES = "select e.account.id, e.money.currency, e.entryType, sum(e.money.cash) from Entry as e";
+    static final String GROUP_BALANCES = " group by e.account.id, e.money.currency, e.entryType";
+
+    static final String SELECT_CLOSING_BALANCES = "select c.accountId, c.balance.currency, c.balance.cash from PeriodClosingBalance as c";
+
+    static final String LATEST_CLOSING = " and c.period = (select max(l.period) from PeriodClosingBalance as l where l.accountId = c.accountId)";
+
     public AccountJpaController() {
-        emf = Persistence.createEntityManagerFactory("enterprise");
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public AccountJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+        this.countCache = EntityCountCache.of(emf, Account.class);
     }
     private EntityManagerFactory emf = null;
 
+    private final EntityCountCache countCache;
+
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
@@ -36,6 +84,10 @@ public class AccountJpaController {
             em.getTransaction().begin();
             em.persist(account);
             em.getTransaction().commit();
+            countCache.add(1);
+            if (account.getPerson() != null) {
+                SecondLevelCache.evictPersonAccounts(emf, account.getPerson().getId());
+            }
         } finally {
             if (em != null) {
                 em.close();
@@ -48,8 +100,18 @@ public class AccountJpaController {
         try {
             em = getEntityManager();
             em.getTransaction().begin();
+            Account current = (account.getId() != null ? em.find(Account.class, account.getId()) : null);
+            Long oldPersonId = (current != null ? personIdOf(current) : null);
             account = em.merge(account);
             em.getTransaction().commit();
+            // the account may have moved to another person
+            Long newPersonId = personIdOf(account);
+            if (oldPersonId != null) {
+                SecondLevelCache.evictPersonAccounts(emf, oldPersonId);
+            }
+            if (newPersonId != null && !newPersonId.equals(oldPersonId)) {
+                SecondLevelCache.evictPersonAccounts(emf, newPersonId);
+            }
         } catch (Exception ex) {
             String msg = ex.getLocalizedMessage();
             if (msg == null || msg.length() == 0) {
@@ -78,8 +140,13 @@ public class AccountJpaController {
             } catch (EntityNotFoundException enfe) {
                 throw new NonexistentEntityException("The account with id " + id + " no longer exists.", enfe);
             }
+            Person person = account.getPerson();
             em.remove(account);
             em.getTransaction().commit();
+            countCache.add(-1);
+            if (person != null) {
+                SecondLevelCache.evictPersonAccounts(emf, person.getId());
+            }
         } finally {
             if (em != null) {
                 em.close();
@@ -87,6 +154,10 @@ public class AccountJpaController {
         }
     }
 
+    private static Long personIdOf(Account account) {
+        return (account.getPerson() != null ? account.getPerson().getId() : null);
+    }
+
     public List<Account> findAccountEntities() {
         return findAccountEntities(true, -1, -1);
     }
@@ -98,7 +169,7 @@ public class AccountJpaController {
     private List<Account> findAccountEntities(boolean all, int maxResults, int firstResult) {
         EntityManager em = getEntityManager();
         try {
-            Query q = em.createQuery("select object(o) from Account as o");
+            Query q = SecondLevelCache.cacheable(em.createQuery("select object(o) from Account as o"));
             if (!all) {
                 q.setMaxResults(maxResults);
                 q.setFirstResult(firstResult);
@@ -109,6 +180,67 @@ public class AccountJpaController {
         }
     }
 
+    /**
+     * Keyset pagination on id: unlike {@link #findAccountEntities(int, int)} every
+     * page costs the same, no matter how deep it is.
+     *
+     * @param continuationToken token of the previous page, <code>null</code> for the first page
+     */
+    public Page<Account> findAccountPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return ACCOUNT_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Read-only listing: the rows are mapped straight into {@link AccountSummary}
+     * objects, nothing is managed or dirty checked.
+     */
+    public List<AccountSummary> findAccountSummaries() {
+        return findAccountSummaries(true, -1, -1);
+    }
+
+    public List<AccountSummary> findAccountSummaries(int maxResults, int firstResult) {
+        return findAccountSummaries(false, maxResults, firstResult);
+    }
+
+    private List<AccountSummary> findAccountSummaries(boolean all, int maxResults, int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery(SELECT_SUMMARIES + " order by o.id");
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return TypedResults.list(q);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination of {@link #findAccountSummaries()}, see {@link #findAccountPage(String, int)}.
+     */
+    public Page<AccountSummary> findAccountSummaryPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return SUMMARY_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    public CloseableIterator<Account> iterateAccountEntities() {
+        return iterateAccountEntities(ScrollableResultsIterator.DEFAULT_FETCH_SIZE);
+    }
+
+    public CloseableIterator<Account> iterateAccountEntities(int fetchSize) {
+        return new ScrollableResultsIterator<Account>(Account.class, getEntityManager(), "select object(o) from Account as o", fetchSize);
+    }
+
     public Account findAccount(Long id) {
         EntityManager em = getEntityManager();
         try {
@@ -118,14 +250,181 @@ public class AccountJpaController {
         }
     }
 
+    /**
+     * Looks an account up by its unique ean, using the index on the column.
+     *
+     * @return the account, <code>null</code> if there is none with the ean
+     */
+    public Account findAccountByEan(String ean) {
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery("select object(o) from Account as o where o.ean = :ean");
+            q.setParameter("ean", ean);
+            List<Account> accounts = TypedResults.list(q);
+            return (accounts.isEmpty() ? null : accounts.get(0));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return the ids of the given accounts that exist, queried in chunks of
+     *         {@link #MAX_IDS_PER_QUERY}
+     */
+    public Set<Long> findExistingAccountIds(Collection<Long> accountIds) {
+        Set<Long> existing = new HashSet<Long>();
+        List<Long> ids = new ArrayList<Long>(new LinkedHashSet<Long>(accountIds));
+        EntityManager em = getEntityManager();
+        try {
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                Query q = em.createQuery("select o.id from Account as o where o.id in (:accountIds)");
+                q.setParameter("accountIds", ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY)));
+                existing.addAll(TypedResults.<Long>list(q));
+            }
+        } finally {
+            em.close();
+        }
+        return existing;
+    }
+
     public int getAccountCount() {
+        return getAccountCount(false);
+    }
+
+    /**
+     * Served from a count cache kept up to date by {@link #create(Account)} and
+     * {@link #destroy(Long)}; the count is loaded again when the cache is older
+     * than its staleness bound. In approximate mode any loaded count is returned,
+     * so polling does not touch the table at all.
+     */
+    public int getAccountCount(boolean approximate) {
+        long cached = countCache.get(approximate);
+        if (cached >= 0) {
+            return (int) cached;
+        }
+        long stamp = countCache.stamp();
         EntityManager em = getEntityManager();
         try {
             Query q = em.createQuery("select count(o) from Account as o");
-            return ((Long) q.getSingleResult()).intValue();
+            long count = ((Long) q.getSingleResult()).longValue();
+            countCache.set(count, stamp);
+            return (int) count;
         } finally {
             em.close();
         }
     }
 
+    /**
+     * Balances of the given accounts, summed up by the database from the latest
+     * closing balance and the entries booked since. Every account is
+     * contained in the result, an account without entries has an empty list.
+     *
+     * @return one {@link Money} per currency and account, by account id
+     */
+    public Map<Long, List<Money>> findBalances(Collection<Long> accountIds) {
+        Map<Long, Map<String, MoneyAccumulator>> sums = new LinkedHashMap<Long, Map<String, MoneyAccumulator>>();
+        for (Long accountId : accountIds) {
+            sums.put(accountId, new LinkedHashMap<String, MoneyAccumulator>());
+        }
+        EntityManager em = getEntityManager();
+        try {
+            Iterator<Long> ids = sums.keySet().iterator();
+            while (ids.hasNext()) {
+                List<Long> chunk = new ArrayList<Long>(Math.min(sums.size(), MAX_IDS_PER_QUERY));
+                while (ids.hasNext() && chunk.size() < MAX_IDS_PER_QUERY) {
+                    chunk.add(ids.next());
+                }
+                Query q = em.createQuery(SELECT_BALANCES + " where e.account.id in (:accountIds)" + GROUP_BALANCES);
+                q.setParameter("accountIds", chunk);
+                addBalances(sums, q.getResultList());
+                q = em.createQuery(SELECT_CLOSING_BALANCES + " where c.accountId in (:accountIds)" + LATEST_CLOSING);
+                q.setParameter("accountIds", chunk);
+                addClosingBalances(sums, q.getResultList());
+            }
+        } finally {
+            em.close();
+        }
+        return toBalances(sums);
+    }
+
+    /**
+     * Balances of all accounts of a person, see {@link #findBalances(Collection)}.
+     * Accounts without entries and closing balances are missing.
+     *
+     * @return one {@link Money} per currency and account, by account id
+     */
+    public Map<Long, List<Money>> findBalancesByPerson(Long personId) {
+        Map<Long, Map<String, MoneyAccumulator>> sums = new LinkedHashMap<Long, Map<String, MoneyAccumulator>>();
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery(SELECT_BALANCES + " where e.account.person.id = :personId" + GROUP_BALANCES);
+            q.setParameter("personId", personId);
+            addBalances(sums, q.getResultList());
+            q = em.createQuery(SELECT_CLOSING_BALANCES
+                    + " where c.accountId in (select a.id from Account as a where a.person.id = :personId)" + LATEST_CLOSING);
+            q.setParameter("personId", personId);
+            addClosingBalances(sums, q.getResultList());
+        } finally {
+            em.close();
+        }
+        return toBalances(sums);
+    }
+
+    static void addBalances(Map<Long, Map<String, MoneyAccumulator>> sums, List<?> rows) {
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            String currency = (String) columns[1];
+            MoneyAccumulator sum = accumulator(sums, (Long) columns[0], currency);
+            Money amount = new Money((BigDecimal) columns[3], currency);
+            if (columns[2] == EntryType.DEBIT) {
+                sum.subtract(amount);
+            } else {
+                sum.add(amount);
+            }
+        }
+    }
+
+    static void addClosingBalances(Map<Long, Map<String, MoneyAccumulator>> sums, List<?> rows) {
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            String currency = (String) columns[1];
+            accumulator(sums, (Long) columns[0], currency).add(new Money((BigDecimal) columns[2], currency));
+        }
+    }
+
+    private static MoneyAccumulator accumulator(Map<Long, Map<String, MoneyAccumulator>> sums, Long accountId, String currency) {
+        Map<String, MoneyAccumulator> byCurrency = sums.get(accountId);
+        if (byCurrency == null) {
+            byCurrency = new LinkedHashMap<String, MoneyAccumulator>();
+            sums.put(accountId, byCurrency);
+        }
+        MoneyAccumulator sum = byCurrency.get(currency);
+        if (sum == null) {
+            // a sum of zero keeps its currency
+            sum = new MoneyAccumulator(currency);
+            byCurrency.put(currency, sum);
+        }
+        return sum;
+    }
+
+    private static Map<Long, List<Money>> toBalances(Map<Long, Map<String, MoneyAccumulator>> sums) {
+        Map<Long, List<Money>> balances = new LinkedHashMap<Long, List<Money>>();
+        for (Map.Entry<Long, Map<String, MoneyAccumulator>> account : sums.entrySet()) {
+            List<Money> perCurrency = new ArrayList<Money>(account.getValue().size());
+            for (MoneyAccumulator sum : account.getValue().values()) {
+                perCurrency.add(sum.toMoney());
+            }
+            balances.put(account.getKey(), perCurrency);
+        }
+        return balances;
+    }
+
+    /**
+     * Drops the cached count of the factory's database, e.g. after writes
+     * bypassing the controllers.
+     */
+    public static void invalidateAccountCount(EntityManagerFactory emf) {
+        EntityCountCache.of(emf, Account.class).invalidate();
+    }
+
 }
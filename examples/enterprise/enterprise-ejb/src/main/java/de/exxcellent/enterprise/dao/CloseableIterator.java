@@ -0,0 +1,23 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator over query results holding database resources until it is closed.
+ * Always close it in a finally block.
+ *
+ * @author ostauss
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Releases the cursor and the EntityManager. Calling it twice has no effect.
+     */
+    void close();
+}
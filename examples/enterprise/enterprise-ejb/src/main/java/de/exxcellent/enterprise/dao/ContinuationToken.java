@@ -0,0 +1,47 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+/**
+ * Encodes the last id of a page into an opaque token and back. Clients must not
+ * interpret the token, so the encoding may change with a new version prefix.
+ *
+ * @author ostauss
+ */
+public final class ContinuationToken {
+
+    private static final String VERSION = "k1.";
+
+    private ContinuationToken() {
+    }
+
+    public static String encode(Long lastId) {
+        return VERSION + Long.toString(lastId.longValue(), Character.MAX_RADIX);
+    }
+
+    /**
+     * @return the last id of the previous page, <code>null</code> for a
+     *         <code>null</code> or empty token (first page)
+     * @throws IllegalArgumentException if the token was not created by {@link #encode(Long)}
+     */
+    public static Long decode(String token) {
+        if (token == null || token.length() == 0) {
+            return null;
+        }
+        if (!token.startsWith(VERSION) || token.length() == VERSION.length()) {
+            throw new IllegalArgumentException("Illegal continuation token [" + token + "].");
+        }
+        long id = 0;
+        for (int i = VERSION.length(); i < token.length(); i++) {
+            int digit = Character.digit(token.charAt(i), Character.MAX_RADIX);
+            if (digit < 0 || id > (Long.MAX_VALUE - digit) / Character.MAX_RADIX) {
+                throw new IllegalArgumentException("Illegal continuation token [" + token + "].");
+            }
+            id = id * Character.MAX_RADIX + digit;
+        }
+        return Long.valueOf(id);
+    }
+}
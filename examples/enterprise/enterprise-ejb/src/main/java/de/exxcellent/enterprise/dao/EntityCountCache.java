@@ -0,0 +1,125 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Caches the row count of one entity in the database of one factory, see
+ * {@link #of(EntityManagerFactory, Class)}. The JPA controllers keep it up to
+ * date on create and destroy; writes bypassing the controllers are caught by
+ * the staleness bound, after which the count is loaded again.
+ *
+ * @author ostauss
+ */
+public final class EntityCountCache {
+
+    /**
+     * Default staleness bound, set by system property
+     * <code>de.exxcellent.enterprise.dao.countMaxStalenessMillis</code>.
+     * A value of 0 or less keeps a loaded count until {@link #invalidate()}.
+     */
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = Long.getLong("de.exxcellent.enterprise.dao.countMaxStalenessMillis", 60000L).longValue();
+
+    /**
+     * The caches per factory and entity, guarded by itself. A closed factory
+     * that is no longer referenced takes its caches along.
+     */
+    private static final Map<EntityManagerFactory, Map<Class<?>, EntityCountCache>> CACHES = new WeakHashMap<EntityManagerFactory, Map<Class<?>, EntityCountCache>>();
+
+    private final long maxStalenessMillis;
+
+    private long count = 0;
+
+    private boolean valid = false;
+
+    private long loadedAt = 0;
+
+    private long modifications = 0;
+
+    public EntityCountCache() {
+        this(DEFAULT_MAX_STALENESS_MILLIS);
+    }
+
+    public EntityCountCache(long maxStalenessMillis) {
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * @return the cache of the entity's count in the database of the factory,
+     *         shared by all controllers created on that factory
+     */
+    public static EntityCountCache of(EntityManagerFactory emf, Class<?> entityClass) {
+        synchronized (CACHES) {
+            Map<Class<?>, EntityCountCache> caches = CACHES.get(emf);
+            if (caches == null) {
+                caches = new HashMap<Class<?>, EntityCountCache>();
+                CACHES.put(emf, caches);
+            }
+            EntityCountCache cache = caches.get(entityClass);
+            if (cache == null) {
+                cache = new EntityCountCache();
+                caches.put(entityClass, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @param approximate when true, a loaded count is returned regardless of the
+     *        staleness bound
+     * @return the cached count or -1 when it has to be loaded
+     */
+    public synchronized long get(boolean approximate) {
+        if (!valid) {
+            return -1;
+        }
+        if (!approximate && maxStalenessMillis > 0 && System.currentTimeMillis() - loadedAt > maxStalenessMillis) {
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Taken before loading the count, see {@link #set(long, long)}.
+     */
+    public synchronized long stamp() {
+        return modifications;
+    }
+
+    /**
+     * Stores a loaded count, unless a write happened since the stamp was taken:
+     * the query may or may not have seen that write.
+     */
+    public synchronized void set(long loadedCount, long stamp) {
+        if (stamp == modifications) {
+            count = loadedCount;
+            valid = true;
+            loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Applies a committed create (positive delta) or destroy (negative delta).
+     */
+    public synchronized void add(long delta) {
+        modifications++;
+        if (valid) {
+            count += delta;
+        }
+    }
+
+    /**
+     * Forces the next count to be loaded, e.g. after bulk writes bypassing the controller.
+     */
+    public synchronized void invalidate() {
+        modifications++;
+        valid = false;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Holds the one {@link EntityManagerFactory} of the persistence unit shared by all
+ * JPA controllers. Creating a factory boots the whole metamodel and the connection
+ * pool, so it is created once and closed on shutdown.
+ *
+ * @author ostauss
+ */
+public final class EntityManagerFactoryProvider {
+
+    public static final String PERSISTENCE_UNIT = "enterprise";
+
+    private static volatile EntityManagerFactory emf = null;
+
+    private EntityManagerFactoryProvider() {
+    }
+
+    public static EntityManagerFactory getEntityManagerFactory() {
+        EntityManagerFactory result = emf;
+        if (result == null || !result.isOpen()) {
+            synchronized (EntityManagerFactoryProvider.class) {
+                result = emf;
+                if (result == null || !result.isOpen()) {
+                    result = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+                    emf = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static synchronized void close() {
+        if (emf != null) {
+            if (emf.isOpen()) {
+                emf.close();
+            }
+            emf = null;
+        }
+    }
+}
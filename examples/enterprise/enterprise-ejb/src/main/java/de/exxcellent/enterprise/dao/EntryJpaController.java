@@ -6,11 +6,22 @@
 package de.exxcellent.enterprise.dao;
 
 import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.EntrySummary;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Account;
 import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Transfer;
+import de.exxcellent.enterprise.model.TransferReceipt;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 import javax.persistence.Query;
 import javax.persistence.EntityNotFoundException;
 
@@ -20,35 +31,418 @@ import javax.persistence.EntityNotFoundException;
  */
 public class EntryJpaController {
 
+    private static final IdempotencyCache RECENT_TRANSFERS = new IdempotencyCache();
+
+    static final String SELECT_SUMMARIES = "select new de.exxcellent.enterprise.dto.EntrySummary(o.id, a.id, o.entryType, o.money.cash, o.money.currency, o.bookingDate) from Entry as o left join o.account as a";
+
+    private static final KeysetQuery<Entry> ENTRY_PAGES = new KeysetQuery<Entry>("select object(o) from Entry as o") {
+        @Override
+        Long idOf(Entry row) {
+            return row.getId();
+        }
+    };
+
+    private static final KeysetQuery<EntrySummary> SUMMARY_PAGES = new KeysetQuery<EntrySummary>(SELECT_SUMMARIES) {
+        @Override
+        Long idOf(EntrySummary row) {
+            return row.getId();
+        }
+    };
+
+    /**
+     * Entries persisted between two flushes, same as hibernate.jdbc.batch_size.
+     */
+    public static final int FLUSH_INTERVAL = 50;
+
+    /**
+     * Entries persisted per transaction by the bulk create methods.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
     public EntryJpaController() {
-        emf = Persistence.createEntityManagerFactory("enterprise");
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public EntryJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+        this.countCache = EntityCountCache.of(emf, Entry.class);
     }
     private EntityManagerFactory emf = null;
 
+    private final EntityCountCache countCache;
+
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
-    public void create(Entry entry) {
+    /**
+     * Persists an entry and books it on its account, if it has one, in the same
+     * transaction, see {@link Account#post(Entry)}.
+     *
+     * @throws NonexistentEntityException if the account does not exist
+     * @throws IllegalArgumentException currency mismatch, nothing is booked
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public void create(Entry entry) throws NonexistentEntityException {
+        LedgerJournal.checkDisabled("Creating entries");
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
+            postToAccount(em, entry);
             em.persist(entry);
             em.getTransaction().commit();
+            countCache.add(1);
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    public void post(Long accountId, Entry entry) throws NonexistentEntityException {
+        post(accountId, Collections.singletonList(entry));
+    }
+
+    /**
+     * Books entries on an account and updates its running balance in the same
+     * transaction. The balance update is guarded by the version of the account:
+     * a concurrent posting makes the commit fail with an optimistic lock error.
+     *
+     * @throws NonexistentEntityException if the account does not exist
+     * @throws IllegalArgumentException currency mismatch, nothing is booked
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public void post(Long accountId, Collection<Entry> entries) throws NonexistentEntityException {
+        LedgerJournal.checkDisabled("Posting to the database");
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            Account account = em.find(Account.class, accountId);
+            if (account == null) {
+                throw new NonexistentEntityException("The account with id " + accountId + " no longer exists.");
+            }
+            for (Entry entry : entries) {
+                account.post(entry);
+                em.persist(entry);
+            }
+            em.getTransaction().commit();
+            countCache.add(entries.size());
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Reserves a block of entry ids for entries inserted with their id set, see
+     * {@link de.exxcellent.enterprise.journal.LedgerJournal}. The block is taken
+     * from the table generator of the entries the way the generator takes its
+     * own, so reserved and generated ids never collide.
+     *
+     * @return the first id of the block, which ends before the next multiple of
+     *         {@link Entry#ID_ALLOCATION_SIZE}
+     */
+    public long reserveEntryIds() {
+        String where = " where GEN_NAME = '" + SchemaMigration.ENTRY_ID_GENERATOR + "'";
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            int hi;
+            do {
+                List<?> values = em.createNativeQuery("select GEN_VALUE from " + SchemaMigration.ID_GENERATOR + where).getResultList();
+                if (values.isEmpty()) {
+                    em.createNativeQuery("insert into " + SchemaMigration.ID_GENERATOR + " (GEN_NAME, GEN_VALUE) values ('"
+                            + SchemaMigration.ENTRY_ID_GENERATOR + "', 0)").executeUpdate();
+                    hi = 0;
+                } else {
+                    hi = ((Number) values.get(0)).intValue();
+                }
+                // taken only if no generator took the same hi value meanwhile
+            } while (em.createNativeQuery("update " + SchemaMigration.ID_GENERATOR + " set GEN_VALUE = " + (hi + 1) + where
+                    + " and GEN_VALUE = " + hi).executeUpdate() == 0);
+            em.getTransaction().commit();
+            // the generator skips id 0 as well
+            return hi == 0 ? 1L : (long) hi * Entry.ID_ALLOCATION_SIZE;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Books a transfer in one transaction. A transfer with an idempotency key
+     * that is already booked is not booked again.
+     *
+     * @throws NonexistentEntityException if one of the accounts does not exist
+     * @throws IllegalArgumentException currency mismatch, nothing is booked, or
+     *         the idempotency key was booked for a different transfer
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public void transfer(Transfer transfer) throws NonexistentEntityException {
+        LedgerJournal.checkDisabled("Transfer");
+        if (isBooked(null, transfer)) {
+            return;
+        }
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            if (isBooked(em, transfer)) {
+                return;
+            }
+            book(em, transfer);
+            em.getTransaction().commit();
+            countCache.add(2);
+            if (transfer.getIdempotencyKey() != null) {
+                RECENT_TRANSFERS.put(transfer);
+            }
+        } catch (RuntimeException e) {
+            if (transfer.getIdempotencyKey() != null && isBookedConcurrently(transfer)) {
+                // a retry of the transfer committed first
+                return;
+            }
+            throw e;
         } finally {
             if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
                 em.close();
             }
         }
     }
 
+    /**
+     * Books transfers in one transaction. A transfer that cannot be booked, for a
+     * missing account or a currency mismatch, is left out; the others still
+     * commit together. Transfers with an idempotency key already booked, before
+     * or earlier in the list, are not booked again. A failing commit fails all
+     * transfers.
+     *
+     * @return the exception of each transfer left out, <code>null</code> for booked transfers
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public Exception[] transferAll(List<Transfer> transfers) {
+        LedgerJournal.checkDisabled("Transfer");
+        Exception[] failures = new Exception[transfers.size()];
+        Map<String, Integer> firstOfKey = new HashMap<String, Integer>();
+        List<Transfer> keyed = new ArrayList<Transfer>();
+        EntityManager em = null;
+        try {
+            em = getEntityManager();
+            em.getTransaction().begin();
+            int booked = 0;
+            for (int i = 0; i < failures.length; i++) {
+                Transfer transfer = transfers.get(i);
+                try {
+                    String key = transfer.getIdempotencyKey();
+                    if (key != null && firstOfKey.containsKey(key)) {
+                        checkSame(transfers.get(firstOfKey.get(key).intValue()), transfer);
+                        failures[i] = failures[firstOfKey.get(key).intValue()];
+                        continue;
+                    }
+                    if (key != null) {
+                        firstOfKey.put(key, Integer.valueOf(i));
+                    }
+                    if (!isBooked(em, transfer)) {
+                        book(em, transfer);
+                        booked++;
+                        if (key != null) {
+                            keyed.add(transfer);
+                        }
+                    }
+                } catch (NonexistentEntityException e) {
+                    failures[i] = e;
+                } catch (IllegalArgumentException e) {
+                    failures[i] = e;
+                }
+            }
+            em.getTransaction().commit();
+            countCache.add(2 * booked);
+            for (Transfer transfer : keyed) {
+                RECENT_TRANSFERS.put(transfer);
+            }
+            return failures;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Books both sides of a transfer and its receipt or, on failure, nothing.
+     */
+    private static void book(EntityManager em, Transfer transfer) throws NonexistentEntityException {
+        Account from = em.find(Account.class, transfer.getFromAccountId());
+        if (from == null) {
+            throw new NonexistentEntityException("The account with id " + transfer.getFromAccountId() + " no longer exists.");
+        }
+        Account to = em.find(Account.class, transfer.getToAccountId());
+        if (to == null) {
+            throw new NonexistentEntityException("The account with id " + transfer.getToAccountId() + " no longer exists.");
+        }
+        // fail on a currency mismatch before either balance changes
+        from.getBalance().subtract(transfer.getAmount());
+        to.getBalance().add(transfer.getAmount());
+        Entry debit = new Entry();
+        debit.setEntryType(EntryType.DEBIT);
+        debit.setMoney(transfer.getAmount());
+        from.post(debit);
+        em.persist(debit);
+        Entry credit = new Entry();
+        credit.setEntryType(EntryType.CREDIT);
+        credit.setMoney(transfer.getAmount());
+        to.post(credit);
+        em.persist(credit);
+        if (transfer.getIdempotencyKey() != null) {
+            em.persist(new TransferReceipt(transfer, debit.getId(), credit.getId()));
+        }
+    }
+
+    /**
+     * Looks the idempotency key up in the cache of recent transfers and, given an
+     * entity manager, in the receipt table.
+     *
+     * @throws IllegalArgumentException the key was booked for a different transfer
+     */
+    private static boolean isBooked(EntityManager em, Transfer transfer) {
+        String key = transfer.getIdempotencyKey();
+        if (key == null) {
+            return false;
+        }
+        Transfer booked = RECENT_TRANSFERS.get(key);
+        if (booked == null && em != null) {
+            TransferReceipt receipt = em.find(TransferReceipt.class, key);
+            if (receipt != null) {
+                booked = receipt.getTransfer();
+                RECENT_TRANSFERS.put(booked);
+            }
+        }
+        if (booked == null) {
+            return false;
+        }
+        checkSame(booked, transfer);
+        return true;
+    }
+
+    private boolean isBookedConcurrently(Transfer transfer) {
+        EntityManager em = getEntityManager();
+        try {
+            return isBooked(em, transfer);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void checkSame(Transfer booked, Transfer transfer) {
+        if (!booked.sameAs(transfer)) {
+            throw new IllegalArgumentException("The idempotency key " + transfer.getIdempotencyKey() + " was used for " + booked);
+        }
+    }
+
+    public int createAll(Collection<Entry> entries) throws NonexistentEntityException {
+        return create(entries.iterator(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public int create(Iterator<Entry> entries) throws NonexistentEntityException {
+        return create(entries, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Persists many entries using JDBC batching and books them on their
+     * accounts, see {@link #create(Entry)}. The entries are written in chunks
+     * of chunkSize, each in its own transaction, and the persistence context is
+     * flushed and cleared every {@link #FLUSH_INTERVAL} entries. When a chunk fails,
+     * the chunks before it stay committed.
+     *
+     * @return number of entries persisted
+     * @throws NonexistentEntityException if an account does not exist
+     * @throws IllegalArgumentException currency mismatch, the chunk is not booked
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public int create(Iterator<Entry> entries, int chunkSize) throws NonexistentEntityException {
+        LedgerJournal.checkDisabled("Creating entries");
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive, was " + chunkSize);
+        }
+        EntityManager em = null;
+        int count = 0;
+        try {
+            em = getEntityManager();
+            while (entries.hasNext()) {
+                em.getTransaction().begin();
+                int inChunk = 0;
+                while (inChunk < chunkSize && entries.hasNext()) {
+                    Entry entry = entries.next();
+                    postToAccount(em, entry);
+                    em.persist(entry);
+                    inChunk++;
+                    if (inChunk % FLUSH_INTERVAL == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.getTransaction().commit();
+                countCache.add(inChunk);
+                em.clear();
+                count += inChunk;
+            }
+            return count;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Changes the type, amount, booking date and account of an entry and rebooks
+     * it: its old amount is taken back out of the balance of its old account and
+     * the new amount booked on its account.
+     *
+     * @throws NonexistentEntityException if the entry or its account does not exist
+     * @throws IllegalArgumentException currency mismatch, nothing is changed
+     * @throws IllegalStateException the ledger journal is enabled
+     */
     public void edit(Entry entry) throws NonexistentEntityException, Exception {
+        LedgerJournal.checkDisabled("Changing entries");
         EntityManager em = null;
         try {
             em = getEntityManager();
             em.getTransaction().begin();
-            entry = em.merge(entry);
+            Entry stored = em.find(Entry.class, entry.getId());
+            if (stored == null) {
+                throw new NonexistentEntityException("The entry with id " + entry.getId() + " no longer exists.");
+            }
+            reverse(em, stored);
+            // copied rather than merged: a merge writes the fields of the stored
+            // Money and leaves its compact form stale
+            stored.setEntryType(entry.getEntryType());
+            stored.setMoney(entry.getMoney());
+            stored.setBookingDate(entry.getBookingDate());
+            stored.setAccount(entry.getAccount());
+            postToAccount(em, stored);
             em.getTransaction().commit();
         } catch (Exception ex) {
             String msg = ex.getLocalizedMessage();
@@ -61,12 +455,23 @@ public class EntryJpaController {
             throw ex;
         } finally {
             if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
                 em.close();
             }
         }
     }
 
+    /**
+     * Removes an entry and takes its amount back out of the balance of its
+     * account.
+     *
+     * @throws NonexistentEntityException if the entry does not exist
+     * @throws IllegalStateException the ledger journal is enabled
+     */
     public void destroy(Long id) throws NonexistentEntityException {
+        LedgerJournal.checkDisabled("Removing entries");
         EntityManager em = null;
         try {
             em = getEntityManager();
@@ -78,15 +483,47 @@ public class EntryJpaController {
             } catch (EntityNotFoundException enfe) {
                 throw new NonexistentEntityException("The entry with id " + id + " no longer exists.", enfe);
             }
+            reverse(em, entry);
             em.remove(entry);
             em.getTransaction().commit();
+            countCache.add(-1);
         } finally {
             if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
                 em.close();
             }
         }
     }
 
+    /**
+     * Books an entry on its account, if it has one.
+     */
+    private static void postToAccount(EntityManager em, Entry entry) throws NonexistentEntityException {
+        if (entry.getAccount() == null) {
+            return;
+        }
+        Long accountId = entry.getAccount().getId();
+        Account account = (accountId != null ? em.find(Account.class, accountId) : null);
+        if (account == null) {
+            throw new NonexistentEntityException("The account with id " + accountId + " no longer exists.");
+        }
+        account.post(entry);
+    }
+
+    /**
+     * Takes a stored entry back out of the balance of its account, if it has one.
+     */
+    private static void reverse(EntityManager em, Entry stored) {
+        if (stored.getAccount() != null) {
+            Account account = em.find(Account.class, stored.getAccount().getId());
+            if (account != null) {
+                account.post(stored.reversal());
+            }
+        }
+    }
+
     public List<Entry> findEntryEntities() {
         return findEntryEntities(true, -1, -1);
     }
@@ -109,6 +546,81 @@ public class EntryJpaController {
         }
     }
 
+    /**
+     * Keyset pagination on id: unlike {@link #findEntryEntities(int, int)} every
+     * page costs the same, no matter how deep it is.
+     *
+     * @param continuationToken token of the previous page, <code>null</code> for the first page
+     */
+    public Page<Entry> findEntryPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return ENTRY_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Read-only listing: the rows are mapped straight into {@link EntrySummary}
+     * objects, nothing is managed or dirty checked.
+     */
+    public List<EntrySummary> findEntrySummaries() {
+        return findEntrySummaries(true, -1, -1);
+    }
+
+    public List<EntrySummary> findEntrySummaries(int maxResults, int firstResult) {
+        return findEntrySummaries(false, maxResults, firstResult);
+    }
+
+    private List<EntrySummary> findEntrySummaries(boolean all, int maxResults, int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery(SELECT_SUMMARIES + " order by o.id");
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return TypedResults.list(q);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * The entries of an account not yet archived by a period closing, ordered by id.
+     */
+    public List<EntrySummary> findEntrySummaries(Long accountId) {
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery(SELECT_SUMMARIES + " where a.id = :accountId order by o.id");
+            q.setParameter("accountId", accountId);
+            return TypedResults.list(q);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination of {@link #findEntrySummaries()}, see {@link #findEntryPage(String, int)}.
+     */
+    public Page<EntrySummary> findEntrySummaryPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return SUMMARY_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    public CloseableIterator<Entry> iterateEntryEntities() {
+        return iterateEntryEntities(ScrollableResultsIterator.DEFAULT_FETCH_SIZE);
+    }
+
+    public CloseableIterator<Entry> iterateEntryEntities(int fetchSize) {
+        return new ScrollableResultsIterator<Entry>(Entry.class, getEntityManager(), "select object(o) from Entry as o", fetchSize);
+    }
+
     public Entry findEntry(Long id) {
         EntityManager em = getEntityManager();
         try {
@@ -119,13 +631,38 @@ public class EntryJpaController {
     }
 
     public int getEntryCount() {
+        return getEntryCount(false);
+    }
+
+    /**
+     * Served from a count cache kept up to date by {@link #create(Entry)} and
+     * {@link #destroy(Long)}; the count is loaded again when the cache is older
+     * than its staleness bound. In approximate mode any loaded count is returned,
+     * so polling does not touch the table at all.
+     */
+    public int getEntryCount(boolean approximate) {
+        long cached = countCache.get(approximate);
+        if (cached >= 0) {
+            return (int) cached;
+        }
+        long stamp = countCache.stamp();
         EntityManager em = getEntityManager();
         try {
             Query q = em.createQuery("select count(o) from Entry as o");
-            return ((Long) q.getSingleResult()).intValue();
+            long count = ((Long) q.getSingleResult()).longValue();
+            countCache.set(count, stamp);
+            return (int) count;
         } finally {
             em.close();
         }
     }
 
+    /**
+     * Drops the cached count of the factory's database, e.g. after writes
+     * bypassing the controllers.
+     */
+    public static void invalidateEntryCount(EntityManagerFactory emf) {
+        EntityCountCache.of(emf, Entry.class).invalidate();
+    }
+
 }
@@ -0,0 +1,140 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Person;
+import java.io.Serializable;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.hibernate.Hibernate;
+
+/**
+ * How much of the Person &rarr; Account &rarr; Entry graph is loaded up front and
+ * with which strategy, so walking the graph after the entity manager is closed
+ * costs no query per collection. Statement counts are for a cold second level
+ * cache and n persons with m accounts:
+ * <ul>
+ * <li>{@link Strategy#JOIN}: 1 statement, rows multiply along the graph</li>
+ * <li>{@link Strategy#BATCH}: 1 + n / {@link Person#ACCOUNTS_BATCH_SIZE}
+ *     + m / {@link Account#ENTRIES_BATCH_SIZE} statements</li>
+ * <li>{@link Strategy#JOIN_PER_LEVEL}: 1 statement per level, each fetch joining
+ *     the collections of one level, so rows multiply only within a level</li>
+ * </ul>
+ *
+ * @author ostauss
+ */
+public final class FetchPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Strategy {
+        JOIN, BATCH, JOIN_PER_LEVEL
+    }
+
+    /**
+     * Persons with their accounts, e.g. for overviews.
+     */
+    public static final FetchPlan SUMMARY_VIEW = new FetchPlan(Strategy.JOIN, false);
+
+    /**
+     * Persons with their accounts and all entries, e.g. for account statements.
+     */
+    public static final FetchPlan STATEMENT_VIEW = new FetchPlan(Strategy.JOIN_PER_LEVEL, true);
+
+    private final Strategy strategy;
+
+    private final boolean entries;
+
+    private FetchPlan(Strategy strategy, boolean entries) {
+        this.strategy = strategy;
+        this.entries = entries;
+    }
+
+    /**
+     * @param entries whether the entries of the accounts are loaded, too
+     */
+    public static FetchPlan of(Strategy strategy, boolean entries) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("strategy must not be null");
+        }
+        return new FetchPlan(strategy, entries);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public boolean isEntries() {
+        return entries;
+    }
+
+    /**
+     * Loads the persons ordered by id with the graph of this plan.
+     *
+     * @param personId the only person to load, <code>null</code> for all persons
+     */
+    List<Person> load(EntityManager em, Long personId) {
+        String where = (personId != null ? " where p.id = :personId" : "");
+        if (strategy == Strategy.JOIN) {
+            Query q = em.createQuery("select distinct p from Person as p left join fetch p.accounts as a"
+                    + (entries ? " left join fetch a.entries" : "") + where + " order by p.id");
+            return list(bind(q, personId));
+        }
+        List<Person> persons = list(bind(em.createQuery("select p from Person as p" + where + " order by p.id"), personId));
+        if (persons.isEmpty()) {
+            return persons;
+        }
+        if (strategy == Strategy.JOIN_PER_LEVEL) {
+            bind(em.createQuery("select distinct p from Person as p left join fetch p.accounts" + where), personId).getResultList();
+            if (entries) {
+                bind(em.createQuery("select distinct a from Account as a left join fetch a.entries where "
+                        + (personId != null ? "a.person.id = :personId" : "a.person is not null")), personId).getResultList();
+            }
+        } else {
+            for (Person person : persons) {
+                Hibernate.initialize(person.getAccounts());
+            }
+            if (entries) {
+                for (Person person : persons) {
+                    for (Account account : person.getAccounts()) {
+                        Hibernate.initialize(account.getEntries());
+                    }
+                }
+            }
+        }
+        return persons;
+    }
+
+    private static Query bind(Query q, Long personId) {
+        return (personId != null ? q.setParameter("personId", personId) : q);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Person> list(Query q) {
+        return q.getResultList();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof FetchPlan)) {
+            return false;
+        }
+        FetchPlan other = (FetchPlan) object;
+        return strategy == other.strategy && entries == other.entries;
+    }
+
+    @Override
+    public int hashCode() {
+        return strategy.hashCode() * 2 + (entries ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return strategy + (entries ? " with entries" : "");
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Transfer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of recently booked transfers by idempotency key, least recently
+ * used first out. A retry found here is answered without touching the database;
+ * older keys are still caught by the receipt table.
+ *
+ * @author ostauss
+ */
+public final class IdempotencyCache {
+
+    /**
+     * Default number of keys, set by system property
+     * <code>de.exxcellent.enterprise.dao.idempotencyCacheSize</code>.
+     */
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("de.exxcellent.enterprise.dao.idempotencyCacheSize", 10000).intValue();
+
+    private final Map<String, Transfer> transfers;
+
+    public IdempotencyCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IdempotencyCache(final int capacity) {
+        this.transfers = new LinkedHashMap<String, Transfer>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Transfer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the booked transfer with the key, <code>null</code> if not cached
+     */
+    public synchronized Transfer get(String idempotencyKey) {
+        return transfers.get(idempotencyKey);
+    }
+
+    /**
+     * Records a committed transfer.
+     */
+    public synchronized void put(Transfer transfer) {
+        transfers.put(transfer.getIdempotencyKey(), transfer);
+    }
+
+    public synchronized int size() {
+        return transfers.size();
+    }
+
+    public synchronized void clear() {
+        transfers.clear();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * Keyset pagination on id, shared by the JPA controllers: a page continues
+ * after the last id of the previous one instead of skipping rows, so every page
+ * costs the same, no matter how deep it is. One row more than requested is
+ * fetched to tell whether there is a next page.
+ *
+ * @author ostauss
+ */
+abstract class KeysetQuery<T> {
+
+    private final String select;
+
+    /**
+     * @param select query with alias <code>o</code> for the paged entity,
+     *        without where and order by clause
+     */
+    KeysetQuery(String select) {
+        this.select = select;
+    }
+
+    /**
+     * @return the id of a row, as selected by <code>o.id</code>
+     */
+    abstract Long idOf(T row);
+
+    /**
+     * @param continuationToken token of the previous page, <code>null</code> for the first page
+     * @throws IllegalArgumentException if maxResults is not positive or the token is invalid
+     */
+    Page<T> find(EntityManager em, String continuationToken, int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive, was " + maxResults);
+        }
+        Long lastId = ContinuationToken.decode(continuationToken);
+        Query q;
+        if (lastId == null) {
+            q = em.createQuery(select + " order by o.id");
+        } else {
+            q = em.createQuery(select + " where o.id > :lastId order by o.id");
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(maxResults + 1);
+        List<T> rows = TypedResults.list(q);
+        if (rows.size() <= maxResults) {
+            return new Page<T>(rows, null);
+        }
+        rows = new ArrayList<T>(rows.subList(0, maxResults));
+        return new Page<T>(rows, ContinuationToken.encode(idOf(rows.get(maxResults - 1))));
+    }
+}
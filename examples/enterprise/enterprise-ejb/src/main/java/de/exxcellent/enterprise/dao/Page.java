@@ -0,0 +1,45 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset paginated query. Pass {@link #getContinuationToken()} to
+ * the next call to get the following page.
+ *
+ * @author ostauss
+ */
+public class Page<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> items;
+
+    private final String continuationToken;
+
+    public Page(List<T> items, String continuationToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.continuationToken = continuationToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return token of the next page, <code>null</code> on the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean isLast() {
+        return continuationToken == null;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.MoneyAccumulator;
+import de.exxcellent.enterprise.model.PeriodClosingBalance;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+/**
+ * Closes booking periods: moves all entries booked up to a period from the Entry
+ * table to the archive and rolls them up into a closing balance per account and
+ * currency. Afterwards balances and statements of the current period read only
+ * the entries booked since.
+ *
+ * @author ostauss
+ */
+public class PeriodCloser {
+
+    public PeriodCloser() {
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public PeriodCloser(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+    private EntityManagerFactory emf = null;
+
+    /**
+     * Closes a period in one transaction. Entries booked late into an earlier,
+     * already closed period are archived with this one.
+     *
+     * @param period as yyyyMM, see {@link Entry#periodOf(Date)}
+     * @return number of archived entries
+     * @throws IllegalArgumentException the period is not before the current one
+     *         or not after the last closed one
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public int close(int period) {
+        LedgerJournal.checkDisabled("Closing a period");
+        int month = period % 100;
+        if (month < 1 || month > 12) {
+            throw new IllegalArgumentException("Period " + period + " is no yyyyMM period.");
+        }
+        if (period >= Entry.periodOf(new Date())) {
+            throw new IllegalArgumentException("Period " + period + " is not over yet.");
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Integer lastClosed = (Integer) em.createQuery("select max(c.period) from PeriodClosingBalance as c").getSingleResult();
+            if (lastClosed != null && period <= lastClosed.intValue()) {
+                throw new IllegalArgumentException("Period " + period + " is not after the last closed period " + lastClosed + ".");
+            }
+            // the entries are marked by the closing period, so exactly the entries
+            // copied are deleted and summed up, whatever is booked meanwhile
+            int archived = em.createQuery("insert into ArchivedEntry (id, entryType, cash, currency, accountId, bookingDate, bookingPeriod)"
+                    + " select e.id, e.entryType, e.money.cash, e.money.currency, e.account.id, e.bookingDate, e.bookingPeriod"
+                    + " from Entry as e where e.bookingPeriod <= :period").setParameter("period", Integer.valueOf(period)).executeUpdate();
+            em.createQuery("update ArchivedEntry as a set a.closingPeriod = :period where a.closingPeriod is null")
+                    .setParameter("period", Integer.valueOf(period)).executeUpdate();
+            em.createQuery("delete from Entry as e where e.id in (select a.id from ArchivedEntry as a where a.closingPeriod = :period)")
+                    .setParameter("period", Integer.valueOf(period)).executeUpdate();
+
+            Map<Long, Map<String, MoneyAccumulator>> sums = new LinkedHashMap<Long, Map<String, MoneyAccumulator>>();
+            Query q = em.createQuery("select a.accountId, a.currency, a.entryType, sum(a.cash) from ArchivedEntry as a"
+                    + " where a.closingPeriod = :period and a.accountId is not null group by a.accountId, a.currency, a.entryType");
+            q.setParameter("period", Integer.valueOf(period));
+            AccountJpaController.addBalances(sums, q.getResultList());
+            q = em.createQuery(AccountJpaController.SELECT_CLOSING_BALANCES
+                    + " where c.accountId in (select a.accountId from ArchivedEntry as a where a.closingPeriod = :period)"
+                    + AccountJpaController.LATEST_CLOSING);
+            q.setParameter("period", Integer.valueOf(period));
+            AccountJpaController.addClosingBalances(sums, q.getResultList());
+            for (Map.Entry<Long, Map<String, MoneyAccumulator>> account : sums.entrySet()) {
+                for (MoneyAccumulator balance : account.getValue().values()) {
+                    em.persist(new PeriodClosingBalance(account.getKey(), period, balance.toMoney()));
+                }
+            }
+            em.getTransaction().commit();
+            EntryJpaController.invalidateEntryCount(emf);
+            return archived;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
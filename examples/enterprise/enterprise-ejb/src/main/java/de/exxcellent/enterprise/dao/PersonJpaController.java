@@ -6,11 +6,11 @@
 package de.exxcellent.enterprise.dao;
 
 import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.PersonSummary;
 import de.exxcellent.enterprise.model.Person;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 import javax.persistence.Query;
 import javax.persistence.EntityNotFoundException;
 
@@ -20,11 +20,34 @@ import javax.persistence.EntityNotFoundException;
  */
 public class PersonJpaController {
 
+    private static final String SELECT_SUMMARIES = "select new de.exxcellent.enterprise.dto.PersonSummary(o.id, o.forename, o.surename) from Person as o";
+
+    private static final KeysetQuery<Person> PERSON_PAGES = new KeysetQuery<Person>("select object(o) from Person as o") {
+        @Override
+        Long idOf(Person row) {
+            return row.getId();
+        }
+    };
+
+    private static final KeysetQuery<PersonSummary> SUMMARY_PAGES = new KeysetQuery<PersonSummary>(SELECT_SUMMARIES) {
+        @Override
+        Long idOf(PersonSummary row) {
+            return row.getId();
+        }
+    };
+
     public PersonJpaController() {
-        emf = Persistence.createEntityManagerFactory("enterprise");
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public PersonJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+        this.countCache = EntityCountCache.of(emf, Person.class);
     }
     private EntityManagerFactory emf = null;
 
+    private final EntityCountCache countCache;
+
     public EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
@@ -36,6 +59,7 @@ public class PersonJpaController {
             em.getTransaction().begin();
             em.persist(person);
             em.getTransaction().commit();
+            countCache.add(1);
         } finally {
             if (em != null) {
                 em.close();
@@ -80,6 +104,7 @@ public class PersonJpaController {
             }
             em.remove(person);
             em.getTransaction().commit();
+            countCache.add(-1);
         } finally {
             if (em != null) {
                 em.close();
@@ -98,7 +123,7 @@ public class PersonJpaController {
     private List<Person> findPersonEntities(boolean all, int maxResults, int firstResult) {
         EntityManager em = getEntityManager();
         try {
-            Query q = em.createQuery("select object(o) from Person as o");
+            Query q = SecondLevelCache.cacheable(em.createQuery("select object(o) from Person as o"));
             if (!all) {
                 q.setMaxResults(maxResults);
                 q.setFirstResult(firstResult);
@@ -109,6 +134,92 @@ public class PersonJpaController {
         }
     }
 
+    /**
+     * Keyset pagination on id: unlike {@link #findPersonEntities(int, int)} every
+     * page costs the same, no matter how deep it is.
+     *
+     * @param continuationToken token of the previous page, <code>null</code> for the first page
+     */
+    public Page<Person> findPersonPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return PERSON_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Read-only listing: the rows are mapped straight into {@link PersonSummary}
+     * objects, nothing is managed or dirty checked.
+     */
+    public List<PersonSummary> findPersonSummaries() {
+        return findPersonSummaries(true, -1, -1);
+    }
+
+    public List<PersonSummary> findPersonSummaries(int maxResults, int firstResult) {
+        return findPersonSummaries(false, maxResults, firstResult);
+    }
+
+    private List<PersonSummary> findPersonSummaries(boolean all, int maxResults, int firstResult) {
+        EntityManager em = getEntityManager();
+        try {
+            Query q = em.createQuery(SELECT_SUMMARIES + " order by o.id");
+            if (!all) {
+                q.setMaxResults(maxResults);
+                q.setFirstResult(firstResult);
+            }
+            return TypedResults.list(q);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Keyset pagination of {@link #findPersonSummaries()}, see {@link #findPersonPage(String, int)}.
+     */
+    public Page<PersonSummary> findPersonSummaryPage(String continuationToken, int maxResults) {
+        EntityManager em = getEntityManager();
+        try {
+            return SUMMARY_PAGES.find(em, continuationToken, maxResults);
+        } finally {
+            em.close();
+        }
+    }
+
+    public CloseableIterator<Person> iteratePersonEntities() {
+        return iteratePersonEntities(ScrollableResultsIterator.DEFAULT_FETCH_SIZE);
+    }
+
+    public CloseableIterator<Person> iteratePersonEntities(int fetchSize) {
+        return new ScrollableResultsIterator<Person>(Person.class, getEntityManager(), "select object(o) from Person as o", fetchSize);
+    }
+
+    /**
+     * All persons with the graph of the plan loaded, ordered by id.
+     */
+    public List<Person> findPersonEntities(FetchPlan plan) {
+        EntityManager em = getEntityManager();
+        try {
+            return plan.load(em, null);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return the person with the graph of the plan loaded, <code>null</code> if not found
+     */
+    public Person findPerson(Long id, FetchPlan plan) {
+        EntityManager em = getEntityManager();
+        try {
+            List<Person> persons = plan.load(em, id);
+            return (persons.isEmpty() ? null : persons.get(0));
+        } finally {
+            em.close();
+        }
+    }
+
     public Person findPerson(Long id) {
         EntityManager em = getEntityManager();
         try {
@@ -119,13 +230,38 @@ public class PersonJpaController {
     }
 
     public int getPersonCount() {
+        return getPersonCount(false);
+    }
+
+    /**
+     * Served from a count cache kept up to date by {@link #create(Person)} and
+     * {@link #destroy(Long)}; the count is loaded again when the cache is older
+     * than its staleness bound. In approximate mode any loaded count is returned,
+     * so polling does not touch the table at all.
+     */
+    public int getPersonCount(boolean approximate) {
+        long cached = countCache.get(approximate);
+        if (cached >= 0) {
+            return (int) cached;
+        }
+        long stamp = countCache.stamp();
         EntityManager em = getEntityManager();
         try {
             Query q = em.createQuery("select count(o) from Person as o");
-            return ((Long) q.getSingleResult()).intValue();
+            long count = ((Long) q.getSingleResult()).longValue();
+            countCache.set(count, stamp);
+            return (int) count;
         } finally {
             em.close();
         }
     }
 
+    /**
+     * Drops the cached count of the factory's database, e.g. after writes
+     * bypassing the controllers.
+     */
+    public static void invalidatePersonCount(EntityManagerFactory emf) {
+        EntityCountCache.of(emf, Person.class).invalidate();
+    }
+
 }
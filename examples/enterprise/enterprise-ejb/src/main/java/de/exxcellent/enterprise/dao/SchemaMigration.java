@@ -0,0 +1,109 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Entry;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Moves the data of older schemas into the columns added by
+ * <code>hibernate.hbm2ddl.auto=update</code>, which creates new columns but
+ * never fills them. Every step only touches rows not migrated yet, so the
+ * migration may run on every start.
+ *
+ * <ul>
+ * <li>Entries were linked to their account through the join table
+ * <code>Account_Entry</code>; the link is copied to <code>Entry.account_id</code>
+ * and the join table dropped, its foreign key would block deleting entries.</li>
+ * <li>Accounts without version get version 0, Hibernate cannot increment
+ * <code>null</code>.</li>
+ * <li>Entry ids were generated by the database; the <code>ID_GENERATOR</code>
+ * row of the entries is raised above the highest existing id, the table
+ * generator would start at 0 and hand out taken ids.</li>
+ * </ul>
+ *
+ * The running balances are not computed here, run
+ * {@link AccountBalanceReconciler#rebuild()} afterwards.
+ *
+ * @author ostauss
+ */
+public class SchemaMigration {
+
+    static final String JOIN_TABLE = "Account_Entry";
+
+    static final String ID_GENERATOR = "ID_GENERATOR";
+
+    static final String ENTRY_ID_GENERATOR = "Entry";
+
+    public SchemaMigration() {
+        this(EntityManagerFactoryProvider.getEntityManagerFactory());
+    }
+
+    public SchemaMigration(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+    private EntityManagerFactory emf = null;
+
+    /**
+     * Runs all steps in one transaction.
+     *
+     * @return number of migrated rows
+     */
+    public int migrate() {
+        EntityManager em = null;
+        try {
+            em = emf.createEntityManager();
+            em.getTransaction().begin();
+            int migrated = 0;
+            if (tableExists(em, JOIN_TABLE)) {
+                migrated += em.createNativeQuery("update Entry set account_id = (select j.Account_id from " + JOIN_TABLE
+                        + " j where j.entries_id = Entry.id) where account_id is null and exists (select j.Account_id from "
+                        + JOIN_TABLE + " j where j.entries_id = Entry.id)").executeUpdate();
+                em.createNativeQuery("drop table " + JOIN_TABLE).executeUpdate();
+            }
+            migrated += em.createNativeQuery("update Account set version = 0 where version is null").executeUpdate();
+            migrated += seedEntryIds(em);
+            em.getTransaction().commit();
+            return migrated;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    private static int seedEntryIds(EntityManager em) {
+        Number maxId = (Number) em.createNativeQuery("select max(id) from Entry").getSingleResult();
+        if (maxId == null) {
+            return 0;
+        }
+        long next = maxId.longValue() / Entry.ID_ALLOCATION_SIZE + 1;
+        int seeded = em.createNativeQuery("update " + ID_GENERATOR + " set GEN_VALUE = " + next
+                + " where GEN_NAME = '" + ENTRY_ID_GENERATOR + "' and GEN_VALUE < " + next).executeUpdate();
+        if (seeded == 0 && em.createNativeQuery("select GEN_VALUE from " + ID_GENERATOR + " where GEN_NAME = '"
+                + ENTRY_ID_GENERATOR + "'").getResultList().isEmpty()) {
+            seeded = em.createNativeQuery("insert into " + ID_GENERATOR + " (GEN_NAME, GEN_VALUE) values ('"
+                    + ENTRY_ID_GENERATOR + "', " + next + ")").executeUpdate();
+        }
+        return seeded;
+    }
+
+    /**
+     * Looks the table up in the Derby catalog of the current schema, through a
+     * native query like the steps; Hibernate 3.2 hands out the JDBC connection
+     * only through the deprecated <code>Session.connection()</code>.
+     */
+    private static boolean tableExists(EntityManager em, String table) {
+        Number tables = (Number) em.createNativeQuery("select count(*) from SYS.SYSTABLES t join SYS.SYSSCHEMAS s"
+                + " on t.SCHEMAID = s.SCHEMAID where s.SCHEMANAME = CURRENT SCHEMA and upper(t.TABLENAME) = '"
+                + table.toUpperCase() + "'").getSingleResult();
+        return tables.intValue() > 0;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.util.NoSuchElementException;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * Streams the results of a query through a forward-only Hibernate cursor. The
+ * entity returned by the previous call of {@link #next()} is evicted and the
+ * session is cleared every fetchSize rows, so memory does not grow with the
+ * number of rows. Returned entities are detached once the iterator moves on.
+ *
+ * @author ostauss
+ */
+final class ScrollableResultsIterator<T> implements CloseableIterator<T> {
+
+    static final int DEFAULT_FETCH_SIZE = 100;
+
+    private final Class<T> type;
+    private final EntityManager em;
+    private final EntityTransaction tx;
+    private final Session session;
+    private final ScrollableResults results;
+    private final int fetchSize;
+    private Object previous = null;
+    private int rows = 0;
+    private Boolean hasNext = null;
+    private boolean closed = false;
+
+    ScrollableResultsIterator(Class<T> type, EntityManager em, String query, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive, was " + fetchSize);
+        }
+        this.type = type;
+        this.em = em;
+        this.fetchSize = fetchSize;
+        this.tx = em.getTransaction();
+        boolean started = false;
+        try {
+            tx.begin();
+            session = (Session) em.getDelegate();
+            results = session.createQuery(query)
+                    .setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .setCacheMode(CacheMode.IGNORE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            started = true;
+        } finally {
+            if (!started) {
+                release();
+            }
+        }
+    }
+
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (hasNext == null) {
+            hasNext = Boolean.valueOf(results.next());
+            if (!hasNext.booleanValue()) {
+                close();
+                return false;
+            }
+        }
+        return hasNext.booleanValue();
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        if (previous != null) {
+            session.evict(previous);
+        }
+        if (++rows % fetchSize == 0) {
+            session.clear();
+        }
+        previous = results.get(0);
+        return type.cast(previous);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Streamed results are read-only.");
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            results.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        try {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Person;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import org.hibernate.SessionFactory;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+
+/**
+ * Access to the second level cache configured in ehcache.xml: region names,
+ * hit/miss statistics and the evictions Hibernate does not do on its own.
+ *
+ * @author ostauss
+ */
+public final class SecondLevelCache {
+
+    public static final String ACCOUNT_REGION = Account.class.getName();
+
+    public static final String PERSON_REGION = Person.class.getName();
+
+    public static final String PERSON_ACCOUNTS_REGION = Person.class.getName() + ".accounts";
+
+    public static final String QUERY_REGION = "org.hibernate.cache.StandardQueryCache";
+
+    private SecondLevelCache() {
+    }
+
+    /**
+     * @return hit, miss and put counts of a region, <code>null</code> for an unknown region
+     */
+    public static SecondLevelCacheStatistics getStatistics(EntityManagerFactory emf, String region) {
+        return sessionFactory(emf).getStatistics().getSecondLevelCacheStatistics(region);
+    }
+
+    /**
+     * Marks a query to be served from the query cache.
+     */
+    static Query cacheable(Query q) {
+        return q.setHint("org.hibernate.cacheable", Boolean.TRUE);
+    }
+
+    /**
+     * Person.accounts is the inverse side of Account.person, so Hibernate does not
+     * evict the cached collection when an account is written.
+     *
+     * @param personId the person owning the collection, <code>null</code> to evict
+     *        the collection of all persons
+     */
+    static void evictPersonAccounts(EntityManagerFactory emf, Long personId) {
+        if (personId == null) {
+            sessionFactory(emf).evictCollection(PERSON_ACCOUNTS_REGION);
+        } else {
+            sessionFactory(emf).evictCollection(PERSON_ACCOUNTS_REGION, personId);
+        }
+    }
+
+    private static SessionFactory sessionFactory(EntityManagerFactory emf) {
+        return ((HibernateEntityManagerFactory) emf).getSessionFactory();
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dao;
+
+import java.util.List;
+import javax.persistence.Query;
+
+/**
+ * Typed result lists for JPA 1.0 queries, whose results are raw lists. The
+ * caller vouches for the type of the selected rows.
+ *
+ * @author ostauss
+ */
+final class TypedResults {
+
+    private TypedResults() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> List<T> list(Query q) {
+        return q.getResultList();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dto;
+
+import de.exxcellent.enterprise.model.AccountState;
+import java.io.Serializable;
+
+/**
+ * Immutable list view of an account, loaded with a constructor expression
+ * instead of a managed entity.
+ *
+ * @author ostauss
+ */
+public final class AccountSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+
+    private final String ean;
+
+    private final AccountState accountState;
+
+    private final Long personId;
+
+    public AccountSummary(Long id, String ean, AccountState accountState, Long personId) {
+        this.id = id;
+        this.ean = ean;
+        this.accountState = accountState;
+        this.personId = personId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEan() {
+        return ean;
+    }
+
+    public AccountState getAccountState() {
+        return accountState;
+    }
+
+    public Long getPersonId() {
+        return personId;
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.dto.AccountSummary[id=" + id + "]";
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dto;
+
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Immutable list view of an entry, loaded with a constructor expression
+ * instead of a managed entity.
+ *
+ * @author ostauss
+ */
+public final class EntrySummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+
+    private final Long accountId;
+
+    private final EntryType entryType;
+
+    private final BigDecimal cash;
+
+    private final String currency;
+
+    private final Date bookingDate;
+
+    public EntrySummary(Long id, Long accountId, EntryType entryType, BigDecimal cash, String currency, Date bookingDate) {
+        this.id = id;
+        this.accountId = accountId;
+        this.entryType = entryType;
+        this.cash = cash;
+        this.currency = currency;
+        this.bookingDate = (bookingDate != null ? new Date(bookingDate.getTime()) : null);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    public Date getBookingDate() {
+        return (bookingDate != null ? new Date(bookingDate.getTime()) : null);
+    }
+
+    /**
+     * @return a new {@link Money} on every call, <code>null</code> without amount
+     */
+    public Money getMoney() {
+        return (cash != null ? new Money(cash, currency) : null);
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.dto.EntrySummary[id=" + id + "]";
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.dto;
+
+import java.io.Serializable;
+
+/**
+ * Immutable list view of a person, loaded with a constructor expression
+ * instead of a managed entity.
+ *
+ * @author ostauss
+ */
+public final class PersonSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+
+    private final String forename;
+
+    private final String surename;
+
+    public PersonSummary(Long id, String forename, String surename) {
+        this.id = id;
+        this.forename = forename;
+        this.surename = surename;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getForename() {
+        return forename;
+    }
+
+    public String getSurename() {
+        return surename;
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.dto.PersonSummary[id=" + id + "]";
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.imports;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only file recording which lines of an import file are committed and
+ * the ids generated for the person and account keys up to there.
+ * <p>
+ * Every chunk is written as a block before its transaction commits:
+ * <pre>
+ * P &lt;person key&gt; &lt;id&gt;         per person of the chunk
+ * A &lt;account key&gt; &lt;id&gt;        per account of the chunk
+ * T &lt;line&gt; &lt;entity&gt; &lt;id&gt;     last line of the chunk and one row it inserted
+ * </pre>
+ * followed by <code>C &lt;line&gt;</code> after the commit, or <code>R</code> when
+ * it failed. A block without <code>C</code> or <code>R</code> is left by a crash
+ * around the commit; whether the transaction made it is decided by looking up
+ * the row named in its <code>T</code> line, see {@link #resolve(boolean)}.
+ * Fields are separated by tabs.
+ *
+ * @author ostauss
+ */
+final class ImportCheckpoint {
+
+    private final File file;
+
+    private final Map<String, Long> persons = new HashMap<String, Long>();
+
+    private final Map<String, Long> accounts = new HashMap<String, Long>();
+
+    private long line = 0;
+
+    private Map<String, Long> pendingPersons = new HashMap<String, Long>();
+
+    private Map<String, Long> pendingAccounts = new HashMap<String, Long>();
+
+    private long pendingLine = -1;
+
+    private String probeEntity = null;
+
+    private Long probeId = null;
+
+    private FileOutputStream out = null;
+
+    private Writer writer = null;
+
+    ImportCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the file, if it exists.
+     *
+     * @return true if the last block is left by a crash around its commit and
+     *         has to be resolved before importing
+     */
+    boolean load() throws IOException {
+        boolean newline = true;
+        if (file.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    read(text.split("\t", -1));
+                }
+            } finally {
+                reader.close();
+            }
+            newline = endsWithNewline();
+        }
+        out = new FileOutputStream(file, true);
+        writer = new OutputStreamWriter(out, "UTF-8");
+        if (!newline) {
+            // a crash cut the last line, do not continue it
+            writer.write('\n');
+        }
+        if (pendingLine >= 0) {
+            return true;
+        }
+        if (!pendingPersons.isEmpty() || !pendingAccounts.isEmpty()) {
+            // the crash happened before the block was complete, so before the commit
+            append("R");
+        }
+        clearPending();
+        return false;
+    }
+
+    /**
+     * Resolves the block left by a crash.
+     *
+     * @param committed whether the row of {@link #getProbeEntity()} and
+     *        {@link #getProbeId()} exists
+     */
+    void resolve(boolean committed) throws IOException {
+        if (committed) {
+            confirm();
+        } else {
+            rollback();
+        }
+    }
+
+    String getProbeEntity() {
+        return probeEntity;
+    }
+
+    Long getProbeId() {
+        return probeId;
+    }
+
+    /**
+     * @return the last committed line of the import file, 0 if none
+     */
+    long getLine() {
+        return line;
+    }
+
+    /**
+     * @return committed person keys and ids
+     */
+    Map<String, Long> getPersons() {
+        return Collections.unmodifiableMap(persons);
+    }
+
+    /**
+     * @return committed account keys and ids
+     */
+    Map<String, Long> getAccounts() {
+        return Collections.unmodifiableMap(accounts);
+    }
+
+    /**
+     * Writes the block of a chunk. Has to be called before the transaction commits.
+     */
+    void prepare(Map<String, Long> chunkPersons, Map<String, Long> chunkAccounts, long chunkLine, String entity, Long id) throws IOException {
+        for (Map.Entry<String, Long> person : chunkPersons.entrySet()) {
+            writer.write("P\t" + person.getKey() + "\t" + person.getValue() + "\n");
+        }
+        for (Map.Entry<String, Long> account : chunkAccounts.entrySet()) {
+            writer.write("A\t" + account.getKey() + "\t" + account.getValue() + "\n");
+        }
+        append("T\t" + chunkLine + "\t" + entity + "\t" + id);
+        pendingPersons = new HashMap<String, Long>(chunkPersons);
+        pendingAccounts = new HashMap<String, Long>(chunkAccounts);
+        pendingLine = chunkLine;
+    }
+
+    /**
+     * The transaction of the prepared block committed.
+     */
+    void confirm() throws IOException {
+        append("C\t" + pendingLine);
+        persons.putAll(pendingPersons);
+        accounts.putAll(pendingAccounts);
+        line = pendingLine;
+        clearPending();
+    }
+
+    /**
+     * The transaction of the prepared block failed.
+     */
+    void rollback() throws IOException {
+        append("R");
+        clearPending();
+    }
+
+    void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void read(String[] fields) {
+        char type = (fields[0].length() == 1 ? fields[0].charAt(0) : '?');
+        try {
+            if (type == 'P' && fields.length == 3) {
+                pendingPersons.put(fields[1], Long.valueOf(fields[2]));
+            } else if (type == 'A' && fields.length == 3) {
+                pendingAccounts.put(fields[1], Long.valueOf(fields[2]));
+            } else if (type == 'T' && fields.length == 4) {
+                pendingLine = Long.parseLong(fields[1]);
+                probeEntity = fields[2];
+                probeId = Long.valueOf(fields[3]);
+            } else if (type == 'C' && fields.length == 2 && pendingLine == Long.parseLong(fields[1])) {
+                persons.putAll(pendingPersons);
+                accounts.putAll(pendingAccounts);
+                line = pendingLine;
+                clearPending();
+            } else if (type == 'R') {
+                clearPending();
+            }
+        } catch (NumberFormatException e) {
+            // a line cut by a crash, its block is never confirmed
+        }
+    }
+
+    private void clearPending() {
+        pendingPersons.clear();
+        pendingAccounts.clear();
+        pendingLine = -1;
+        probeEntity = null;
+        probeId = null;
+    }
+
+    private void append(String text) throws IOException {
+        writer.write(text);
+        writer.write('\n');
+        writer.flush();
+        out.getFD().sync();
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package de.exxcellent.enterprise.imports;
+
+/**
+ * A portfolio import failed; everything before the last checkpoint is committed.
+ */
+public class ImportException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final long line;
+    public ImportException(String message, long line, Throwable cause) {
+        super(message, cause);
+        this.line = line;
+    }
+    public ImportException(String message, long line) {
+        super(message);
+        this.line = line;
+    }
+    /**
+     * @return the line of the import file that failed, 0 if no line is to blame
+     */
+    public long getLine() {
+        return line;
+    }
+}
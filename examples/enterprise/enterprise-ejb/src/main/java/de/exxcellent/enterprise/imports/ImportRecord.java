@@ -0,0 +1,60 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.imports;
+
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+
+/**
+ * One line of an import file on its way through the pipeline. The parser sets
+ * kind and fields, the validator the typed values.
+ *
+ * @author ostauss
+ */
+final class ImportRecord {
+
+    enum Kind {
+        PERSON, ACCOUNT, ENTRY
+    }
+
+    /**
+     * Marks the end of the input in a queue.
+     */
+    static final ImportRecord END = new ImportRecord(null, 0, new String[0]);
+
+    final Kind kind;
+
+    final long line;
+
+    final String[] fields;
+
+    AccountState accountState;
+
+    EntryType entryType;
+
+    Money money;
+
+    ImportRecord(Kind kind, long line, String[] fields) {
+        this.kind = kind;
+        this.line = line;
+        this.fields = fields;
+    }
+
+    /**
+     * The key of the person or account the record defines, the account key for entries.
+     */
+    String key() {
+        return fields[1];
+    }
+
+    /**
+     * The person key of an account.
+     */
+    String personKey() {
+        return fields[2];
+    }
+}
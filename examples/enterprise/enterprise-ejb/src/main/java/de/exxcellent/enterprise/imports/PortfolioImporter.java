@@ -0,0 +1,511 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.imports;
+
+import de.exxcellent.enterprise.concurrent.ExecutorProvider;
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntityManagerFactoryProvider;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.PersonJpaController;
+import de.exxcellent.enterprise.dao.SecondLevelCache;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.MoneyParser;
+import de.exxcellent.enterprise.model.Person;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+
+/**
+ * Bulk import of persons, their accounts and opening entries from a text file,
+ * one record per line, fields separated by <code>;</code>:
+ * <pre>
+ * P;&lt;person key&gt;;&lt;forename&gt;;&lt;surename&gt;
+ * A;&lt;account key&gt;;&lt;person key&gt;;&lt;ean&gt;;&lt;account state&gt;
+ * E;&lt;account key&gt;;&lt;CREDIT|DEBIT&gt;;&lt;amount&gt;, e.g. 100.00 EUR
+ * </pre>
+ * Keys are chosen by the file and only have to be unique within it; a person
+ * or account has to be defined before it is referenced. Empty lines and lines
+ * starting with <code>#</code> are skipped.
+ * <p>
+ * Parsing and validation run on the executor, connected to the writer thread
+ * by bounded queues. The writer inserts through a {@link StatelessSession}, so
+ * nothing is cached in a persistence context and inserts are sent in JDBC
+ * batches of <code>hibernate.jdbc.batch_size</code>; account balances are
+ * updated once per account and chunk. A transaction is committed every
+ * {@link #getCommitInterval()} records and recorded in the checkpoint file.
+ * Running the importer again on the same file and checkpoint continues after
+ * the last committed line.
+ *
+ * @author ostauss
+ */
+public class PortfolioImporter {
+
+    /**
+     * Records per transaction, set by system property
+     * <code>de.exxcellent.enterprise.imports.commitInterval</code>.
+     */
+    public static final int DEFAULT_COMMIT_INTERVAL = Integer.getInteger("de.exxcellent.enterprise.imports.commitInterval", 1000).intValue();
+
+    /**
+     * Capacity of the queues between the stages, set by system property
+     * <code>de.exxcellent.enterprise.imports.queueCapacity</code>.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("de.exxcellent.enterprise.imports.queueCapacity", 1000).intValue();
+
+    private static final long POLL_MILLIS = 100;
+
+    private final EntityManagerFactory emf;
+
+    private final Executor executor;
+
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    public PortfolioImporter() {
+        this(EntityManagerFactoryProvider.getEntityManagerFactory(), ExecutorProvider.getExecutor());
+    }
+
+    /**
+     * @param executor runs the parser and the validator, both at the same time
+     */
+    public PortfolioImporter(EntityManagerFactory emf, Executor executor) {
+        this.emf = emf;
+        this.executor = executor;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("commitInterval must be positive, was " + commitInterval);
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive, was " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Imports the file read by <code>input</code>, continuing after the last
+     * line committed to <code>checkpoint</code>. The reader is closed.
+     *
+     * @param checkpoint file recording the progress, created if missing
+     * @return number of records imported by this call
+     * @throws ImportException invalid record or failed write; the records
+     *         committed before are kept and recorded in the checkpoint
+     * @throws IllegalStateException the ledger journal is enabled
+     */
+    public long run(Reader input, File checkpoint) throws ImportException {
+        LedgerJournal.checkDisabled("Importing a portfolio");
+        SessionFactory sessionFactory = ((HibernateEntityManagerFactory) emf).getSessionFactory();
+        ImportCheckpoint progress = new ImportCheckpoint(checkpoint);
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            if (progress.load()) {
+                progress.resolve(session.get(progress.getProbeEntity(), progress.getProbeId()) != null);
+            }
+            return new Run(input, progress, sessionFactory, session).execute();
+        } catch (IOException e) {
+            throw new ImportException("Checkpoint " + checkpoint + " failed: " + e.getMessage(), 0, e);
+        } finally {
+            session.close();
+            try {
+                progress.close();
+            } catch (IOException e) {
+                // every block is synced when written, nothing is lost
+            }
+            try {
+                input.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * State of one import: the stages, their queues and the current chunk.
+     */
+    private class Run {
+
+        private final BufferedReader input;
+
+        private final ImportCheckpoint progress;
+
+        private final SessionFactory sessionFactory;
+
+        private final StatelessSession session;
+
+        private final BlockingQueue<ImportRecord> parsed = new ArrayBlockingQueue<ImportRecord>(queueCapacity);
+
+        private final BlockingQueue<ImportRecord> validated = new ArrayBlockingQueue<ImportRecord>(queueCapacity);
+
+        private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+        private final Map<String, Long> chunkPersons = new HashMap<String, Long>();
+
+        private final Map<String, Long> chunkAccounts = new HashMap<String, Long>();
+
+        /**
+         * Accounts inserted or loaded in the current chunk.
+         */
+        private final Map<Long, Account> chunkAccountsById = new HashMap<Long, Account>();
+
+        private final Set<Account> chunkPosted = new HashSet<Account>();
+
+        private String probeEntity;
+
+        private Long probeId;
+
+        Run(Reader input, ImportCheckpoint progress, SessionFactory sessionFactory, StatelessSession session) {
+            this.input = new BufferedReader(input);
+            this.progress = progress;
+            this.sessionFactory = sessionFactory;
+            this.session = session;
+        }
+
+        long execute() throws ImportException {
+            Stage parser = new Stage(new Runnable() {
+
+                public void run() {
+                    parse();
+                }
+            });
+            Stage validator = new Stage(new Runnable() {
+
+                public void run() {
+                    validate();
+                }
+            });
+            try {
+                executor.execute(parser);
+                executor.execute(validator);
+                return write();
+            } finally {
+                try {
+                    parser.stop();
+                    validator.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void parse() {
+            long line = 0;
+            try {
+                String text;
+                while ((text = input.readLine()) != null) {
+                    line++;
+                    if (line <= progress.getLine() || text.trim().length() == 0 || text.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = text.split(";", -1);
+                    ImportRecord.Kind kind;
+                    if ("P".equals(fields[0]) && fields.length == 4) {
+                        kind = ImportRecord.Kind.PERSON;
+                    } else if ("A".equals(fields[0]) && fields.length == 5) {
+                        kind = ImportRecord.Kind.ACCOUNT;
+                    } else if ("E".equals(fields[0]) && fields.length == 4) {
+                        kind = ImportRecord.Kind.ENTRY;
+                    } else {
+                        throw new ImportException("Line " + line + " is no P, A or E record with 4, 5 or 4 fields.", line);
+                    }
+                    parsed.put(new ImportRecord(kind, line, fields));
+                }
+                parsed.put(ImportRecord.END);
+            } catch (InterruptedException e) {
+                // the writer stopped
+            } catch (Exception e) {
+                fail(e instanceof ImportException ? e : new ImportException("Reading line " + (line + 1) + " failed: " + e.getMessage(), line + 1, e));
+            }
+        }
+
+        private void validate() {
+            Set<String> persons = new HashSet<String>(progress.getPersons().keySet());
+            Set<String> accounts = new HashSet<String>(progress.getAccounts().keySet());
+            ImportRecord record = null;
+            try {
+                while ((record = take(parsed)) != ImportRecord.END) {
+                    String key = record.key();
+                    if (key.length() == 0 || key.indexOf('\t') >= 0) {
+                        throw invalid(record, "key must not be empty or contain tabs");
+                    }
+                    switch (record.kind) {
+                        case PERSON:
+                            if (!persons.add(key)) {
+                                throw invalid(record, "person " + key + " is defined twice");
+                            }
+                            break;
+                        case ACCOUNT:
+                            if (!persons.contains(record.personKey())) {
+                                throw invalid(record, "person " + record.personKey() + " is not defined");
+                            }
+                            if (!accounts.add(key)) {
+                                throw invalid(record, "account " + key + " is defined twice");
+                            }
+                            record.accountState = AccountState.valueOf(record.fields[4]);
+                            break;
+                        default:
+                            if (!accounts.contains(key)) {
+                                throw invalid(record, "account " + key + " is not defined");
+                            }
+                            record.entryType = EntryType.valueOf(record.fields[2]);
+                            record.money = MoneyParser.parse(record.fields[3], " ");
+                            break;
+                    }
+                    validated.put(record);
+                }
+                validated.put(ImportRecord.END);
+            } catch (InterruptedException e) {
+                // the writer stopped
+            } catch (ImportException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                // illegal enum constants and amounts
+                fail(new ImportException("Line " + record.line + " is invalid: " + e.getMessage(), record.line, e));
+            }
+        }
+
+        private long write() throws ImportException {
+            long written = 0;
+            long lastLine = 0;
+            Transaction tx = null;
+            try {
+                ImportRecord record;
+                while ((record = take(validated)) != ImportRecord.END) {
+                    if (tx == null) {
+                        tx = session.beginTransaction();
+                    }
+                    write(record);
+                    lastLine = record.line;
+                    written++;
+                    if (written % commitInterval == 0) {
+                        commit(tx, lastLine);
+                        tx = null;
+                    }
+                }
+                if (tx != null) {
+                    commit(tx, lastLine);
+                    tx = null;
+                }
+                return written;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImportException("Import interrupted after line " + progress.getLine(), progress.getLine(), e);
+            } catch (IOException e) {
+                throw new ImportException("Checkpoint failed after line " + progress.getLine() + ": " + e.getMessage(), progress.getLine(), e);
+            } catch (RuntimeException e) {
+                throw new ImportException("Writing failed after line " + progress.getLine() + ": " + e.getMessage(), progress.getLine(), e);
+            } finally {
+                if (tx != null && tx.isActive()) {
+                    tx.rollback();
+                }
+                AccountJpaController.invalidateAccountCount(emf);
+                PersonJpaController.invalidatePersonCount(emf);
+                EntryJpaController.invalidateEntryCount(emf);
+            }
+        }
+
+        private void write(ImportRecord record) throws ImportException {
+            switch (record.kind) {
+                case PERSON:
+                    Person person = new Person();
+                    person.setForename(record.fields[2]);
+                    person.setSurename(record.fields[3]);
+                    chunkPersons.put(record.key(), inserted(person));
+                    break;
+                case ACCOUNT:
+                    Person owner = new Person();
+                    owner.setId(personId(record.personKey()));
+                    Account account = new Account();
+                    account.setEan(record.fields[3]);
+                    account.setAccountState(record.accountState);
+                    account.setPerson(owner);
+                    Long accountId = inserted(account);
+                    chunkAccounts.put(record.key(), accountId);
+                    chunkAccountsById.put(accountId, account);
+                    break;
+                default:
+                    Entry entry = new Entry();
+                    entry.setEntryType(record.entryType);
+                    entry.setMoney(record.money);
+                    Account target = account(record);
+                    try {
+                        target.post(entry);
+                    } catch (IllegalArgumentException e) {
+                        throw invalid(record, e.getMessage());
+                    }
+                    inserted(entry);
+                    chunkPosted.add(target);
+                    break;
+            }
+        }
+
+        private void commit(Transaction tx, long lastLine) throws IOException {
+            for (Account account : chunkPosted) {
+                session.update(account);
+            }
+            progress.prepare(chunkPersons, chunkAccounts, lastLine, probeEntity, probeId);
+            try {
+                tx.commit();
+            } catch (RuntimeException e) {
+                progress.rollback();
+                throw e;
+            }
+            progress.confirm();
+            chunkPersons.clear();
+            chunkAccounts.clear();
+            chunkAccountsById.clear();
+            chunkPosted.clear();
+            // the stateless session bypasses the second level cache
+            sessionFactory.evict(Account.class);
+            sessionFactory.evictCollection(SecondLevelCache.PERSON_ACCOUNTS_REGION);
+        }
+
+        private Long inserted(Object entity) {
+            Long id = (Long) session.insert(entity);
+            probeEntity = entity.getClass().getName();
+            probeId = id;
+            return id;
+        }
+
+        private Long personId(String key) {
+            Long id = chunkPersons.get(key);
+            return (id != null ? id : progress.getPersons().get(key));
+        }
+
+        private Account account(ImportRecord record) throws ImportException {
+            Long id = chunkAccounts.get(record.key());
+            if (id == null) {
+                id = progress.getAccounts().get(record.key());
+            }
+            Account account = chunkAccountsById.get(id);
+            if (account == null) {
+                account = (Account) session.get(Account.class, id);
+                if (account == null) {
+                    throw invalid(record, "account " + record.key() + " with id " + id + " no longer exists");
+                }
+                chunkAccountsById.put(id, account);
+            }
+            return account;
+        }
+
+        private ImportRecord take(BlockingQueue<ImportRecord> queue) throws InterruptedException, ImportException {
+            while (true) {
+                ImportRecord record = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    return record;
+                }
+                Exception e = failure.get();
+                if (e instanceof ImportException) {
+                    throw (ImportException) e;
+                } else if (e != null) {
+                    throw new ImportException(e.getMessage(), 0, e);
+                }
+            }
+        }
+
+        private void fail(Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        private ImportException invalid(ImportRecord record, String message) {
+            return new ImportException("Line " + record.line + " is invalid: " + message, record.line);
+        }
+    }
+
+    /**
+     * A stage run on the executor, which can be stopped: its thread is
+     * interrupted and awaited, and its interrupt status cleared before the
+     * thread goes back to the executor.
+     */
+    private static final class Stage implements Runnable {
+
+        private final Runnable work;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Guarded by the stage, like <code>started</code> and <code>stopped</code>.
+         */
+        private Thread runner = null;
+
+        private boolean started = false;
+
+        private boolean stopped = false;
+
+        Stage(Runnable work) {
+            this.work = work;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                started = true;
+                runner = Thread.currentThread();
+            }
+            try {
+                work.run();
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    Thread.interrupted();
+                }
+                done.countDown();
+            }
+        }
+
+        /**
+         * Stops the stage and waits for it to end; a stage not started yet will
+         * not start.
+         */
+        void stop() throws InterruptedException {
+            synchronized (this) {
+                stopped = true;
+                if (!started) {
+                    return;
+                }
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+            done.await();
+        }
+    }
+}
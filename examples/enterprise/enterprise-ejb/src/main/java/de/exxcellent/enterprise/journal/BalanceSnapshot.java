@@ -0,0 +1,187 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.model.Money;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The balances of all accounts known to the {@link Journal} up to a sequence. A
+ * snapshot file is written to a temporary file, forced and renamed, so a crash
+ * leaves either the old or the new snapshot; its CRC32 trailer rejects anything
+ * else. Recovery loads the newest valid snapshot and replays the journal after
+ * its sequence. The previous snapshot is kept, so recovery falls back to it if
+ * the newest one is damaged; the journal is kept from the oldest snapshot on,
+ * see {@link #oldestSequence(File)}.
+ *
+ * @author ostauss
+ */
+final class BalanceSnapshot {
+
+    static final String PREFIX = "snapshot-";
+
+    static final String SUFFIX = ".snap";
+
+    private final long sequence;
+
+    private final Map<Long, Money> balances;
+
+    BalanceSnapshot(long sequence, Map<Long, Money> balances) {
+        this.sequence = sequence;
+        this.balances = balances;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    Map<Long, Money> getBalances() {
+        return balances;
+    }
+
+    /**
+     * Writes a snapshot and deletes the older ones except the previous one.
+     */
+    static void write(File directory, long sequence, Map<Long, Money> balances) throws IOException {
+        int size = 8 + 4;
+        for (Money balance : balances.values()) {
+            size += 8 + JournalRecord.sizeOf(balance);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size + 4);
+        buffer.putLong(sequence);
+        buffer.putInt(balances.size());
+        for (Map.Entry<Long, Money> balance : balances.entrySet()) {
+            buffer.putLong(balance.getKey().longValue());
+            JournalRecord.putMoney(buffer, balance.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, size);
+        buffer.putInt((int) crc.getValue());
+
+        File file = new File(directory, nameOf(sequence));
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Snapshot " + temp + " cannot be renamed to " + file + ".");
+        }
+        long previous = -1L;
+        File[] files = directory.listFiles();
+        for (File old : files) {
+            long oldSequence = sequenceOf(old.getName());
+            if (oldSequence < sequence) {
+                previous = Math.max(previous, oldSequence);
+            }
+        }
+        for (File old : files) {
+            long oldSequence = sequenceOf(old.getName());
+            if (oldSequence >= 0 && oldSequence < previous) {
+                old.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the sequence of the oldest snapshot in a directory, 0 if there is none
+     */
+    static long oldestSequence(File directory) {
+        long oldest = -1L;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long sequence = sequenceOf(file.getName());
+                if (sequence >= 0 && (oldest < 0 || sequence < oldest)) {
+                    oldest = sequence;
+                }
+            }
+        }
+        return Math.max(oldest, 0L);
+    }
+
+    /**
+     * @return the newest valid snapshot, an empty one at sequence 0 if there is none
+     */
+    static BalanceSnapshot load(File directory) throws IOException {
+        BalanceSnapshot newest = new BalanceSnapshot(0L, Collections.<Long, Money>emptyMap());
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return newest;
+        }
+        for (File file : files) {
+            long sequence = sequenceOf(file.getName());
+            if (sequence > newest.getSequence()) {
+                BalanceSnapshot snapshot = read(file);
+                if (snapshot != null) {
+                    newest = snapshot;
+                }
+            }
+        }
+        return newest;
+    }
+
+    static String nameOf(long sequence) {
+        return PREFIX + String.format("%020d", Long.valueOf(sequence)) + SUFFIX;
+    }
+
+    /**
+     * @return the sequence of a snapshot file name, -1 for other names
+     */
+    static long sequenceOf(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * @return the snapshot, <code>null</code> if the file is corrupt
+     */
+    private static BalanceSnapshot read(File file) throws IOException {
+        byte[] content;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() < 16 || in.length() > Integer.MAX_VALUE) {
+                return null;
+            }
+            content = new byte[(int) in.length()];
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if ((int) crc.getValue() != buffer.getInt(content.length - 4)) {
+            return null;
+        }
+        long sequence = buffer.getLong();
+        int count = buffer.getInt();
+        Map<Long, Money> balances = new HashMap<Long, Money>(Math.max(16, count * 4 / 3 + 1));
+        for (int i = 0; i < count; i++) {
+            Long accountId = Long.valueOf(buffer.getLong());
+            balances.put(accountId, JournalRecord.getMoney(buffer));
+        }
+        return new BalanceSnapshot(sequence, balances);
+    }
+}
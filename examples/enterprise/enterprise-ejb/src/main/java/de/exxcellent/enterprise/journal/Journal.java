@@ -0,0 +1,232 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only log of {@link JournalRecord}s in a directory of memory mapped
+ * {@link JournalSegment} files. Records get consecutive sequences starting with
+ * one; a full segment is forced and followed by a new one named after its first
+ * sequence. Segments covered by a snapshot and by the projection are deleted with
+ * {@link #deleteUpTo(long)}.
+ *
+ * <p>
+ * Appends are serialized; readers run concurrently, see {@link #reader(long)}.
+ *
+ * @author ostauss
+ */
+public class Journal {
+
+    /**
+     * Size of a segment file, set by system property
+     * <code>de.exxcellent.enterprise.journal.segmentSize</code>, default 64 MB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger("de.exxcellent.enterprise.journal.segmentSize", 64 << 20).intValue();
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    /**
+     * Segments by ascending first sequence, the last one is appended to.
+     */
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<JournalSegment>();
+
+    private volatile long lastSequence = 0L;
+
+    private boolean closed = false;
+
+    public Journal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed. Only the last
+     * segment may end with a torn record; it is cut off.
+     *
+     * @throws IOException a segment in the middle is corrupt or missing
+     */
+    public Journal(File directory, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024, was " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Journal directory " + directory + " cannot be created.");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            for (File file : segmentFiles(directory)) {
+                JournalSegment segment = JournalSegment.open(file);
+                if (!segments.isEmpty() && segment.getFirstSequence() != lastSequence + 1) {
+                    segment.close();
+                    throw new IOException("Journal segment " + segment + " does not follow sequence " + lastSequence + ".");
+                }
+                segments.add(segment);
+                lastSequence = segment.getLastSequence();
+            }
+        } catch (IOException e) {
+            closeSegments();
+            throw e;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the sequence of the last appended record, 0 for an empty journal
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the first sequence still in the journal
+     */
+    public long getFirstSequence() {
+        return segments.isEmpty() ? lastSequence + 1 : segments.get(0).getFirstSequence();
+    }
+
+    /**
+     * Appends records with consecutive sequences.
+     *
+     * @param force write the records through to the disk before returning
+     * @return the records with their sequences
+     */
+    public synchronized List<JournalRecord> append(List<JournalRecord> records, boolean force) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The journal is closed.");
+        }
+        List<JournalRecord> appended = new ArrayList<JournalRecord>(records.size());
+        for (JournalRecord record : records) {
+            JournalRecord sequenced = record.withSequence(lastSequence + 1);
+            byte[] payload = sequenced.encode();
+            JournalSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || !segment.append(payload)) {
+                if (segment != null) {
+                    segment.force();
+                }
+                segment = JournalSegment.create(directory, sequenced.getSequence(), segmentSize);
+                segments.add(segment);
+                if (!segment.append(payload)) {
+                    throw new IllegalArgumentException("Record " + sequenced + " is larger than a segment.");
+                }
+            }
+            lastSequence = sequenced.getSequence();
+            appended.add(sequenced);
+        }
+        if (force && !segments.isEmpty()) {
+            segments.get(segments.size() - 1).force();
+        }
+        return appended;
+    }
+
+    /**
+     * Writes the appended records through to the disk.
+     */
+    public synchronized void force() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force();
+        }
+    }
+
+    /**
+     * @return a reader starting with the first record at or after a sequence
+     */
+    public JournalReader reader(long fromSequence) {
+        return new JournalReader(this, fromSequence);
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence up to the given one.
+     * The segment appended to is kept.
+     *
+     * @return number of deleted segments
+     */
+    public synchronized int deleteUpTo(long sequence) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(0).getLastSequence() <= sequence) {
+            JournalSegment segment = segments.remove(0);
+            segment.close();
+            if (!segment.getFile().delete()) {
+                throw new IOException("Journal segment " + segment + " cannot be deleted.");
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Forces and closes all segments.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force();
+        }
+        closeSegments();
+    }
+
+    List<JournalSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the record at a position of a segment view, if already appended
+     */
+    static JournalRecord read(JournalSegment segment, ByteBuffer view, int position) {
+        if (position >= segment.getEnd()) {
+            return null;
+        }
+        return JournalSegment.read(view, position);
+    }
+
+    private void closeSegments() throws IOException {
+        IOException failure = null;
+        for (JournalSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static File[] segmentFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+
+            public boolean accept(File file) {
+                return file.isFile() && JournalSegment.sequenceOf(file.getName()) > 0;
+            }
+        });
+        Arrays.sort(files, new Comparator<File>() {
+
+            public int compare(File a, File b) {
+                long x = JournalSegment.sequenceOf(a.getName());
+                long y = JournalSegment.sequenceOf(b.getName());
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.JournalCursor;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
+
+/**
+ * Projects the postings of the {@link Journal} into the Entry and Account tables
+ * on the {@link Executor}, while records are appended. A batch of records is
+ * booked in one transaction together with the {@link JournalCursor}, so every
+ * record is projected exactly once, also across restarts. A failed batch is
+ * retried with growing pauses; postings to accounts deleted in the meantime are
+ * dropped.
+ *
+ * <p>
+ * A batch failing twice the same way is retried record by record, and a record
+ * failing twice the same way on its own is parked: it is written to a file of
+ * its own in the journal directory, see {@link #getParked()}, and the cursor
+ * moves past it, so one bad record does not stop the projection. A record is
+ * parked only if moving the cursor commits, a database that is down parks
+ * nothing.
+ *
+ * @author ostauss
+ */
+final class JournalProjector implements Runnable {
+
+    static final String CURSOR = "ledger";
+
+    static final String PARKED_PREFIX = "parked-";
+
+    static final String PARKED_SUFFIX = ".rec";
+
+    /**
+     * Records projected in one transaction.
+     */
+    static final int MAX_BATCH = 1000;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final long MAX_PAUSE_MILLIS = 10000;
+
+    private final Journal journal;
+
+    private final EntityManagerFactory emf;
+
+    private final Executor executor;
+
+    /**
+     * Reader and batch of the running projection, handed from run to run
+     * through the lock of the projector.
+     */
+    private final JournalReader reader;
+
+    private final List<JournalRecord> batch = new ArrayList<JournalRecord>(MAX_BATCH);
+
+    /**
+     * Whether the projector is handed to the executor or running; guarded by the projector.
+     */
+    private boolean scheduled = false;
+
+    private volatile long projectedSequence;
+
+    private volatile Exception lastFailure = null;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Starts projecting the records not projected yet.
+     */
+    JournalProjector(Journal journal, EntityManagerFactory emf, Executor executor) {
+        this.journal = journal;
+        this.emf = emf;
+        this.executor = executor;
+        this.projectedSequence = loadCursor();
+        this.reader = journal.reader(projectedSequence + 1);
+        schedule();
+    }
+
+    /**
+     * @return the sequence of the last record committed to the database
+     */
+    long getProjectedSequence() {
+        return projectedSequence;
+    }
+
+    /**
+     * @return the failure of the last attempt, <code>null</code> after a success
+     */
+    Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return the parked records, by ascending sequence
+     */
+    List<JournalRecord> getParked() throws IOException {
+        File[] files = journal.getDirectory().listFiles();
+        List<JournalRecord> parked = new ArrayList<JournalRecord>();
+        if (files == null) {
+            return parked;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().startsWith(PARKED_PREFIX) && file.getName().endsWith(PARKED_SUFFIX)) {
+                byte[] payload = new byte[(int) file.length()];
+                RandomAccessFile in = new RandomAccessFile(file, "r");
+                try {
+                    in.readFully(payload);
+                } finally {
+                    in.close();
+                }
+                parked.add(JournalRecord.decode(ByteBuffer.wrap(payload)));
+            }
+        }
+        return parked;
+    }
+
+    /**
+     * Hands the projector to the executor unless it is already, after records
+     * were appended. If the executor refuses, the failure is reported by
+     * {@link #getLastFailure()} and the next append tries again.
+     */
+    void schedule() {
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            executor.execute(this);
+        } catch (RuntimeException e) {
+            lastFailure = e;
+            idle();
+        }
+    }
+
+    /**
+     * Projects the records appended so far and waits for the projection to end.
+     * Gives up on a failing batch; it is projected after the next start.
+     */
+    void shutdown() {
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                awaitIdle();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void awaitIdle() throws InterruptedException {
+        while (scheduled) {
+            wait();
+        }
+    }
+
+    private synchronized void idle() {
+        scheduled = false;
+        notifyAll();
+    }
+
+    public void run() {
+        boolean idle = false;
+        try {
+            drain();
+            idle = true;
+        } catch (InterruptedException e) {
+            // the batch is kept for the next run
+        } finally {
+            if (!idle) {
+                idle();
+            }
+        }
+    }
+
+    /**
+     * Projects records until none is left and marks the projector idle.
+     */
+    private void drain() throws InterruptedException {
+        while (true) {
+            JournalRecord record;
+            while (batch.size() < MAX_BATCH && (record = reader.next()) != null) {
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                synchronized (this) {
+                    // checked under the lock of schedule(), so a record appended
+                    // after the check schedules the projector again
+                    if (reader.getNextSequence() > journal.getLastSequence()) {
+                        idle();
+                        return;
+                    }
+                }
+                continue;
+            }
+            if (!projectOrPark(batch)) {
+                idle();
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Projects records, retrying with growing pauses, and parks the record
+     * failing on its own.
+     *
+     * @return false if the projector was closed before the records were projected
+     */
+    private boolean projectOrPark(List<JournalRecord> records) throws InterruptedException {
+        long pause = POLL_MILLIS;
+        Exception previous = null;
+        while (true) {
+            Exception failure = project(records, false);
+            if (failure == null) {
+                return true;
+            }
+            if (isSame(previous, failure)) {
+                if (records.size() > 1) {
+                    for (JournalRecord record : records) {
+                        if (!projectOrPark(Collections.singletonList(record))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                if (park(records.get(0))) {
+                    return true;
+                }
+            }
+            previous = failure;
+            if (closed) {
+                return false;
+            }
+            Thread.sleep(pause);
+            pause = Math.min(pause * 2, MAX_PAUSE_MILLIS);
+        }
+    }
+
+    /**
+     * Writes a record to its file and moves the cursor past it without booking it.
+     *
+     * @return false if the cursor could not be moved, the file is removed again
+     */
+    private boolean park(JournalRecord record) {
+        File file = new File(journal.getDirectory(), PARKED_PREFIX + String.format("%020d", Long.valueOf(record.getSequence()))
+                + PARKED_SUFFIX);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(record.encode());
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            lastFailure = e;
+            return false;
+        }
+        if (project(Collections.singletonList(record), true) != null) {
+            file.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isSame(Exception previous, Exception failure) {
+        if (previous == null || previous.getClass() != failure.getClass()) {
+            return false;
+        }
+        return previous.getMessage() == null ? failure.getMessage() == null : previous.getMessage().equals(failure.getMessage());
+    }
+
+    /**
+     * @param skip move the cursor past the records without booking them
+     * @return the failure of the transaction, <code>null</code> if it committed
+     */
+    private Exception project(List<JournalRecord> records, boolean skip) {
+        long last = records.get(records.size() - 1).getSequence();
+        int booked = 0;
+        EntityManager em = null;
+        try {
+            em = emf.createEntityManager();
+            em.getTransaction().begin();
+            JournalCursor cursor = em.find(JournalCursor.class, CURSOR);
+            Map<Long, Account> accounts = new HashMap<Long, Account>();
+            for (JournalRecord record : records) {
+                if (skip || record.getSequence() <= cursor.getSequence() || record.getType() != JournalRecord.Type.POSTING) {
+                    continue;
+                }
+                Account account = accounts.get(record.getAccountId());
+                if (account == null) {
+                    account = em.find(Account.class, record.getAccountId());
+                    if (account == null) {
+                        continue;
+                    }
+                    accounts.put(record.getAccountId(), account);
+                }
+                Entry entry = record.toEntry();
+                account.post(entry);
+                if (entry.getId() != null) {
+                    // inserted with the id it got when journaled
+                    ((Session) em.getDelegate()).replicate(entry, ReplicationMode.EXCEPTION);
+                } else {
+                    em.persist(entry);
+                }
+                booked++;
+            }
+            cursor.setSequence(Math.max(cursor.getSequence(), last));
+            em.getTransaction().commit();
+            projectedSequence = cursor.getSequence();
+            lastFailure = null;
+        } catch (Exception e) {
+            lastFailure = e;
+            return e;
+        } finally {
+            if (em != null) {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+        if (booked > 0) {
+            EntryJpaController.invalidateEntryCount(emf);
+        }
+        return null;
+    }
+
+    /**
+     * @return the projected sequence, creating the cursor on first start
+     */
+    private long loadCursor() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            JournalCursor cursor = em.find(JournalCursor.class, CURSOR);
+            if (cursor == null) {
+                cursor = new JournalCursor(CURSOR);
+                em.persist(cursor);
+            }
+            em.getTransaction().commit();
+            return cursor.getSequence();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads the {@link Journal} sequentially, following the appends. Not thread
+ * safe; every reading thread uses a reader of its own.
+ *
+ * @author ostauss
+ */
+public final class JournalReader {
+
+    private final Journal journal;
+
+    private JournalSegment segment = null;
+
+    private ByteBuffer view = null;
+
+    private int position = 0;
+
+    /**
+     * Sequence of the next record to return.
+     */
+    private long next;
+
+    JournalReader(Journal journal, long fromSequence) {
+        this.journal = journal;
+        this.next = Math.max(fromSequence, 1L);
+    }
+
+    /**
+     * @return the sequence of the record {@link #next()} returns next
+     */
+    public long getNextSequence() {
+        return next;
+    }
+
+    /**
+     * @return the next record, <code>null</code> if no further record is appended yet
+     * @throws IllegalStateException the next record was deleted from the journal
+     */
+    public JournalRecord next() {
+        while (true) {
+            if (segment == null && !seek()) {
+                return null;
+            }
+            // checked before reading: a segment followed by another is complete
+            boolean last = isLast(segment);
+            JournalRecord record = Journal.read(segment, view, position);
+            if (record == null) {
+                if (last) {
+                    return null;
+                }
+                segment = null;
+                continue;
+            }
+            position += JournalRecord.HEADER_SIZE + view.getInt(position);
+            if (record.getSequence() >= next) {
+                next = record.getSequence() + 1;
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Positions at the start of the segment holding the next sequence.
+     */
+    private boolean seek() {
+        List<JournalSegment> segments = journal.getSegments();
+        JournalSegment found = null;
+        for (JournalSegment candidate : segments) {
+            if (candidate.getFirstSequence() > next) {
+                break;
+            }
+            found = candidate;
+        }
+        if (found == null) {
+            if (!segments.isEmpty() && segments.get(0).getFirstSequence() > next) {
+                throw new IllegalStateException("Journal sequence " + next + " was deleted, the journal starts with "
+                        + segments.get(0).getFirstSequence() + ".");
+            }
+            return false;
+        }
+        segment = found;
+        view = found.view();
+        position = 0;
+        return true;
+    }
+
+    private boolean isLast(JournalSegment candidate) {
+        List<JournalSegment> segments = journal.getSegments();
+        return segments.isEmpty() || segments.get(segments.size() - 1) == candidate;
+    }
+}
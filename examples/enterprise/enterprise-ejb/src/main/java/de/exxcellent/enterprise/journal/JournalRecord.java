@@ -0,0 +1,235 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * One record of the {@link Journal}. A posting record carries an entry booked on
+ * an account, with the id the entry gets when it is projected; a seed record carries the balance an account had in the database
+ * when the journal saw it first, so replaying the journal yields the balance
+ * without reading the database again.
+ *
+ * <p>
+ * Immutable. The sequence is assigned by {@link Journal#append(java.util.List, boolean)}.
+ *
+ * @author ostauss
+ */
+public final class JournalRecord {
+
+    public enum Type {
+        POSTING, SEED;
+    }
+
+    /**
+     * Length and CRC32 in front of every encoded record.
+     */
+    static final int HEADER_SIZE = 8;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final byte COMPACT = 0;
+
+    private static final byte INFLATED = 1;
+
+    private static final byte NO_ENTRY_TYPE = -1;
+
+    private static final long NO_ENTRY_ID = 0L;
+
+    private final Type type;
+
+    private final long sequence;
+
+    private final long accountId;
+
+    private final long entryId;
+
+    private final EntryType entryType;
+
+    private final long bookingDate;
+
+    private final Money amount;
+
+    private JournalRecord(Type type, long sequence, long accountId, long entryId, EntryType entryType, long bookingDate, Money amount) {
+        this.type = type;
+        this.sequence = sequence;
+        this.accountId = accountId;
+        this.entryId = entryId;
+        this.entryType = entryType;
+        this.bookingDate = bookingDate;
+        this.amount = amount;
+    }
+
+    /**
+     * @param entry entry with type, amount and booking date; its id, if set, is
+     *        the id of the projected entry
+     */
+    public static JournalRecord posting(Long accountId, Entry entry) {
+        if (entry.getEntryType() == null || entry.getMoney() == null || entry.getBookingDate() == null) {
+            throw new IllegalArgumentException("Entry type, amount and booking date are required.");
+        }
+        return new JournalRecord(Type.POSTING, 0L, accountId.longValue(), entry.getId() != null ? entry.getId().longValue() : NO_ENTRY_ID,
+                entry.getEntryType(), entry.getBookingDate().getTime(), entry.getMoney());
+    }
+
+    public static JournalRecord seed(Long accountId, Money balance) {
+        return new JournalRecord(Type.SEED, 0L, accountId.longValue(), NO_ENTRY_ID, null, 0L, balance);
+    }
+
+    JournalRecord withSequence(long sequence) {
+        return new JournalRecord(type, sequence, accountId, entryId, entryType, bookingDate, amount);
+    }
+
+    JournalRecord withEntryId(long entryId) {
+        return new JournalRecord(type, sequence, accountId, entryId, entryType, bookingDate, amount);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Long getAccountId() {
+        return Long.valueOf(accountId);
+    }
+
+    /**
+     * @return the id of the entry of a posting, <code>null</code> for seed
+     *         records and postings whose id is generated by the projection
+     */
+    public Long getEntryId() {
+        return entryId != NO_ENTRY_ID ? Long.valueOf(entryId) : null;
+    }
+
+    /**
+     * @return the entry type, <code>null</code> for seed records
+     */
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    /**
+     * @return the amount of a posting or the balance of a seed
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return a new, unbooked entry of a posting record
+     */
+    public Entry toEntry() {
+        if (type != Type.POSTING) {
+            throw new IllegalStateException("A " + type + " record carries no entry.");
+        }
+        Entry entry = new Entry();
+        entry.setId(getEntryId());
+        entry.setEntryType(entryType);
+        entry.setMoney(amount);
+        entry.setBookingDate(new Date(bookingDate));
+        return entry;
+    }
+
+    /**
+     * @return the balance after applying this record to a balance
+     * @throws IllegalArgumentException currency mismatch
+     */
+    public Money applyTo(Money balance) {
+        if (type == Type.SEED) {
+            return amount;
+        }
+        return entryType == EntryType.DEBIT ? balance.subtract(amount) : balance.add(amount);
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.journal.JournalRecord[sequence=" + sequence + ", type=" + type + ", accountId=" + accountId + "]";
+    }
+
+    /**
+     * @return the payload, without header
+     */
+    byte[] encode() {
+        byte[] payload = new byte[1 + 8 + 8 + 8 + 1 + 8 + sizeOf(amount)];
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(sequence);
+        buffer.putLong(accountId);
+        buffer.putLong(entryId);
+        buffer.put(entryType != null ? (byte) entryType.ordinal() : NO_ENTRY_TYPE);
+        buffer.putLong(bookingDate);
+        putMoney(buffer, amount);
+        return payload;
+    }
+
+    /**
+     * Reads a payload written by {@link #encode()}.
+     */
+    static JournalRecord decode(ByteBuffer payload) {
+        Type type = Type.values()[payload.get()];
+        long sequence = payload.getLong();
+        long accountId = payload.getLong();
+        long entryId = payload.getLong();
+        byte entryType = payload.get();
+        long bookingDate = payload.getLong();
+        Money amount = getMoney(payload);
+        return new JournalRecord(type, sequence, accountId, entryId, entryType != NO_ENTRY_TYPE ? EntryType.values()[entryType] : null, bookingDate, amount);
+    }
+
+    /**
+     * Encoded size of an amount: form, scale, unscaled value and currency.
+     * Values fitting into a <code>long</code> take eight bytes.
+     */
+    static int sizeOf(Money money) {
+        BigInteger unscaled = money.unscaledValue();
+        int value = unscaled.bitLength() < 64 ? 8 : 1 + unscaled.toByteArray().length;
+        return 1 + 4 + value + 1 + money.getCurrency().length();
+    }
+
+    static void putMoney(ByteBuffer buffer, Money money) {
+        BigInteger unscaled = money.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            buffer.put(COMPACT);
+            buffer.putInt(money.scale());
+            buffer.putLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            buffer.put(INFLATED);
+            buffer.putInt(money.scale());
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+        byte[] currency = money.getCurrency().getBytes(ASCII);
+        buffer.put((byte) currency.length);
+        buffer.put(currency);
+    }
+
+    static Money getMoney(ByteBuffer buffer) {
+        byte form = buffer.get();
+        int scale = buffer.getInt();
+        BigInteger unscaled;
+        if (form == COMPACT) {
+            unscaled = BigInteger.valueOf(buffer.getLong());
+        } else {
+            byte[] bytes = new byte[buffer.get() & 0xFF];
+            buffer.get(bytes);
+            unscaled = new BigInteger(bytes);
+        }
+        byte[] currency = new byte[buffer.get() & 0xFF];
+        buffer.get(currency);
+        return new Money(new BigDecimal(unscaled, scale), new String(currency, ASCII));
+    }
+}
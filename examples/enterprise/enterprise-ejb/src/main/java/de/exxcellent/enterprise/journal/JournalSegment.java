@@ -0,0 +1,225 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the {@link Journal}, preallocated and mapped into memory. Records
+ * are appended back to back, each preceded by its length and the CRC32 of its
+ * payload; the zero filled rest of the file marks the end. Opening a segment scans
+ * its records and stops at the first torn or corrupt one, which is cleared, so a
+ * crash loses at most the records not yet forced.
+ *
+ * <p>
+ * One thread appends, any number of threads read through their own
+ * {@link #view()}.
+ *
+ * @author ostauss
+ */
+final class JournalSegment {
+
+    static final String PREFIX = "journal-";
+
+    static final String SUFFIX = ".seg";
+
+    private final File file;
+
+    private final long firstSequence;
+
+    private final RandomAccessFile raf;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Position behind the last complete record, published to readers.
+     */
+    private volatile int end = 0;
+
+    private long lastSequence;
+
+    private JournalSegment(File file, long firstSequence, int size) throws IOException {
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.lastSequence = firstSequence - 1;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an empty segment starting with a sequence.
+     */
+    static JournalSegment create(File directory, long firstSequence, int size) throws IOException {
+        File file = new File(directory, nameOf(firstSequence));
+        if (file.exists()) {
+            throw new IOException("Journal segment " + file + " already exists.");
+        }
+        return new JournalSegment(file, firstSequence, size);
+    }
+
+    /**
+     * Opens an existing segment and scans its records.
+     */
+    static JournalSegment open(File file) throws IOException {
+        JournalSegment segment = new JournalSegment(file, sequenceOf(file.getName()), 0);
+        segment.recover();
+        return segment;
+    }
+
+    static String nameOf(long firstSequence) {
+        return PREFIX + String.format("%020d", Long.valueOf(firstSequence)) + SUFFIX;
+    }
+
+    /**
+     * @return the first sequence of a segment file name, -1 for other names
+     */
+    static long sequenceOf(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * @return the sequence of the last record, one less than the first sequence
+     *         while the segment is empty
+     */
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    boolean isEmpty() {
+        return lastSequence < firstSequence;
+    }
+
+    /**
+     * Appends an encoded record with the next sequence of this segment.
+     *
+     * @return false if the record does not fit; nothing is written then
+     */
+    boolean append(byte[] payload) {
+        int position = end;
+        if (position + JournalRecord.HEADER_SIZE + payload.length > buffer.capacity()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer writer = buffer.duplicate();
+        writer.position(position + JournalRecord.HEADER_SIZE);
+        writer.put(payload);
+        writer.putInt(position + 4, (int) crc.getValue());
+        // the length is written last, so a reader never sees a partial record
+        writer.putInt(position, payload.length);
+        lastSequence++;
+        end = position + JournalRecord.HEADER_SIZE + payload.length;
+        return true;
+    }
+
+    /**
+     * Writes the appended records through to the disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * @return a buffer of its own for one reader
+     */
+    ByteBuffer view() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Reads the record at a position of a view.
+     *
+     * @return the record, <code>null</code> if there is none at the position
+     */
+    static JournalRecord read(ByteBuffer view, int position) {
+        if (position + JournalRecord.HEADER_SIZE > view.capacity()) {
+            return null;
+        }
+        int length = view.getInt(position);
+        if (length <= 0 || position + JournalRecord.HEADER_SIZE + length > view.capacity()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        view.position(position + JournalRecord.HEADER_SIZE);
+        view.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != view.getInt(position + 4)) {
+            return null;
+        }
+        try {
+            return JournalRecord.decode(ByteBuffer.wrap(payload));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Finds the end of the valid records and clears what follows a torn one.
+     */
+    private void recover() {
+        ByteBuffer view = view();
+        int position = 0;
+        JournalRecord record;
+        while ((record = read(view, position)) != null && record.getSequence() == lastSequence + 1) {
+            lastSequence = record.getSequence();
+            position += JournalRecord.HEADER_SIZE + view.getInt(position);
+        }
+        end = position;
+        boolean cleared = false;
+        for (int i = position; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                cleared = true;
+            }
+        }
+        if (cleared) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+}
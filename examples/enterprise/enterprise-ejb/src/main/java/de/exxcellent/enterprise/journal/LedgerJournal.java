@@ -0,0 +1,346 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.concurrent.ExecutorProvider;
+import de.exxcellent.enterprise.dao.EntityManagerFactoryProvider;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.Money;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Books postings into the {@link Journal} instead of the database. A posting is
+ * durable once its record is appended and forced, one sequential write; the
+ * Entry and Account tables are a projection brought up to date asynchronously by
+ * the {@link JournalProjector}. The balance of every account posted to is kept in
+ * memory. It is recovered from the latest {@link BalanceSnapshot} and a replay of
+ * the journal after it, so a restart reads at most the records of one snapshot
+ * interval.
+ *
+ * <p>
+ * The journal must be the only writer of entries: postings bypassing it are not
+ * part of the balances held here. While it is enabled, the other paths writing
+ * entries or balances fail, see {@link #checkDisabled(String)}.
+ *
+ * @author ostauss
+ */
+public class LedgerJournal {
+
+    /**
+     * Directory of the journal, set by system property
+     * <code>de.exxcellent.enterprise.journal.dir</code>. Postings are booked
+     * through the journal only if it is set.
+     */
+    public static final String DIRECTORY = System.getProperty("de.exxcellent.enterprise.journal.dir");
+
+    public static final boolean ENABLED = DIRECTORY != null;
+
+    /**
+     * Records between two snapshots, set by system property
+     * <code>de.exxcellent.enterprise.journal.snapshotInterval</code>.
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = Long.getLong("de.exxcellent.enterprise.journal.snapshotInterval", 100000L).longValue();
+
+    /**
+     * Whether a posting is forced to the disk before it returns, set by system
+     * property <code>de.exxcellent.enterprise.journal.noForce</code>.
+     */
+    public static final boolean FORCE = !Boolean.getBoolean("de.exxcellent.enterprise.journal.noForce");
+
+    private static volatile LedgerJournal instance = null;
+
+    private final Journal journal;
+
+    private final EntityManagerFactory emf;
+
+    private final long snapshotInterval;
+
+    private final Map<Long, Money> balances;
+
+    private long snapshotSequence;
+
+    /**
+     * Next and end of the block of entry ids reserved for the postings, see
+     * {@link EntryJpaController#reserveEntryIds()}.
+     */
+    private long nextEntryId = 0L;
+
+    private long entryIdLimit = 0L;
+
+    private final JournalProjector projector;
+
+    private boolean closed = false;
+
+    public LedgerJournal(File directory, EntityManagerFactory emf, Executor executor) throws IOException {
+        this(directory, emf, executor, Journal.DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens the journal and recovers the balances.
+     *
+     * @param executor runs the {@link JournalProjector}
+     * @throws IOException the journal or its snapshot cannot be read
+     */
+    public LedgerJournal(File directory, EntityManagerFactory emf, Executor executor, int segmentSize, long snapshotInterval)
+            throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshotInterval must be positive, was " + snapshotInterval);
+        }
+        this.journal = new Journal(directory, segmentSize);
+        this.emf = emf;
+        this.snapshotInterval = snapshotInterval;
+        BalanceSnapshot snapshot = BalanceSnapshot.load(directory);
+        this.balances = new HashMap<Long, Money>(snapshot.getBalances());
+        this.snapshotSequence = snapshot.getSequence();
+        replay(journal.reader(snapshotSequence + 1), balances);
+        this.projector = new JournalProjector(journal, emf, executor);
+    }
+
+    /**
+     * The journal shared by the application, opened on first use.
+     *
+     * @throws IllegalStateException the journal is not enabled, see {@link #DIRECTORY}
+     */
+    public static LedgerJournal getInstance() throws IOException {
+        LedgerJournal result = instance;
+        if (result == null) {
+            synchronized (LedgerJournal.class) {
+                result = instance;
+                if (result == null) {
+                    if (!ENABLED) {
+                        throw new IllegalStateException("The ledger journal is not enabled.");
+                    }
+                    result = new LedgerJournal(new File(DIRECTORY), EntityManagerFactoryProvider.getEntityManagerFactory(),
+                            ExecutorProvider.getExecutor());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Guards the paths writing entries or balances past the journal: transfers,
+     * postings through the database, creating, changing and removing entries,
+     * imports and period closing.
+     *
+     * @throws IllegalStateException the journal is enabled
+     */
+    public static void checkDisabled(String operation) {
+        if (ENABLED) {
+            throw new IllegalStateException(operation + " is not available while the ledger journal is enabled.");
+        }
+    }
+
+    /**
+     * Closes the shared journal, if opened.
+     */
+    public static synchronized void close() throws IOException {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Books an entry. The first posting to an account reads its balance from the
+     * database and journals it as seed before the entry. The entry gets its id
+     * here, from a block reserved in the database, and keeps it when projected.
+     *
+     * @return the id of the entry
+     * @throws NonexistentEntityException if the account does not exist
+     * @throws IllegalArgumentException currency mismatch, nothing is booked
+     */
+    public Long post(Long accountId, Entry entry) throws NonexistentEntityException, IOException {
+        Exception failure = postAll(Collections.singletonList(accountId), Collections.singletonList(entry))[0];
+        if (failure instanceof NonexistentEntityException) {
+            throw (NonexistentEntityException) failure;
+        }
+        if (failure != null) {
+            throw (IllegalArgumentException) failure;
+        }
+        return entry.getId();
+    }
+
+    /**
+     * Books entries with one append, forced once, see {@link #post(Long, Entry)}.
+     * An entry that cannot be booked, for a missing account or a currency
+     * mismatch, is left out; the others are booked and get their id set.
+     *
+     * @param accountIds the account of each entry
+     * @return the exception of each entry left out, <code>null</code> for booked entries
+     */
+    public synchronized Exception[] postAll(List<Long> accountIds, List<Entry> entries) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The ledger journal is closed.");
+        }
+        Exception[] failures = new Exception[entries.size()];
+        long[] entryIds = new long[entries.size()];
+        List<JournalRecord> records = new ArrayList<JournalRecord>(entries.size() + 1);
+        Map<Long, Money> updated = new HashMap<Long, Money>();
+        for (int i = 0; i < failures.length; i++) {
+            Long accountId = accountIds.get(i);
+            Entry entry = entries.get(i);
+            try {
+                if (entry.getBookingDate() == null) {
+                    entry.setBookingDate(new Date());
+                }
+                Money balance = updated.get(accountId);
+                if (balance == null) {
+                    balance = balances.get(accountId);
+                }
+                JournalRecord seed = null;
+                if (balance == null) {
+                    balance = loadBalance(accountId);
+                    seed = JournalRecord.seed(accountId, balance);
+                }
+                JournalRecord posting = JournalRecord.posting(accountId, entry);
+                Money after = posting.applyTo(balance);
+                if (seed != null) {
+                    records.add(seed);
+                }
+                entryIds[i] = nextEntryId();
+                records.add(posting.withEntryId(entryIds[i]));
+                updated.put(accountId, after);
+            } catch (NonexistentEntityException e) {
+                failures[i] = e;
+            } catch (IllegalArgumentException e) {
+                failures[i] = e;
+            }
+        }
+        if (records.isEmpty()) {
+            return failures;
+        }
+        List<JournalRecord> appended = journal.append(records, FORCE);
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                entries.get(i).setId(Long.valueOf(entryIds[i]));
+            }
+        }
+        balances.putAll(updated);
+        projector.schedule();
+        long sequence = appended.get(appended.size() - 1).getSequence();
+        if (sequence - snapshotSequence >= snapshotInterval) {
+            snapshot();
+        }
+        return failures;
+    }
+
+    /**
+     * @return the balance of an account posted to through the journal,
+     *         <code>null</code> for other accounts
+     */
+    public synchronized Money balanceOf(Long accountId) {
+        return balances.get(accountId);
+    }
+
+    /**
+     * @return the sequence of the last record in the journal
+     */
+    public long getLastSequence() {
+        return journal.getLastSequence();
+    }
+
+    /**
+     * @return the sequence of the last record projected into the database
+     */
+    public long getProjectedSequence() {
+        return projector.getProjectedSequence();
+    }
+
+    /**
+     * @return the failure of the last projection attempt, <code>null</code> if it succeeded
+     */
+    public Exception getProjectionFailure() {
+        return projector.getLastFailure();
+    }
+
+    /**
+     * @return the records the projection gave up on, see {@link JournalProjector}
+     */
+    public List<JournalRecord> getParkedRecords() throws IOException {
+        return projector.getParked();
+    }
+
+    /**
+     * Writes a snapshot of all balances and deletes the journal segments that are
+     * both covered by the oldest snapshot kept and projected. The journal is
+     * forced first: without {@link #FORCE}, a crash could otherwise lose records
+     * the snapshot already counts.
+     */
+    public synchronized void snapshot() throws IOException {
+        long sequence = journal.getLastSequence();
+        if (sequence > snapshotSequence) {
+            journal.force();
+            BalanceSnapshot.write(journal.getDirectory(), sequence, balances);
+            snapshotSequence = sequence;
+        }
+        journal.deleteUpTo(Math.min(BalanceSnapshot.oldestSequence(journal.getDirectory()), projector.getProjectedSequence()));
+    }
+
+    /**
+     * Stops the projection, after projecting the records appended so far, and
+     * closes the journal.
+     */
+    public void shutdown() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        projector.shutdown();
+        journal.close();
+    }
+
+    /**
+     * @return the next id of the reserved block, reserving a new block if it is used up
+     */
+    private long nextEntryId() {
+        if (nextEntryId == entryIdLimit) {
+            nextEntryId = new EntryJpaController(emf).reserveEntryIds();
+            entryIdLimit = (nextEntryId / Entry.ID_ALLOCATION_SIZE + 1) * Entry.ID_ALLOCATION_SIZE;
+        }
+        return nextEntryId++;
+    }
+
+    private Money loadBalance(Long accountId) throws NonexistentEntityException {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Account account = em.find(Account.class, accountId);
+            if (account == null) {
+                throw new NonexistentEntityException("The account with id " + accountId + " no longer exists.");
+            }
+            return account.getBalance();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Applies the records of a reader to balances.
+     */
+    static void replay(JournalReader reader, Map<Long, Money> balances) {
+        JournalRecord record;
+        while ((record = reader.next()) != null) {
+            Money balance = balances.get(record.getAccountId());
+            balances.put(record.getAccountId(), record.applyTo(balance != null ? balance : Money.ZERO));
+        }
+    }
+}
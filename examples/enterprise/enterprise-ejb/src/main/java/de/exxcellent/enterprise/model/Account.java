@@ -7,7 +7,11 @@ package de.exxcellent.enterprise.model;
 
 import java.io.Serializable;
 import java.util.Set;
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
 import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -16,19 +20,43 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
 
 /**
  *
  * @author ostauss
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(appliesTo = "Account", indexes = {
+    @Index(name = "IDX_ACCOUNT_EAN", columnNames = {"ean"}),
+    @Index(name = "IDX_ACCOUNT_PERSON", columnNames = {"person_id"}),
+    @Index(name = "IDX_ACCOUNT_STATE", columnNames = {"accountState"})
+})
 public class Account implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of entries collections initialized with one statement. Smaller than
+     * for accounts, entries collections are long.
+     */
+    public static final int ENTRIES_BATCH_SIZE = 20;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    /**
+     * Unique where the database supports unique nullable columns; Derby does
+     * not, so the lookups are served by IDX_ACCOUNT_EAN.
+     */
     @Basic
+    @Column(unique = true)
     private String ean;
 
     @Enumerated(value=EnumType.STRING)
@@ -37,9 +65,23 @@ public class Account implements Serializable {
     @ManyToOne
     private Person person;
 
-    @OneToMany
+    @OneToMany(mappedBy = "account")
+    @BatchSize(size = ENTRIES_BATCH_SIZE)
     private Set<Entry> entries;
 
+    /**
+     * Running balance, updated with every posted entry, see {@link #post(Entry)}.
+     */
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "cash", column = @Column(name = "balance_value")),
+        @AttributeOverride(name = "currency", column = @Column(name = "balance_currency"))
+    })
+    private Money balance;
+
+    @Version
+    private Long version;
+
     public Long getId() {
         return id;
     }
@@ -48,6 +90,69 @@ public class Account implements Serializable {
         this.id = id;
     }
 
+    public String getEan() {
+        return ean;
+    }
+
+    public void setEan(String ean) {
+        this.ean = ean;
+    }
+
+    public AccountState getAccountState() {
+        return accountState;
+    }
+
+    public void setAccountState(AccountState accountState) {
+        this.accountState = accountState;
+    }
+
+    public Person getPerson() {
+        return person;
+    }
+
+    public void setPerson(Person person) {
+        this.person = person;
+    }
+
+    public Set<Entry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(Set<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public Money getBalance() {
+        return (balance != null ? balance : Money.ZERO);
+    }
+
+    public void setBalance(Money balance) {
+        this.balance = (balance != null ? balance.materialize() : null);
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * Books an entry on this account and updates the running balance:
+     * {@link EntryType#CREDIT} is added, {@link EntryType#DEBIT} subtracted.
+     * The entries collection is not loaded. An entry without booking date is
+     * booked today.
+     *
+     * @throws IllegalArgumentException currency mismatch
+     */
+    public void post(Entry entry) throws IllegalArgumentException {
+        entry.defaultBookingDate();
+        Money amount = entry.getMoney();
+        if (entry.getEntryType() == EntryType.DEBIT) {
+            setBalance(getBalance().subtract(amount));
+        } else {
+            setBalance(getBalance().add(amount));
+        }
+        entry.setAccount(this);
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
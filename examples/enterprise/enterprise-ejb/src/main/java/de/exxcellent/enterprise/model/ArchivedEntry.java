@@ -0,0 +1,110 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
+
+/**
+ * An {@link Entry} of a closed booking period, moved out of the Entry table by
+ * the period closing. Its amount is part of the {@link PeriodClosingBalance} of
+ * its account; archived entries are read for statements of past periods only.
+ * The columns are flat, so entries are moved with one insert-select statement.
+ *
+ * @author ostauss
+ */
+@Entity
+@javax.persistence.Table(name = "ARCHIVED_ENTRY")
+@Table(appliesTo = "ARCHIVED_ENTRY", indexes = {
+    @Index(name = "IDX_ARCHIVED_ENTRY_ACCOUNT", columnNames = {"accountId", "bookingPeriod"}),
+    @Index(name = "IDX_ARCHIVED_ENTRY_CLOSING", columnNames = {"closingPeriod"})
+})
+public class ArchivedEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The id the entry had.
+     */
+    @Id
+    private Long id;
+
+    @Enumerated(value = EnumType.STRING)
+    private EntryType entryType;
+
+    private BigDecimal cash;
+
+    private String currency;
+
+    private Long accountId;
+
+    @Temporal(TemporalType.DATE)
+    private Date bookingDate;
+
+    private Integer bookingPeriod;
+
+    /**
+     * The period whose closing archived the entry; booked late, it may be later
+     * than the booking period.
+     */
+    private Integer closingPeriod;
+
+    public Long getId() {
+        return id;
+    }
+
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    public Money getMoney() {
+        return (cash != null ? new Money(cash, currency) : null);
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public Date getBookingDate() {
+        return (bookingDate != null ? new Date(bookingDate.getTime()) : null);
+    }
+
+    public Integer getBookingPeriod() {
+        return bookingPeriod;
+    }
+
+    public Integer getClosingPeriod() {
+        return closingPeriod;
+    }
+
+    @Override
+    public int hashCode() {
+        return (id != null ? id.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof ArchivedEntry)) {
+            return false;
+        }
+        ArchivedEntry other = (ArchivedEntry) object;
+        return (this.id == null ? other.id == null : this.id.equals(other.id));
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.model.ArchivedEntry[id=" + id + "]";
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry entry of a currency code used by {@link Money}. Holds the canonical instance of the code and the metadata needed for rounding, so
+ * <tt>Money</tt> neither calls {@link Currency#getInstance(String)} nor keeps its own copy of the code. Units of ISO 4217 codes are registered once and
+ * can be compared by identity.
+ *
+ * @author ostauss
+ */
+public final class CurrencyUnit implements Serializable {
+
+    // --------------------------------- CLASS FIELDS --------------------------
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Registered units by code. Only valid ISO 4217 codes are registered, so the registry cannot grow with arbitrary input.
+     */
+    private static final ConcurrentMap<String, CurrencyUnit> UNITS = new ConcurrentHashMap<String, CurrencyUnit>();
+    /**
+     * Registered units indexed by their three upper case letters, so parsers can look up a code without creating a {@link String}.
+     */
+    private static final CurrencyUnit[] BY_LETTERS = new CurrencyUnit[26 * 26 * 26];
+    // --------------------------------- OBJECT FIELDS -------------------------
+    /**
+     * Canonical currency code.
+     */
+    private final String code;
+    /**
+     * Fraction digits used to normalize values, see {@link Currency#getDefaultFractionDigits()}.
+     */
+    private final int defaultFractionDigits;
+    /**
+     * Whether the code is a valid ISO 4217 code.
+     */
+    private final boolean iso;
+
+    // --------------------------------- CLASS CONSTRUCTORS --------------------
+    /**
+     * Parameter Constructor.
+     */
+    private CurrencyUnit(String code, int defaultFractionDigits, boolean iso) {
+        super();
+        this.code = code;
+        this.defaultFractionDigits = defaultFractionDigits;
+        this.iso = iso;
+    }
+
+    // --------------------------------- PROPERTY METHODS ----------------------
+    /**
+     * Waehrung.
+     *
+     * @return the canonical currency code
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Fraction digits used to normalize values of this currency.
+     *
+     * @return the default fraction digits
+     * @throws IllegalArgumentException
+     *             when the code is not an ISO 4217 code
+     */
+    public int getDefaultFractionDigits() throws IllegalArgumentException {
+        if (!iso) {
+            throw new IllegalArgumentException("Currency [" + code + "] is not a ISO 4217 currency code.");
+        }
+        return defaultFractionDigits;
+    }
+
+    /**
+     * Whether the code is a valid ISO 4217 code.
+     *
+     * @return boolean true for ISO 4217 codes
+     */
+    public boolean isIso() {
+        return iso;
+    }
+
+    // --------------------------------- OBJECT METHODS ------------------------
+    /**
+     * Object Method.
+     *
+     * @return the code
+     */
+    @Override
+    public String toString() {
+        return code;
+    }
+
+    // --------------------------------- CLASS METHODS -------------------------
+    /**
+     * Looks up the unit of a currency code. Codes that are no ISO 4217 code get a fresh, unregistered unit.
+     *
+     * @param code
+     *            currency code, e.g. "EUR"
+     * @return the {@link CurrencyUnit}, <tt>null</tt> for a <tt>null</tt> code
+     */
+    public static CurrencyUnit of(String code) {
+        if (code == null) {
+            return null;
+        }
+        CurrencyUnit unit = UNITS.get(code);
+        if (unit != null) {
+            return unit;
+        }
+        Currency currency = isoCurrency(code);
+        if (currency == null) {
+            return new CurrencyUnit(code, -1, false);
+        }
+        unit = new CurrencyUnit(currency.getCurrencyCode(), currency.getDefaultFractionDigits(), true);
+        CurrencyUnit registered = UNITS.putIfAbsent(unit.getCode(), unit);
+        if (registered != null) {
+            return registered;
+        }
+        int index = letterIndex(unit.getCode(), 0, unit.getCode().length());
+        if (index >= 0) {
+            BY_LETTERS[index] = unit;
+        }
+        return unit;
+    }
+
+    /**
+     * Looks up the unit of a currency code given as range of characters. Registered codes are found without creating a {@link String}.
+     *
+     * @param text
+     *            text containing the code
+     * @param start
+     *            index of the first character of the code
+     * @param end
+     *            index after the last character of the code
+     * @return the {@link CurrencyUnit}
+     */
+    public static CurrencyUnit of(CharSequence text, int start, int end) {
+        int index = letterIndex(text, start, end);
+        if (index >= 0) {
+            CurrencyUnit unit = BY_LETTERS[index];
+            if (unit != null) {
+                return unit;
+            }
+        }
+        return of(text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Canonical instance of a currency code.
+     *
+     * @param code
+     *            currency code
+     * @return the registered instance of the code or code itself, when it is no ISO 4217 code
+     */
+    public static String intern(String code) {
+        CurrencyUnit unit = of(code);
+        return unit != null && unit.isIso() ? unit.getCode() : code;
+    }
+
+    /**
+     * Helper Method. The {@link Currency} of a code without using exceptions for codes of the wrong length.
+     */
+    private static Currency isoCurrency(String code) {
+        if (code.length() != 3) {
+            return null;
+        }
+        try {
+            return Currency.getInstance(code);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper Method. Index into {@link #BY_LETTERS} of a code of three upper case letters.
+     *
+     * @return the index or -1 for any other code
+     */
+    private static int letterIndex(CharSequence text, int start, int end) {
+        if (end - start != 3) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            index = index * 26 + (c - 'A');
+        }
+        return index;
+    }
+
+    /**
+     * Serialization. Keeps registered units unique.
+     *
+     * @return the registered unit
+     */
+    private Object readResolve() {
+        return iso ? of(code) : this;
+    }
+}
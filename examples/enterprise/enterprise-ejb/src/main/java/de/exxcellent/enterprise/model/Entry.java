@@ -6,24 +6,46 @@
 package de.exxcellent.enterprise.model;
 
 import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Date;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.TableGenerator;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
 
 /**
  *
  * @author ostauss
  */
 @Entity
+@Table(appliesTo = "Entry", indexes = {
+    @Index(name = "IDX_ENTRY_ACCOUNT_ID", columnNames = {"account_id", "id"}),
+    @Index(name = "IDX_ENTRY_PERIOD", columnNames = {"bookingPeriod"})
+})
 public class Entry implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Ids taken from the ID_GENERATOR table at once: a value <i>n</i> of the
+     * table stands for the ids <i>n</i> * 50 to <i>n</i> * 50 + 49.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "EntryIdGenerator")
+    @TableGenerator(name = "EntryIdGenerator", table = "ID_GENERATOR", pkColumnName = "GEN_NAME", valueColumnName = "GEN_VALUE",
+            pkColumnValue = "Entry", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @Enumerated(value = EnumType.STRING)
@@ -32,6 +54,18 @@ public class Entry implements Serializable {
     @Embedded
     private Money money;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Account account;
+
+    @Temporal(TemporalType.DATE)
+    private Date bookingDate;
+
+    /**
+     * Partition key derived from the booking date, see {@link #periodOf(Date)}.
+     * Entries of closed periods are moved to {@link ArchivedEntry}.
+     */
+    private Integer bookingPeriod;
+
     public Long getId() {
         return id;
     }
@@ -40,6 +74,75 @@ public class Entry implements Serializable {
         this.id = id;
     }
 
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    public void setEntryType(EntryType entryType) {
+        this.entryType = entryType;
+    }
+
+    public Money getMoney() {
+        return money;
+    }
+
+    public void setMoney(Money money) {
+        this.money = (money != null ? money.materialize() : null);
+    }
+
+    public Date getBookingDate() {
+        return (bookingDate != null ? new Date(bookingDate.getTime()) : null);
+    }
+
+    public void setBookingDate(Date bookingDate) {
+        this.bookingDate = (bookingDate != null ? new Date(bookingDate.getTime()) : null);
+        this.bookingPeriod = (bookingDate != null ? Integer.valueOf(periodOf(bookingDate)) : null);
+    }
+
+    public Integer getBookingPeriod() {
+        return bookingPeriod;
+    }
+
+    /**
+     * Entries without booking date are booked today.
+     */
+    @PrePersist
+    void defaultBookingDate() {
+        if (bookingDate == null) {
+            setBookingDate(new Date());
+        }
+    }
+
+    /**
+     * @return the booking period of a date as yyyyMM, e.g. 201003
+     */
+    public static int periodOf(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    /**
+     * @return an unsaved entry of the opposite type over the same amount, which
+     *         takes this entry back out of a running balance, see
+     *         {@link Account#post(Entry)}
+     */
+    public Entry reversal() {
+        Entry reversal = new Entry();
+        reversal.setEntryType(entryType == EntryType.DEBIT ? EntryType.CREDIT : EntryType.DEBIT);
+        reversal.setMoney(money);
+        reversal.setBookingDate(bookingDate);
+        return reversal;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public void setAccount(Account account) {
+        this.account = account;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
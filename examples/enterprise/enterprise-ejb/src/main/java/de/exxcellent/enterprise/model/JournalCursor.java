@@ -0,0 +1,65 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Sequence of the last journal record projected into the Entry and Account
+ * tables. Updated in the transaction booking the projected entries, so after a
+ * crash the projection continues exactly behind the last committed record.
+ *
+ * @author ostauss
+ */
+@Entity
+public class JournalCursor implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String name;
+
+    private long sequence;
+
+    public JournalCursor() {
+    }
+
+    public JournalCursor(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public int hashCode() {
+        return (name != null ? name.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof JournalCursor)) {
+            return false;
+        }
+        JournalCursor other = (JournalCursor) object;
+        return (this.name == null ? other.name == null : this.name.equals(other.name));
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.model.JournalCursor[name=" + name + ", sequence=" + sequence + "]";
+    }
+}
@@ -10,20 +10,26 @@ import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.Currency;
 import java.util.Locale;
-import java.util.StringTokenizer;
 
 import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
+import javax.persistence.Transient;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 
 /**
  * Immutable Object use as holder for monetary values.
  *
+ * <p>
+ * Values whose unscaled value fits into a <tt>long</tt> are kept in a compact form (unscaled units plus scale) and the arithmetic operations work on this
+ * form without creating any {@link BigDecimal}. The {@link BigDecimal} is created lazily when {@link #getCash()} is called. Operations that overflow the
+ * compact form fall back to {@link BigDecimal} arithmetic.
+ *
+ * <p>
+ * The JPA provider reads the persistent fields directly, so owners embedding a <tt>Money</tt> have to store it with {@link #materialize()}.
+ *
  * @author stauss
  *
  */
@@ -31,7 +37,7 @@ import org.apache.commons.lang.builder.ToStringStyle;
 public class Money implements Comparable<Money>, Serializable {
 
     // --------------------------------- CLASS FIELDS --------------------------
-    public static final String DEFAULT_CURRENCY = Currency.getInstance(Locale.getDefault()).getCurrencyCode();
+    public static final String DEFAULT_CURRENCY = CurrencyUnit.intern(Currency.getInstance(Locale.getDefault()).getCurrencyCode());
     /**
      * Zero Value.
      */
@@ -40,6 +46,24 @@ public class Money implements Comparable<Money>, Serializable {
      * Serial version UID.
      */
     private static final long serialVersionUID = 1L;
+    /**
+     * Compact form not yet derived from {@link #cash}.
+     */
+    private static final byte FORM_UNKNOWN = 0;
+    /**
+     * Value held in {@link #units} and {@link #unitsScale}.
+     */
+    private static final byte FORM_COMPACT = 1;
+    /**
+     * Value only held in {@link #cash}.
+     */
+    private static final byte FORM_INFLATED = 2;
+    /**
+     * Powers of ten fitting into a <tt>long</tt>, used to align scales of compact values.
+     */
+    private static final long[] TEN_POWERS = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+        100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L,
+        1000000000000000000L};
     // --------------------------------- OBJECT FIELDS -------------------------
     /**
      * Money Value. initialized ZERO
@@ -53,6 +77,31 @@ public class Money implements Comparable<Money>, Serializable {
     @Basic
     @Column(name = "currency", nullable = false, unique = false)
     private String currency = DEFAULT_CURRENCY;
+    /**
+     * Compact form: unscaled value. Valid when {@link #form} is {@link #FORM_COMPACT}.
+     */
+    @Transient
+    private long units;
+    /**
+     * Compact form: scale. Valid when {@link #form} is {@link #FORM_COMPACT}.
+     */
+    @Transient
+    private int unitsScale;
+    /**
+     * Which representation is valid. Written last, so a reader seeing {@link #FORM_COMPACT} also sees {@link #units} and {@link #unitsScale}.
+     */
+    @Transient
+    private volatile byte form = FORM_UNKNOWN;
+    /**
+     * Registry entry of {@link #currency}, resolved on demand.
+     */
+    @Transient
+    private transient CurrencyUnit unit;
+    /**
+     * Cached hashcode, 0 when not yet computed.
+     */
+    @Transient
+    private transient int hash;
 
     // --------------------------------- CLASS CONSTRUCTORS --------------------
     /**
@@ -64,7 +113,14 @@ public class Money implements Comparable<Money>, Serializable {
     public Money(Money money) {
         super();
         if (money != null) {
-            this.setCash(money.getCash());
+            if (money.compact()) {
+                this.cash = money.cash;
+                this.units = money.units;
+                this.unitsScale = money.unitsScale;
+                this.form = FORM_COMPACT;
+            } else {
+                this.setCash(money.getCash());
+            }
             this.setCurrency(money.getCurrency());
         }
     }
@@ -106,6 +162,25 @@ public class Money implements Comparable<Money>, Serializable {
         super();
     }
 
+    /**
+     * Compact Constructor. The {@link BigDecimal} value is created on demand.
+     *
+     * @param units
+     *            unscaled value
+     * @param scale
+     *            scale of the unscaled value
+     * @param currency
+     *            waehrung
+     */
+    Money(long units, int scale, String currency) {
+        super();
+        this.cash = null;
+        this.currency = currency;
+        this.units = units;
+        this.unitsScale = scale;
+        this.form = FORM_COMPACT;
+    }
+
     // --------------------------------- PROPERTY METHODS ----------------------
     /**
      * Wert.
@@ -115,6 +190,8 @@ public class Money implements Comparable<Money>, Serializable {
      */
     public void setCash(BigDecimal cash) {
         this.cash = cash;
+        this.hash = 0;
+        this.form = FORM_UNKNOWN;
     }
 
     /**
@@ -123,7 +200,12 @@ public class Money implements Comparable<Money>, Serializable {
      * @return the value
      */
     public BigDecimal getCash() {
-        return cash;
+        BigDecimal value = cash;
+        if (value == null && form == FORM_COMPACT) {
+            value = BigDecimal.valueOf(units, unitsScale);
+            cash = value;
+        }
+        return value;
     }
 
     /**
@@ -133,7 +215,9 @@ public class Money implements Comparable<Money>, Serializable {
      *            the currency to set
      */
     public void setCurrency(String currency) {
-        this.currency = currency;
+        this.currency = CurrencyUnit.intern(currency);
+        this.unit = null;
+        this.hash = 0;
     }
 
     /**
@@ -162,22 +246,51 @@ public class Money implements Comparable<Money>, Serializable {
     @Override
     public int compareTo(Money that) throws ClassCastException, IllegalStateException {
         // ZERO is zero in every currency :-)
-        if (BigDecimal.ZERO.equals(this.getCash()) && BigDecimal.ZERO.equals(that.getCash())) {
+        if (this.zero() && that.zero()) {
             return 0;
         }
         Money one = ensureZeroWithValuableCurrency(this, that);
+        if (one.compact() && that.compact()) {
+            return compareCompact(one.units, one.unitsScale, that.units, that.unitsScale);
+        }
         return one.getCash().compareTo(that.getCash());
     }
 
     /**
-     * Object Method.
+     * Object Method. Computed once from the canonical form of the value (trailing zeros stripped), so 1.0 and 1.00 share the hashcode. ZERO has the
+     * same hashcode in every currency.
      *
      * @see java.util.Hashtable
      * @return hashcode
      */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(getCash() == null ? null : getCash().stripTrailingZeros()).append(getCurrency()).toHashCode();
+        int h = hash;
+        if (h == 0 && !zero()) {
+            long canonicalUnits;
+            int canonicalScale;
+            if (compact()) {
+                canonicalUnits = units;
+                canonicalScale = unitsScale;
+                while (canonicalUnits % 10L == 0L) {
+                    canonicalUnits /= 10L;
+                    canonicalScale--;
+                }
+                h = hash(canonicalUnits, canonicalScale);
+            } else {
+                BigDecimal stripped = getCash().stripTrailingZeros();
+                BigInteger unscaled = stripped.unscaledValue();
+                if (unscaled.bitLength() < Long.SIZE) {
+                    h = hash(unscaled.longValue(), stripped.scale());
+                } else {
+                    h = 31 * unscaled.hashCode() + stripped.scale();
+                }
+            }
+            String code = getCurrency();
+            h = 31 * h + (code == null ? 0 : code.hashCode());
+            hash = h;
+        }
+        return h;
     }
 
     /**
@@ -203,10 +316,14 @@ public class Money implements Comparable<Money>, Serializable {
         if (this.zero() && other.zero()) {
             return true;
         }
-        return new EqualsBuilder() // build equals
-                .appendSuper(getCash().compareTo(other.getCash()) == 0) // equality of BigDecimal is best checked with compareTo
-                .append(getCurrency(), (other).getCurrency()) // Check for same currency
-                .isEquals();
+        if (!sameCurrency(this, other)) {
+            return false;
+        }
+        if (this.compact() && other.compact()) {
+            return compareCompact(this.units, this.unitsScale, other.units, other.unitsScale) == 0;
+        }
+        // equality of BigDecimal is best checked with compareTo
+        return getCash().compareTo(other.getCash()) == 0;
     }
 
     /**
@@ -229,7 +346,11 @@ public class Money implements Comparable<Money>, Serializable {
      * @return Money normalized
      */
     public Money normalize(RoundingMode roundingMode) {
-        return new Money(getCash().setScale(Currency.getInstance(getCurrency()).getDefaultFractionDigits(), roundingMode), this.getCurrency());
+        int digits = currencyUnit().getDefaultFractionDigits();
+        if (compact() && unitsScale <= digits && fitsScaledUp(units, (long) digits - unitsScale)) {
+            return new Money(scaleUp(units, digits - unitsScale), digits, this.getCurrency());
+        }
+        return new Money(getCash().setScale(digits, roundingMode), this.getCurrency());
     }
 
     /**
@@ -247,6 +368,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return <tt>abs(this)</tt>
      */
     public Money abs() {
+        if (compact() && units != Long.MIN_VALUE) {
+            return units < 0L ? new Money(-units, unitsScale, getCurrency()) : new Money(units, unitsScale, getCurrency());
+        }
         return new Money(this.getCash().abs(), this.getCurrency());
     }
 
@@ -264,6 +388,12 @@ public class Money implements Comparable<Money>, Serializable {
      */
     public Money add(Money augend) throws IllegalArgumentException {
         Money one = ensureZeroWithValuableCurrency(this, augend);
+        if (one.compact() && augend.compact()) {
+            Money sum = addCompact(one.units, one.unitsScale, augend.units, augend.unitsScale, one.getCurrency());
+            if (sum != null) {
+                return sum;
+            }
+        }
         return new Money(one.getCash().add(augend.getCash()), one.getCurrency());
     }
 
@@ -280,6 +410,12 @@ public class Money implements Comparable<Money>, Serializable {
      */
     public Money subtract(Money subtrahend) throws IllegalArgumentException {
         Money one = ensureZeroWithValuableCurrency(this, subtrahend);
+        if (one.compact() && subtrahend.compact() && subtrahend.units != Long.MIN_VALUE) {
+            Money difference = addCompact(one.units, one.unitsScale, -subtrahend.units, subtrahend.unitsScale, one.getCurrency());
+            if (difference != null) {
+                return difference;
+            }
+        }
         return new Money(one.getCash().subtract(subtrahend.getCash()), one.getCurrency());
     }
 
@@ -296,6 +432,16 @@ public class Money implements Comparable<Money>, Serializable {
      */
     public Money multiply(Money multiplicand) throws IllegalArgumentException {
         Money one = ensureZeroWithValuableCurrency(this, multiplicand);
+        if (one.compact() && multiplicand.compact()) {
+            long x = one.units;
+            long y = multiplicand.units;
+            long scale = (long) one.unitsScale + multiplicand.unitsScale;
+            long product = x * y;
+            boolean overflow = (((Math.abs(x) | Math.abs(y)) >>> 31) != 0L) && ((y != 0L && product / y != x) || (x == Long.MIN_VALUE && y == -1L));
+            if (!overflow && scale >= Integer.MIN_VALUE && scale <= Integer.MAX_VALUE) {
+                return new Money(product, (int) scale, one.getCurrency());
+            }
+        }
         return new Money(one.getCash().multiply(multiplicand.getCash()), one.getCurrency());
     }
 
@@ -387,6 +533,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return <tt>-this</tt>.
      */
     public Money negate() {
+        if (compact() && units != Long.MIN_VALUE) {
+            return new Money(-units, unitsScale, getCurrency());
+        }
         return new Money(getCash().negate(), getCurrency());
     }
 
@@ -396,6 +545,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return boolean true when negative
      */
     public boolean negative() {
+        if (compact()) {
+            return units < 0L;
+        }
         return (getCash().compareTo(BigDecimal.ZERO) < 0);
     }
 
@@ -418,6 +570,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return boolean true when positive
      */
     public boolean positive() {
+        if (compact()) {
+            return units >= 0L;
+        }
         return (getCash().compareTo(BigDecimal.ZERO) >= 0);
     }
 
@@ -430,6 +585,9 @@ public class Money implements Comparable<Money>, Serializable {
         if (this == ZERO) {
             return true;
         }
+        if (compact()) {
+            return units == 0L;
+        }
         return this.getCash() == null || BigDecimal.ZERO.compareTo(this.getCash()) == 0;
     }
 
@@ -439,6 +597,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return -1, 0, or 1 as the value of this <tt>Money</tt> is negative, zero, or positive.
      */
     public int signum() {
+        if (compact()) {
+            return units < 0L ? -1 : (units == 0L ? 0 : 1);
+        }
         return this.getCash().signum();
     }
 
@@ -450,6 +611,9 @@ public class Money implements Comparable<Money>, Serializable {
      * @return the scale of this <tt>Money</tt>.
      */
     public int scale() {
+        if (compact()) {
+            return unitsScale;
+        }
         return this.getCash().scale();
     }
 
@@ -472,12 +636,81 @@ public class Money implements Comparable<Money>, Serializable {
      * @return the unscaled value of this <tt>Money</tt>.
      */
     public BigInteger unscaledValue() {
+        if (compact()) {
+            return BigInteger.valueOf(units);
+        }
         return this.getCash().unscaledValue();
     }
 
+    /**
+     * Ensures the {@link BigDecimal} value is created, so the JPA provider which reads the fields directly finds it. Used by owners embedding
+     * <tt>Money</tt>.
+     *
+     * @return <tt>this</tt>
+     */
+    Money materialize() {
+        getCash();
+        return this;
+    }
+
+    /**
+     * Registry entry of the currency. Replaces a currency code set by the JPA provider with the canonical instance.
+     *
+     * @return the {@link CurrencyUnit}, <tt>null</tt> when no currency is set
+     */
+    CurrencyUnit currencyUnit() {
+        CurrencyUnit result = unit;
+        if (result == null && currency != null) {
+            result = CurrencyUnit.of(currency);
+            if (result.isIso()) {
+                currency = result.getCode();
+            }
+            unit = result;
+        }
+        return result;
+    }
+
+    /**
+     * Compact form: unscaled value. Only valid when {@link #compact()} is true.
+     *
+     * @return the unscaled value
+     */
+    long compactUnits() {
+        return units;
+    }
+
+    /**
+     * Compact form: scale. Only valid when {@link #compact()} is true.
+     *
+     * @return the scale
+     */
+    int compactScale() {
+        return unitsScale;
+    }
+
+    /**
+     * Derives the compact form from {@link #cash} once and answers whether the value is held compact.
+     *
+     * @return boolean true when {@link #units} and {@link #unitsScale} are valid
+     */
+    boolean compact() {
+        byte f = form;
+        if (f == FORM_UNKNOWN) {
+            BigDecimal value = cash;
+            f = FORM_INFLATED;
+            if (value != null && value.precision() < TEN_POWERS.length) {
+                units = value.unscaledValue().longValue();
+                unitsScale = value.scale();
+                f = FORM_COMPACT;
+            }
+            form = f;
+        }
+        return f == FORM_COMPACT;
+    }
+
     // --------------------------------- CLASS METHODS -------------------------
     /**
-     * Method allow to parse Strings like "10.00 EUR" or "EUR 10.00".
+     * Method allow to parse Strings like "10.00 EUR" or "EUR 10.00". See {@link MoneyParser} for parsing ranges of buffers.
      *
      * @param str
      *            String to parse
@@ -486,21 +719,7 @@ public class Money implements Comparable<Money>, Serializable {
      * @return {@link Money} created instance.
      */
     public static Money parse(String str, String delim) {
-        StringTokenizer tokenizer = new StringTokenizer(str, delim);
-        if (tokenizer.countTokens() != 2) {
-            throw new IllegalStateException("Value [" + str + "] is illegal. Should contain 2 token separated with [" + delim + "] delim");
-        }
-        String one = tokenizer.nextToken();
-        String two = tokenizer.nextToken();
-        BigDecimal value = isBigDecimal(one);
-        if (value != null) {
-            return new Money(value, two);
-        }
-        value = isBigDecimal(two);
-        if (value != null) {
-            return new Money(value, one);
-        }
-        return new Money(one, two);
+        return MoneyParser.parse(str, delim);
     }
 
     /**
@@ -516,14 +735,15 @@ public class Money implements Comparable<Money>, Serializable {
      *             when non is ZERO and Currencies are different.
      */
     private static Money ensureZeroWithValuableCurrency(Money one, Money two) throws IllegalArgumentException {
-        if (one.zero() && two.zero()) {
+        if (sameCurrency(one, two)) {
             return one;
         }
-        if (one.getCurrency().equals(two.getCurrency())) {
+        boolean zeroOne = one.zero();
+        if (zeroOne && two.zero()) {
             return one;
         }
-        if (one.zero()) {
-            return new Money(BigDecimal.ZERO, two.getCurrency());
+        if (zeroOne) {
+            return new Money(0L, 0, two.getCurrency());
         }
         if (two.zero()) {
             return one;
@@ -532,17 +752,96 @@ public class Money implements Comparable<Money>, Serializable {
     }
 
     /**
-     * Local helper handle exception.
+     * Helper Method. Compares the currencies, registered currencies by identity.
+     *
+     * @param one
+     *            Master Money
+     * @param two
+     *            Slave Money
+     * @return boolean true when both have the same currency
+     */
+    private static boolean sameCurrency(Money one, Money two) {
+        if (one.getCurrency() == two.getCurrency()) {
+            return true;
+        }
+        CurrencyUnit unitOne = one.currencyUnit();
+        CurrencyUnit unitTwo = two.currencyUnit();
+        if (unitOne == unitTwo) {
+            return true;
+        }
+        return unitOne != null && unitTwo != null && !unitOne.isIso() && unitOne.getCode().equals(unitTwo.getCode());
+    }
+
+    /**
+     * Helper Method. Adds two compact values, aligning the scales to the bigger one like {@link BigDecimal#add(BigDecimal)} does.
      *
-     * @param value
-     *            String to initialize {@link BigDecimal}
-     * @return the Created {@link BigDecimal}
+     * @return the sum or <tt>null</tt> when it does not fit into the compact form
      */
-    private static BigDecimal isBigDecimal(String value) {
-        try {
-            return new BigDecimal(value);
-        } catch (NumberFormatException t) {
+    private static Money addCompact(long one, int oneScale, long two, int twoScale, String currency) {
+        if (oneScale < twoScale) {
+            if (!fitsScaledUp(one, (long) twoScale - oneScale)) {
+                return null;
+            }
+            one = scaleUp(one, twoScale - oneScale);
+            oneScale = twoScale;
+        } else if (twoScale < oneScale) {
+            if (!fitsScaledUp(two, (long) oneScale - twoScale)) {
+                return null;
+            }
+            two = scaleUp(two, oneScale - twoScale);
+        }
+        long sum = one + two;
+        if (((one ^ sum) & (two ^ sum)) < 0L) {
             return null;
         }
+        return new Money(sum, oneScale, currency);
+    }
+
+    /**
+     * Helper Method. Compares two compact values. When aligning the scales overflows, the aligned value is out of the range of the other one.
+     *
+     * @return -1, 0, or 1 as one is less than, equal to, or greater than two
+     */
+    private static int compareCompact(long one, int oneScale, long two, int twoScale) {
+        if (oneScale < twoScale) {
+            if (!fitsScaledUp(one, (long) twoScale - oneScale)) {
+                return one < 0L ? -1 : 1;
+            }
+            one = scaleUp(one, twoScale - oneScale);
+        } else if (twoScale < oneScale) {
+            if (!fitsScaledUp(two, (long) oneScale - twoScale)) {
+                return two < 0L ? 1 : -1;
+            }
+            two = scaleUp(two, oneScale - twoScale);
+        }
+        return one < two ? -1 : (one == two ? 0 : 1);
+    }
+
+    /**
+     * Helper Method. Hashcode of a canonical value fitting into a <tt>long</tt>.
+     */
+    private static int hash(long units, int scale) {
+        return 31 * (int) (units ^ (units >>> 32)) + scale;
+    }
+
+    /**
+     * Helper Method. Whether <tt>units * 10<sup>digits</sup></tt> fits into a <tt>long</tt>.
+     */
+    static boolean fitsScaledUp(long units, long digits) {
+        if (units == 0L) {
+            return true;
+        }
+        if (digits >= TEN_POWERS.length) {
+            return false;
+        }
+        long bound = Long.MAX_VALUE / TEN_POWERS[(int) digits];
+        return units <= bound && units >= -bound;
+    }
+
+    /**
+     * Helper Method. <tt>units * 10<sup>digits</sup></tt>, see {@link #fitsScaledUp(long, long)}.
+     */
+    static long scaleUp(long units, int digits) {
+        return units == 0L ? 0L : units * TEN_POWERS[digits];
     }
 }
@@ -0,0 +1,222 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable holder summing up many {@link Money} values in place. Folding with {@link Money#add(Money)} creates a new <tt>Money</tt> for every step, the
+ * accumulator keeps the running sum in a <tt>long</tt> and only switches to {@link BigDecimal} when the sum overflows. The result is taken with
+ * {@link #toMoney()}.
+ *
+ * <p>
+ * The currency rules are the ones of {@link Money}: ZERO is zero in every currency, all other values have to share one currency. The currency is fixed
+ * by the first non ZERO value, every further step only compares it.
+ *
+ * <p>
+ * Not thread safe.
+ *
+ * @author ostauss
+ */
+public final class MoneyAccumulator {
+
+    // --------------------------------- OBJECT FIELDS -------------------------
+    /**
+     * Currency of the sum, <tt>null</tt> as long as only ZERO values were added.
+     */
+    private String currency;
+    /**
+     * Unscaled sum, valid as long as {@link #inflated} is <tt>null</tt>.
+     */
+    private long units;
+    /**
+     * Scale of the sum, the biggest scale added so far.
+     */
+    private int scale;
+    /**
+     * Sum once it does not fit into a <tt>long</tt> anymore.
+     */
+    private BigDecimal inflated;
+
+    // --------------------------------- CLASS CONSTRUCTORS --------------------
+    /**
+     * Default Constructor. The currency is taken from the first non ZERO value.
+     */
+    public MoneyAccumulator() {
+        super();
+    }
+
+    /**
+     * Parameter Constructor.
+     *
+     * @param currency
+     *            waehrung of the sum
+     */
+    public MoneyAccumulator(String currency) {
+        super();
+        this.currency = currency;
+    }
+
+    // --------------------------------- BUSINESS METHODS ----------------------
+    /**
+     * Adds a value to the sum.
+     *
+     * @param augend
+     *            value to be added
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException
+     *             currency mismatch
+     */
+    public MoneyAccumulator add(Money augend) throws IllegalArgumentException {
+        accumulate(augend, false);
+        return this;
+    }
+
+    /**
+     * Subtracts a value from the sum.
+     *
+     * @param subtrahend
+     *            value to be subtracted
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException
+     *             currency mismatch
+     */
+    public MoneyAccumulator subtract(Money subtrahend) throws IllegalArgumentException {
+        accumulate(subtrahend, true);
+        return this;
+    }
+
+    /**
+     * Books an entry: {@link EntryType#CREDIT} is added, {@link EntryType#DEBIT} is subtracted.
+     *
+     * @param entry
+     *            the entry to book
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException
+     *             currency mismatch
+     */
+    public MoneyAccumulator post(Entry entry) throws IllegalArgumentException {
+        accumulate(entry.getMoney(), entry.getEntryType() == EntryType.DEBIT);
+        return this;
+    }
+
+    /**
+     * Books all entries, see {@link #post(Entry)}.
+     *
+     * @param entries
+     *            the entries to book
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException
+     *             currency mismatch
+     */
+    public MoneyAccumulator postAll(Iterable<Entry> entries) throws IllegalArgumentException {
+        for (Entry entry : entries) {
+            post(entry);
+        }
+        return this;
+    }
+
+    /**
+     * The sum as immutable value. Without any non ZERO value the currency is {@link Money#DEFAULT_CURRENCY}.
+     *
+     * @return {@link Money} holding the sum
+     */
+    public Money toMoney() {
+        String resultCurrency = currency != null ? currency : Money.DEFAULT_CURRENCY;
+        if (inflated != null) {
+            return new Money(inflated, resultCurrency);
+        }
+        return new Money(units, scale, resultCurrency);
+    }
+
+    /**
+     * Sets the sum back to ZERO.
+     *
+     * @param keepCurrency
+     *            true to keep the currency of the sum
+     */
+    public void reset(boolean keepCurrency) {
+        if (!keepCurrency) {
+            currency = null;
+        }
+        units = 0L;
+        scale = 0;
+        inflated = null;
+    }
+
+    // --------------------------------- HELPER METHODS ------------------------
+    /**
+     * Adds or subtracts one value.
+     */
+    private void accumulate(Money money, boolean negate) {
+        ensureCurrency(money);
+        if (inflated == null && money.compact()) {
+            long value = money.compactUnits();
+            if (value != Long.MIN_VALUE || !negate) {
+                if (addCompact(negate ? -value : value, money.compactScale())) {
+                    return;
+                }
+            }
+        }
+        BigDecimal value = money.getCash();
+        if (value == null) {
+            return;
+        }
+        if (inflated == null) {
+            inflated = BigDecimal.valueOf(units, scale);
+        }
+        inflated = negate ? inflated.subtract(value) : inflated.add(value);
+        scale = inflated.scale();
+    }
+
+    /**
+     * Adds an unscaled value to {@link #units} aligning the scales.
+     *
+     * @return false when the sum does not fit into a <tt>long</tt>, nothing is changed then
+     */
+    private boolean addCompact(long value, int valueScale) {
+        long sum = units;
+        int sumScale = scale;
+        if (sumScale < valueScale) {
+            if (!Money.fitsScaledUp(sum, (long) valueScale - sumScale)) {
+                return false;
+            }
+            sum = Money.scaleUp(sum, valueScale - sumScale);
+            sumScale = valueScale;
+        } else if (valueScale < sumScale) {
+            if (!Money.fitsScaledUp(value, (long) sumScale - valueScale)) {
+                return false;
+            }
+            value = Money.scaleUp(value, sumScale - valueScale);
+        }
+        long result = sum + value;
+        if (((sum ^ result) & (value ^ result)) < 0L) {
+            return false;
+        }
+        units = result;
+        scale = sumScale;
+        return true;
+    }
+
+    /**
+     * Applies the currency rules of {@link Money}: fixes the currency with the first non ZERO value and rejects a non ZERO value of another currency while
+     * the sum is not ZERO.
+     */
+    private void ensureCurrency(Money money) throws IllegalArgumentException {
+        String other = money.getCurrency();
+        if (other == currency || money.zero()) {
+            return;
+        }
+        if (currency == null || currency.equals(other)) {
+            currency = other;
+            return;
+        }
+        if (inflated != null ? inflated.signum() == 0 : units == 0L) {
+            currency = other;
+            return;
+        }
+        throw new IllegalArgumentException("Argument [" + money + "] is illegal for sum [" + toMoney() + "]. Currency missmatch.");
+    }
+}
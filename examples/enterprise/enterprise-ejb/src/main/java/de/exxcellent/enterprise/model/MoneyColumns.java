@@ -0,0 +1,203 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Columnar store of many monetary values, filled by {@link MoneyParser#parseLines(CharSequence, int, int, String, MoneyColumns)}. Each value is kept as
+ * unscaled <tt>long</tt>, scale and {@link CurrencyUnit} in parallel arrays; only values not fitting into a <tt>long</tt> are kept as
+ * {@link BigDecimal}. {@link Money} instances are created on request only.
+ *
+ * <p>
+ * Not thread safe.
+ *
+ * @author ostauss
+ */
+public final class MoneyColumns {
+
+    // --------------------------------- OBJECT FIELDS -------------------------
+    /**
+     * Unscaled values.
+     */
+    private long[] units;
+    /**
+     * Scales.
+     */
+    private int[] scales;
+    /**
+     * Currencies.
+     */
+    private CurrencyUnit[] currencies;
+    /**
+     * Values not fitting into a <tt>long</tt>, <tt>null</tt> until the first one is added.
+     */
+    private BigDecimal[] inflated;
+    /**
+     * Number of values.
+     */
+    private int size;
+
+    // --------------------------------- CLASS CONSTRUCTORS --------------------
+    /**
+     * Parameter Constructor.
+     *
+     * @param initialCapacity
+     *            number of values the columns can hold before growing
+     */
+    public MoneyColumns(int initialCapacity) {
+        super();
+        int capacity = Math.max(initialCapacity, 16);
+        this.units = new long[capacity];
+        this.scales = new int[capacity];
+        this.currencies = new CurrencyUnit[capacity];
+    }
+
+    // --------------------------------- PROPERTY METHODS ----------------------
+    /**
+     * Number of values.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Unscaled value, only valid when {@link #isCompact(int)}.
+     *
+     * @param index
+     *            index of the value
+     * @return the unscaled value
+     */
+    public long getUnits(int index) {
+        checkIndex(index);
+        return units[index];
+    }
+
+    /**
+     * Scale of the value.
+     *
+     * @param index
+     *            index of the value
+     * @return the scale
+     */
+    public int getScale(int index) {
+        checkIndex(index);
+        return scales[index];
+    }
+
+    /**
+     * Currency of the value.
+     *
+     * @param index
+     *            index of the value
+     * @return the {@link CurrencyUnit}
+     */
+    public CurrencyUnit getCurrencyUnit(int index) {
+        checkIndex(index);
+        return currencies[index];
+    }
+
+    /**
+     * Whether the value is held as unscaled <tt>long</tt>.
+     *
+     * @param index
+     *            index of the value
+     * @return boolean true when {@link #getUnits(int)} is valid
+     */
+    public boolean isCompact(int index) {
+        checkIndex(index);
+        return inflated == null || inflated[index] == null;
+    }
+
+    // --------------------------------- BUSINESS METHODS ----------------------
+    /**
+     * The value as {@link Money}.
+     *
+     * @param index
+     *            index of the value
+     * @return a new {@link Money}
+     */
+    public Money get(int index) {
+        checkIndex(index);
+        String currency = currencies[index].getCode();
+        if (inflated != null && inflated[index] != null) {
+            return new Money(inflated[index], currency);
+        }
+        return new Money(units[index], scales[index], currency);
+    }
+
+    /**
+     * Removes all values, keeping the capacity.
+     */
+    public void clear() {
+        Arrays.fill(currencies, 0, size, null);
+        if (inflated != null) {
+            Arrays.fill(inflated, 0, size, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Appends a compact value.
+     */
+    void add(long value, int scale, CurrencyUnit currency) {
+        ensureCapacity();
+        units[size] = value;
+        scales[size] = scale;
+        currencies[size] = currency;
+        size++;
+    }
+
+    /**
+     * Appends a value not fitting into a <tt>long</tt>.
+     */
+    void add(BigDecimal value, CurrencyUnit currency) {
+        ensureCapacity();
+        if (inflated == null) {
+            inflated = new BigDecimal[units.length];
+        }
+        inflated[size] = value;
+        scales[size] = value.scale();
+        currencies[size] = currency;
+        size++;
+    }
+
+    // --------------------------------- HELPER METHODS ------------------------
+    /**
+     * Grows the columns when full.
+     */
+    private void ensureCapacity() {
+        if (size < units.length) {
+            return;
+        }
+        int capacity = units.length + (units.length >> 1);
+        long[] newUnits = new long[capacity];
+        System.arraycopy(units, 0, newUnits, 0, size);
+        units = newUnits;
+        int[] newScales = new int[capacity];
+        System.arraycopy(scales, 0, newScales, 0, size);
+        scales = newScales;
+        CurrencyUnit[] newCurrencies = new CurrencyUnit[capacity];
+        System.arraycopy(currencies, 0, newCurrencies, 0, size);
+        currencies = newCurrencies;
+        if (inflated != null) {
+            BigDecimal[] newInflated = new BigDecimal[capacity];
+            System.arraycopy(inflated, 0, newInflated, 0, size);
+            inflated = newInflated;
+        }
+    }
+
+    /**
+     * Checks an index against {@link #size()}.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Parser for amounts like "10.00 EUR" or "EUR 10.00". Works on ranges of a {@link CharSequence}, a <tt>char[]</tt> or an ASCII {@link ByteBuffer}
+ * without tokenizing into Strings and without using exceptions for control flow. Amounts with up to 18 digits and without exponent are parsed straight
+ * into the compact form of {@link Money}, all others via {@link BigDecimal}.
+ *
+ * <p>
+ * The <tt>parseLines</tt> methods parse a whole buffer with one amount per line into {@link MoneyColumns}.
+ *
+ * @author ostauss
+ */
+public final class MoneyParser {
+
+    // --------------------------------- CLASS FIELDS --------------------------
+    /**
+     * Result of {@link #scanNumber(CharSequence, int, int)}: the token is no number.
+     */
+    private static final int NO_NUMBER = -1;
+    /**
+     * Result of {@link #scanNumber(CharSequence, int, int)}: the token is a number not fitting into the compact form.
+     */
+    private static final int NOT_COMPACT = -2;
+    /**
+     * Maximum number of digits always fitting into a <tt>long</tt>.
+     */
+    private static final int MAX_COMPACT_DIGITS = 18;
+
+    // --------------------------------- CLASS CONSTRUCTORS --------------------
+    /**
+     * Utility class.
+     */
+    private MoneyParser() {
+        super();
+    }
+
+    // --------------------------------- CLASS METHODS -------------------------
+    /**
+     * Parses an amount, see {@link Money#parse(String, String)}.
+     *
+     * @param text
+     *            text to parse
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @return {@link Money} created instance.
+     */
+    public static Money parse(CharSequence text, String delimiters) {
+        return parse(text, 0, text.length(), delimiters);
+    }
+
+    /**
+     * Parses an amount from a range of characters.
+     *
+     * @param text
+     *            text to parse
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index after the last character
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @return {@link Money} created instance.
+     */
+    public static Money parse(CharSequence text, int start, int end, String delimiters) {
+        return parse(text, start, end, delimiters, null);
+    }
+
+    /**
+     * Parses an amount from a range of characters.
+     *
+     * @param text
+     *            text to parse
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index after the last character
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @return {@link Money} created instance.
+     */
+    public static Money parse(char[] text, int start, int end, String delimiters) {
+        return parse(CharBuffer.wrap(text), start, end, delimiters, null);
+    }
+
+    /**
+     * Parses an amount from a range of ASCII encoded bytes. Position and limit of the buffer are not changed.
+     *
+     * @param buffer
+     *            bytes to parse
+     * @param start
+     *            index of the first byte
+     * @param end
+     *            index after the last byte
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @return {@link Money} created instance.
+     */
+    public static Money parse(ByteBuffer buffer, int start, int end, String delimiters) {
+        return parse(new AsciiSequence(buffer), start, end, delimiters, null);
+    }
+
+    /**
+     * Parses one amount per line, lines are separated by <tt>\n</tt> or <tt>\r\n</tt>. Empty lines are skipped.
+     *
+     * @param text
+     *            text to parse
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index after the last character
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @param columns
+     *            the parsed amounts are appended to
+     * @return number of amounts parsed
+     * @throws IllegalStateException
+     *             when a line contains no amount
+     */
+    public static int parseLines(CharSequence text, int start, int end, String delimiters, MoneyColumns columns) throws IllegalStateException {
+        int count = 0;
+        int line = 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && text.charAt(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            line++;
+            if (skipDelimiters(text, lineStart, contentEnd, delimiters) < contentEnd) {
+                try {
+                    parse(text, lineStart, contentEnd, delimiters, columns);
+                } catch (NumberFormatException e) {
+                    throw new IllegalStateException("Line " + line + " is illegal: " + e.getMessage(), e);
+                } catch (IllegalStateException e) {
+                    throw new IllegalStateException("Line " + line + " is illegal: " + e.getMessage(), e);
+                }
+                count++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Parses one amount per line, see {@link #parseLines(CharSequence, int, int, String, MoneyColumns)}.
+     *
+     * @param text
+     *            text to parse
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index after the last character
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @param columns
+     *            the parsed amounts are appended to
+     * @return number of amounts parsed
+     * @throws IllegalStateException
+     *             when a line contains no amount
+     */
+    public static int parseLines(char[] text, int start, int end, String delimiters, MoneyColumns columns) throws IllegalStateException {
+        return parseLines(CharBuffer.wrap(text), start, end, delimiters, columns);
+    }
+
+    /**
+     * Parses one amount per line from ASCII encoded bytes between position and limit of the buffer, see
+     * {@link #parseLines(CharSequence, int, int, String, MoneyColumns)}. Position and limit of the buffer are not changed.
+     *
+     * @param buffer
+     *            bytes to parse
+     * @param delimiters
+     *            delimiter characters separating amount and currency
+     * @param columns
+     *            the parsed amounts are appended to
+     * @return number of amounts parsed
+     * @throws IllegalStateException
+     *             when a line contains no amount
+     */
+    public static int parseLines(ByteBuffer buffer, String delimiters, MoneyColumns columns) throws IllegalStateException {
+        return parseLines(new AsciiSequence(buffer), buffer.position(), buffer.limit(), delimiters, columns);
+    }
+
+    // --------------------------------- HELPER METHODS ------------------------
+    /**
+     * Parses one amount. Appends it to columns or returns it, when columns is <tt>null</tt>.
+     */
+    private static Money parse(CharSequence text, int start, int end, String delimiters, MoneyColumns columns) {
+        int oneStart = skipDelimiters(text, start, end, delimiters);
+        int oneEnd = skipToken(text, oneStart, end, delimiters);
+        int twoStart = skipDelimiters(text, oneEnd, end, delimiters);
+        int twoEnd = skipToken(text, twoStart, end, delimiters);
+        if (oneStart == end || twoStart == end || skipDelimiters(text, twoEnd, end, delimiters) != end) {
+            throw new IllegalStateException("Value [" + text.subSequence(start, end) + "] is illegal. Should contain 2 token separated with [" + delimiters
+                    + "] delim");
+        }
+        int scale = scanNumber(text, oneStart, oneEnd);
+        if (scale != NO_NUMBER) {
+            return create(text, oneStart, oneEnd, scale, CurrencyUnit.of(text, twoStart, twoEnd), columns);
+        }
+        scale = scanNumber(text, twoStart, twoEnd);
+        if (scale != NO_NUMBER) {
+            return create(text, twoStart, twoEnd, scale, CurrencyUnit.of(text, oneStart, oneEnd), columns);
+        }
+        throw new NumberFormatException("Value [" + text.subSequence(start, end) + "] contains no amount.");
+    }
+
+    /**
+     * Creates the amount from a token accepted by {@link #scanNumber(CharSequence, int, int)}.
+     */
+    private static Money create(CharSequence text, int start, int end, int scale, CurrencyUnit currency, MoneyColumns columns) {
+        if (scale == NOT_COMPACT) {
+            BigDecimal value = new BigDecimal(text.subSequence(start, end).toString());
+            if (columns != null) {
+                columns.add(value, currency);
+                return null;
+            }
+            return new Money(value, currency.getCode());
+        }
+        long units = unitsOf(text, start, end);
+        if (columns != null) {
+            columns.add(units, scale, currency);
+            return null;
+        }
+        return new Money(units, scale, currency.getCode());
+    }
+
+    /**
+     * Checks a token against the syntax of {@link BigDecimal#BigDecimal(String)}.
+     *
+     * @return the number of fraction digits, {@link #NOT_COMPACT} for numbers with exponent or too many digits, {@link #NO_NUMBER} for other tokens
+     */
+    private static int scanNumber(CharSequence text, int start, int end) {
+        int i = start;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        int fraction = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (point) {
+                    fraction++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return NO_NUMBER;
+        }
+        if (i == end) {
+            return digits > MAX_COMPACT_DIGITS ? NOT_COMPACT : fraction;
+        }
+        char c = text.charAt(i++);
+        if (c != 'e' && c != 'E') {
+            return NO_NUMBER;
+        }
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == end) {
+            return NO_NUMBER;
+        }
+        for (; i < end; i++) {
+            c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_NUMBER;
+            }
+        }
+        return NOT_COMPACT;
+    }
+
+    /**
+     * Unscaled value of a token of at most {@link #MAX_COMPACT_DIGITS} digits without exponent.
+     */
+    private static long unitsOf(CharSequence text, int start, int end) {
+        boolean negative = text.charAt(start) == '-';
+        long units = 0L;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                units = units * 10L + (c - '0');
+            }
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * Index of the first character at or after start which is no delimiter.
+     */
+    private static int skipDelimiters(CharSequence text, int start, int end, String delimiters) {
+        int i = start;
+        while (i < end && delimiters.indexOf(text.charAt(i)) >= 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Index of the first delimiter at or after start.
+     */
+    private static int skipToken(CharSequence text, int start, int end, String delimiters) {
+        int i = start;
+        while (i < end && delimiters.indexOf(text.charAt(i)) < 0) {
+            i++;
+        }
+        return i;
+    }
+
+    // --------------------------------- INNER CLASSES -------------------------
+    /**
+     * {@link CharSequence} view on ASCII encoded bytes using absolute indexes of the buffer.
+     */
+    private static final class AsciiSequence implements CharSequence {
+
+        private final ByteBuffer buffer;
+
+        AsciiSequence(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                builder.append(charAt(i));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Balance of an account in one currency at the end of a closed booking period:
+ * the balance of the previous closing plus all entries booked up to the period.
+ * The entries summed up are archived, so the balance of an account is its latest
+ * closing balance plus the entries still in the Entry table.
+ *
+ * @author ostauss
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"accountId", "closing_period", "balance_currency"}))
+public class PeriodClosingBalance implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    private Long accountId;
+
+    /**
+     * The closed period as yyyyMM, see {@link Entry#periodOf(java.util.Date)}.
+     */
+    @Column(name = "closing_period")
+    private int period;
+
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "cash", column = @Column(name = "balance_value")),
+        @AttributeOverride(name = "currency", column = @Column(name = "balance_currency"))
+    })
+    private Money balance;
+
+    public PeriodClosingBalance() {
+    }
+
+    public PeriodClosingBalance(Long accountId, int period, Money balance) {
+        this.accountId = accountId;
+        this.period = period;
+        this.balance = balance.materialize();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public Money getBalance() {
+        return balance;
+    }
+
+    @Override
+    public int hashCode() {
+        return (id != null ? id.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof PeriodClosingBalance)) {
+            return false;
+        }
+        PeriodClosingBalance other = (PeriodClosingBalance) object;
+        return (this.id == null ? other.id == null : this.id.equals(other.id));
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.model.PeriodClosingBalance[id=" + id + "]";
+    }
+
+}
@@ -12,16 +12,30 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Table;
 
 /**
  *
  * @author ostauss
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(appliesTo = "Person", indexes = {
+    @Index(name = "IDX_PERSON_NAME", columnNames = {"surename", "forename"})
+})
 public class Person implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of accounts collections initialized with one statement.
+     */
+    public static final int ACCOUNTS_BATCH_SIZE = 50;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
@@ -33,6 +47,8 @@ public class Person implements Serializable {
     private String surename;
 
     @OneToMany(mappedBy = "person")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @BatchSize(size = ACCOUNTS_BATCH_SIZE)
     private Set<Account> accounts;
 
     public Long getId() {
@@ -43,6 +59,30 @@ public class Person implements Serializable {
         this.id = id;
     }
 
+    public String getForename() {
+        return forename;
+    }
+
+    public void setForename(String forename) {
+        this.forename = forename;
+    }
+
+    public String getSurename() {
+        return surename;
+    }
+
+    public void setSurename(String surename) {
+        this.surename = surename;
+    }
+
+    public Set<Account> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(Set<Account> accounts) {
+        this.accounts = accounts;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
@@ -0,0 +1,84 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+
+/**
+ * Moves an amount from one account to another: a {@link EntryType#DEBIT} on the
+ * source and a {@link EntryType#CREDIT} on the target account, booked together.
+ * A transfer with an idempotency key is booked at most once, however often it is
+ * submitted.
+ *
+ * @author ostauss
+ */
+public final class Transfer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    private final Long fromAccountId;
+
+    private final Long toAccountId;
+
+    private final Money amount;
+
+    private final String idempotencyKey;
+
+    public Transfer(Long fromAccountId, Long toAccountId, Money amount) {
+        this(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * @param idempotencyKey chosen by the client, the same for every retry,
+     *        <code>null</code> if the transfer must not be retried
+     */
+    public Transfer(Long fromAccountId, Long toAccountId, Money amount, String idempotencyKey) {
+        if (fromAccountId == null || toAccountId == null || amount == null) {
+            throw new IllegalArgumentException("accounts and amount must not be null");
+        }
+        if (fromAccountId.equals(toAccountId)) {
+            throw new IllegalArgumentException("Transfer from account " + fromAccountId + " to itself");
+        }
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        if (idempotencyKey != null && (idempotencyKey.length() == 0 || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new IllegalArgumentException("idempotency key must have 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        this.amount = amount;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Long getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public Long getToAccountId() {
+        return toAccountId;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * @return whether both transfers move the same amount between the same accounts
+     */
+    public boolean sameAs(Transfer other) {
+        return fromAccountId.equals(other.fromAccountId) && toAccountId.equals(other.toAccountId) && amount.equals(other.amount);
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.model.Transfer[from=" + fromAccountId + ", to=" + toAccountId + ", amount=" + amount + "]";
+    }
+
+}
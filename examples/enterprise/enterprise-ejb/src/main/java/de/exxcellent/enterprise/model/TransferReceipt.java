@@ -0,0 +1,96 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.model;
+
+import java.io.Serializable;
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Written together with the entries of a transfer carrying an idempotency key.
+ * The key is the primary key, so the database refuses to book a key twice and a
+ * retry finds the booked transfer with a key lookup.
+ *
+ * @author ostauss
+ */
+@Entity
+public class TransferReceipt implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "idempotency_key", length = Transfer.MAX_IDEMPOTENCY_KEY_LENGTH)
+    private String idempotencyKey;
+
+    private Long fromAccountId;
+
+    private Long toAccountId;
+
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "cash", column = @Column(name = "amount_value")),
+        @AttributeOverride(name = "currency", column = @Column(name = "amount_currency"))
+    })
+    private Money amount;
+
+    private Long debitEntryId;
+
+    private Long creditEntryId;
+
+    public TransferReceipt() {
+    }
+
+    public TransferReceipt(Transfer transfer, Long debitEntryId, Long creditEntryId) {
+        this.idempotencyKey = transfer.getIdempotencyKey();
+        this.fromAccountId = transfer.getFromAccountId();
+        this.toAccountId = transfer.getToAccountId();
+        this.amount = transfer.getAmount().materialize();
+        this.debitEntryId = debitEntryId;
+        this.creditEntryId = creditEntryId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public Long getDebitEntryId() {
+        return debitEntryId;
+    }
+
+    public Long getCreditEntryId() {
+        return creditEntryId;
+    }
+
+    /**
+     * @return the transfer booked with this receipt
+     */
+    public Transfer getTransfer() {
+        return new Transfer(fromAccountId, toAccountId, amount, idempotencyKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return (idempotencyKey != null ? idempotencyKey.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof TransferReceipt)) {
+            return false;
+        }
+        TransferReceipt other = (TransferReceipt) object;
+        return (this.idempotencyKey == null ? other.idempotencyKey == null : this.idempotencyKey.equals(other.idempotencyKey));
+    }
+
+    @Override
+    public String toString() {
+        return "de.exxcellent.enterprise.model.TransferReceipt[idempotencyKey=" + idempotencyKey + "]";
+    }
+
+}
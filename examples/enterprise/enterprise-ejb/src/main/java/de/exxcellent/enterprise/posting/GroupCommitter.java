@@ -0,0 +1,335 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.concurrent.ExecutorProvider;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Transfer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Group commit of transfers: transfers submitted by concurrent callers within a
+ * window are booked in one transaction, so many transfers share one log flush of
+ * the database. A window closes when it holds {@link #getMaxBatch()} transfers or
+ * {@link #getWindowMillis()} after its first transfer arrived.
+ * <p>
+ * Every caller gets the result of its own transfer: transfers failing on their
+ * own, e.g. for a missing account, are left out of the transaction; if the
+ * transaction fails as a whole, its transfers are booked one by one.
+ * <p>
+ * The windows are collected on the {@link Executor} while transfers are queued;
+ * the queue is bounded, a caller blocks while it is full. Callers wait for their
+ * transfers on threads of the container pool, so the shared group committer
+ * collects on the {@link de.exxcellent.enterprise.concurrent.WorkerPool}, never
+ * on that pool, see {@link ExecutorProvider}.
+ *
+ * @author ostauss
+ */
+public class GroupCommitter {
+
+    /**
+     * Whether {@link de.exxcellent.enterprise.bean.AccountingSessionBean} books
+     * transfers through the group committer, set by system property
+     * <code>de.exxcellent.enterprise.posting.groupCommit</code>.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("de.exxcellent.enterprise.posting.groupCommit");
+
+    /**
+     * Transfers per transaction, set by system property
+     * <code>de.exxcellent.enterprise.posting.groupCommit.maxBatch</code>.
+     */
+    public static final int DEFAULT_MAX_BATCH = Integer.getInteger("de.exxcellent.enterprise.posting.groupCommit.maxBatch", 100).intValue();
+
+    /**
+     * Longest wait for more transfers, set by system property
+     * <code>de.exxcellent.enterprise.posting.groupCommit.windowMillis</code>.
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = Long.getLong("de.exxcellent.enterprise.posting.groupCommit.windowMillis", 5L).longValue();
+
+    /**
+     * Transfers waiting before {@link #submit(Transfer)} blocks, set by system
+     * property <code>de.exxcellent.enterprise.posting.groupCommit.queueCapacity</code>.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("de.exxcellent.enterprise.posting.groupCommit.queueCapacity", 10000).intValue();
+
+    private static volatile GroupCommitter instance = null;
+
+    private final EntryJpaController entries;
+
+    private final Executor executor;
+
+    private final int maxBatch;
+
+    private final long windowMillis;
+
+    private final BlockingQueue<Pending> queue;
+
+    /**
+     * Held to queue a transfer, and exclusively to shut down, see
+     * {@link PostingEngine}.
+     */
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+
+    private boolean closed = false;
+
+    /**
+     * Whether the collector is handed to the executor or running; guarded by
+     * the queue.
+     */
+    private boolean scheduled = false;
+
+    private final Runnable collector = new Runnable() {
+
+        public void run() {
+            boolean idle = false;
+            try {
+                collect();
+                idle = true;
+            } finally {
+                if (!idle) {
+                    idle();
+                }
+            }
+        }
+    };
+
+    public GroupCommitter(EntryJpaController entries, Executor executor) {
+        this(entries, executor, DEFAULT_MAX_BATCH, DEFAULT_WINDOW_MILLIS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public GroupCommitter(EntryJpaController entries, Executor executor, int maxBatch, long windowMillis, int queueCapacity) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive, was " + maxBatch);
+        }
+        this.entries = entries;
+        this.executor = executor;
+        this.maxBatch = maxBatch;
+        this.windowMillis = windowMillis;
+        this.queue = new LinkedBlockingQueue<Pending>(queueCapacity);
+    }
+
+    /**
+     * The group committer shared by the application, started on first use.
+     */
+    public static GroupCommitter getInstance() {
+        GroupCommitter result = instance;
+        if (result == null) {
+            synchronized (GroupCommitter.class) {
+                result = instance;
+                if (result == null) {
+                    result = new GroupCommitter(new EntryJpaController(), ExecutorProvider.getExecutor());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shuts the shared group committer down, if started.
+     */
+    public static synchronized void close() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Queues a transfer for the next window. Blocks while the queue is full.
+     *
+     * @return completes when the transfer is booked, or fails with
+     *         {@link de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException}
+     *         or {@link IllegalArgumentException} for a currency mismatch
+     * @throws IllegalStateException the group committer is shut down, or the
+     *         ledger journal is enabled
+     */
+    public Future<Void> submit(Transfer transfer) throws InterruptedException {
+        LedgerJournal.checkDisabled("Transfer");
+        Pending pending = new Pending(transfer);
+        shutdownLock.readLock().lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The group committer is shut down.");
+            }
+            queue.put(pending);
+            try {
+                schedule();
+            } catch (RuntimeException e) {
+                if (queue.remove(pending)) {
+                    throw e;
+                }
+                // a run scheduled by another transfer took it meanwhile
+            }
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        return pending;
+    }
+
+    /**
+     * Books the queued transfers and waits for the last window. Transfers queued
+     * afterwards fail with {@link IllegalStateException}.
+     */
+    public void shutdown() {
+        shutdownLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        synchronized (queue) {
+            while (scheduled) {
+                try {
+                    queue.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        List<Pending> rest = new ArrayList<Pending>();
+        queue.drainTo(rest);
+        for (Pending pending : rest) {
+            pending.failed(new IllegalStateException("The group committer is shut down."));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule() {
+        synchronized (queue) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            executor.execute(collector);
+        } catch (RuntimeException e) {
+            idle();
+            throw e;
+        }
+    }
+
+    private void idle() {
+        synchronized (queue) {
+            scheduled = false;
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Commits windows until the queue is empty and marks the collector idle.
+     */
+    private void collect() {
+        List<Pending> window = new ArrayList<Pending>(maxBatch);
+        try {
+            while (true) {
+                synchronized (queue) {
+                    // checked under the lock of schedule(), so a transfer queued
+                    // after the check schedules the collector again
+                    if (queue.isEmpty()) {
+                        scheduled = false;
+                        queue.notifyAll();
+                        return;
+                    }
+                }
+                queue.drainTo(window, 1);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (window.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = (wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll());
+                    if (next == null) {
+                        break;
+                    }
+                    window.add(next);
+                }
+                commit(window);
+                window.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Pending pending : window) {
+                pending.failed(e);
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Pending> window) {
+        List<Transfer> transfers = new ArrayList<Transfer>(window.size());
+        for (Pending pending : window) {
+            transfers.add(pending.transfer);
+        }
+        Exception[] failures;
+        try {
+            failures = entries.transferAll(transfers);
+        } catch (RuntimeException e) {
+            for (Pending pending : window) {
+                try {
+                    entries.transfer(pending.transfer);
+                    pending.booked();
+                } catch (Exception single) {
+                    pending.failed(single);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                window.get(i).booked();
+            } else {
+                window.get(i).failed(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * A queued transfer and the future completed by the group committer.
+     */
+    private static final class Pending extends FutureTask<Void> {
+
+        private static final Runnable NOTHING = new Runnable() {
+
+            public void run() {
+            }
+        };
+
+        private final Transfer transfer;
+
+        Pending(Transfer transfer) {
+            super(NOTHING, null);
+            this.transfer = transfer;
+        }
+
+        void booked() {
+            set(null);
+        }
+
+        void failed(Throwable t) {
+            setException(t);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.concurrent.ExecutorProvider;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Entry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+
+/**
+ * Books entries through a fixed set of lanes, each drained by a single writer
+ * at a time. A lane is run on the {@link Executor} while it has postings and
+ * gives its thread back when its queue is empty; under load it keeps it, so the
+ * shared engine runs on the {@link de.exxcellent.enterprise.concurrent.WorkerPool},
+ * which has a worker for every lane, see {@link ExecutorProvider}. An account is
+ * always handled by the same lane, chosen by the hash of its id, so postings to one account never compete for its row while postings
+ * to different accounts run in parallel on all lanes. A lane books all queued
+ * postings of an account in one transaction; the optimistic version of the
+ * account guards against writers outside the engine, a conflict is retried.
+ *
+ * @author ostauss
+ */
+public class PostingEngine {
+
+    /**
+     * Number of lanes, set by system property
+     * <code>de.exxcellent.enterprise.posting.lanes</code>, default one per core.
+     */
+    public static final int DEFAULT_LANES = Integer.getInteger("de.exxcellent.enterprise.posting.lanes", Runtime.getRuntime().availableProcessors()).intValue();
+
+    /**
+     * Postings waiting per lane before {@link #post(Long, Entry)} blocks, set by
+     * system property <code>de.exxcellent.enterprise.posting.queueCapacity</code>.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("de.exxcellent.enterprise.posting.queueCapacity", 10000).intValue();
+
+    /**
+     * Postings a lane takes from its queue at once.
+     */
+    public static final int MAX_BATCH = 500;
+
+    /**
+     * Attempts of a transaction failing with an optimistic lock conflict.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static volatile PostingEngine instance = null;
+
+    private final EntryJpaController entries;
+
+    private final Executor executor;
+
+    private final Lane[] lanes;
+
+    /**
+     * Held to queue a posting, and exclusively to shut down, so no posting is
+     * queued after {@link #shutdown()} failed the rest of the queues.
+     */
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+
+    private boolean closed = false;
+
+    public PostingEngine(EntryJpaController entries, Executor executor) {
+        this(entries, executor, DEFAULT_LANES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public PostingEngine(EntryJpaController entries, Executor executor, int lanes, int queueCapacity) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("lanes must be positive, was " + lanes);
+        }
+        this.entries = entries;
+        this.executor = executor;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(queueCapacity);
+        }
+    }
+
+    /**
+     * The engine shared by the application, started on first use.
+     */
+    public static PostingEngine getInstance() {
+        PostingEngine result = instance;
+        if (result == null) {
+            synchronized (PostingEngine.class) {
+                result = instance;
+                if (result == null) {
+                    result = new PostingEngine(new EntryJpaController(), ExecutorProvider.getExecutor());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shuts the shared engine down, if started.
+     */
+    public static synchronized void close() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Queues an entry for booking on an account. Blocks while the lane of the
+     * account is full.
+     *
+     * @return completes with the id of the booked entry, or fails with
+     *         {@link de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException}
+     *         or {@link IllegalArgumentException} for a currency mismatch
+     * @throws IllegalStateException the engine is shut down, or the ledger
+     *         journal is enabled, post to the journal instead
+     */
+    public Future<Long> post(Long accountId, Entry entry) throws InterruptedException {
+        LedgerJournal.checkDisabled("Posting to the database");
+        Posting posting = new Posting(accountId, entry);
+        Lane lane = lanes[(accountId.hashCode() & Integer.MAX_VALUE) % lanes.length];
+        shutdownLock.readLock().lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The posting engine is shut down.");
+            }
+            lane.queue.put(posting);
+            try {
+                lane.schedule();
+            } catch (RuntimeException e) {
+                if (lane.queue.remove(posting)) {
+                    throw e;
+                }
+                // a run scheduled by another posting took it meanwhile
+            }
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        return posting;
+    }
+
+    /**
+     * Books the queued postings and waits for the lanes to finish. Postings
+     * queued afterwards fail with {@link IllegalStateException}.
+     */
+    public void shutdown() {
+        shutdownLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        for (Lane lane : lanes) {
+            while (true) {
+                try {
+                    lane.awaitIdle();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            List<Posting> rest = new ArrayList<Posting>();
+            lane.queue.drainTo(rest);
+            for (Posting posting : rest) {
+                posting.failed(new IllegalStateException("The posting engine is shut down."));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Books the postings of one account in one transaction, retrying on
+     * optimistic lock conflicts. On a currency mismatch every posting is booked
+     * on its own, so only the mismatching ones fail.
+     */
+    private void book(Long accountId, List<Posting> postings) {
+        try {
+            List<Entry> batch = new ArrayList<Entry>(postings.size());
+            for (Posting posting : postings) {
+                batch.add(posting.entry);
+            }
+            commit(accountId, batch);
+            for (Posting posting : postings) {
+                posting.booked(posting.entry.getId());
+            }
+        } catch (IllegalArgumentException e) {
+            if (postings.size() == 1) {
+                postings.get(0).failed(e);
+                return;
+            }
+            for (Posting posting : postings) {
+                reset(posting.entry);
+                book(accountId, Collections.singletonList(posting));
+            }
+        } catch (Exception e) {
+            for (Posting posting : postings) {
+                posting.failed(e);
+            }
+        }
+    }
+
+    private void commit(Long accountId, List<Entry> batch) throws Exception {
+        for (int attempt = 1;; attempt++) {
+            try {
+                entries.post(accountId, batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS || !isOptimisticLockConflict(e)) {
+                    throw e;
+                }
+                for (Entry entry : batch) {
+                    reset(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Undoes what a rolled back attempt left on the entry.
+     */
+    private static void reset(Entry entry) {
+        entry.setId(null);
+        entry.setAccount(null);
+    }
+
+    private static boolean isOptimisticLockConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One queue, run on the executor while it has postings.
+     */
+    private final class Lane implements Runnable {
+
+        private final BlockingQueue<Posting> queue;
+
+        /**
+         * Whether the lane is handed to the executor or running; guarded by the lane.
+         */
+        private boolean scheduled = false;
+
+        Lane(int queueCapacity) {
+            this.queue = new LinkedBlockingQueue<Posting>(queueCapacity);
+        }
+
+        /**
+         * Hands the lane to the executor unless it is already, after a posting
+         * was queued.
+         */
+        void schedule() {
+            synchronized (this) {
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                idle();
+                throw e;
+            }
+        }
+
+        synchronized void awaitIdle() throws InterruptedException {
+            while (scheduled) {
+                wait();
+            }
+        }
+
+        private synchronized void idle() {
+            scheduled = false;
+            notifyAll();
+        }
+
+        public void run() {
+            boolean idle = false;
+            try {
+                drain();
+                idle = true;
+            } finally {
+                if (!idle) {
+                    idle();
+                }
+            }
+        }
+
+        /**
+         * Books postings until the queue is empty and marks the lane idle.
+         */
+        private void drain() {
+            List<Posting> taken = new ArrayList<Posting>(MAX_BATCH);
+            while (true) {
+                synchronized (this) {
+                    // checked under the lock of schedule(), so a posting queued
+                    // after the check schedules the lane again
+                    if (queue.isEmpty()) {
+                        idle();
+                        return;
+                    }
+                }
+                queue.drainTo(taken, MAX_BATCH);
+                Map<Long, List<Posting>> byAccount = new LinkedHashMap<Long, List<Posting>>();
+                for (Posting posting : taken) {
+                    List<Posting> postings = byAccount.get(posting.accountId);
+                    if (postings == null) {
+                        postings = new ArrayList<Posting>();
+                        byAccount.put(posting.accountId, postings);
+                    }
+                    postings.add(posting);
+                }
+                taken.clear();
+                for (Map.Entry<Long, List<Posting>> account : byAccount.entrySet()) {
+                    book(account.getKey(), account.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued entry and the future completed by its lane.
+     */
+    private static final class Posting extends FutureTask<Long> {
+
+        private static final Runnable NOTHING = new Runnable() {
+
+            public void run() {
+            }
+        };
+
+        private final Long accountId;
+
+        private final Entry entry;
+
+        Posting(Long accountId, Entry entry) {
+            super(NOTHING, null);
+            this.accountId = accountId;
+            this.entry = entry;
+        }
+
+        void booked(Long id) {
+            set(id);
+        }
+
+        void failed(Throwable t) {
+            setException(t);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import de.exxcellent.enterprise.dto.AccountSummary;
+import de.exxcellent.enterprise.model.AccountState;
+import java.io.Serializable;
+
+/**
+ * Account of {@link AccountingWebService#getAccountsPage(String, int)}.
+ *
+ * @author ostauss
+ */
+public class AccountItem implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private String ean;
+
+    private AccountState accountState;
+
+    private Long personId;
+
+    public AccountItem() {
+    }
+
+    public AccountItem(AccountSummary summary) {
+        this.id = summary.getId();
+        this.ean = summary.getEan();
+        this.accountState = summary.getAccountState();
+        this.personId = summary.getPersonId();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getEan() {
+        return ean;
+    }
+
+    public void setEan(String ean) {
+        this.ean = ean;
+    }
+
+    public AccountState getAccountState() {
+        return accountState;
+    }
+
+    public void setAccountState(AccountState accountState) {
+        this.accountState = accountState;
+    }
+
+    public Long getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(Long personId) {
+        this.personId = personId;
+    }
+}
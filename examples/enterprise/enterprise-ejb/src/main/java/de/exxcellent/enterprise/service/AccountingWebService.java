@@ -5,10 +5,38 @@
 
 package de.exxcellent.enterprise.service;
 
-import javax.jws.WebService;
+import de.exxcellent.enterprise.bean.AccountingSessionBean;
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.Page;
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.AccountSummary;
+import de.exxcellent.enterprise.journal.LedgerJournal;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.posting.PostingEngine;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebService;
 
 /**
+ * Batch operations for SOAP clients, so one envelope carries many items. Every
+ * item gets a result of its own with an {@link ItemStatus}; a failing item does
+ * not fail the batch. Batches larger than {@link #MAX_BATCH_SIZE} are refused as
+ * a whole, and pages are capped at the same size, so no request or response
+ * grows without bound.
  *
  * @author ostauss
  */
@@ -16,4 +44,204 @@ import javax.ejb.Stateless;
 @Stateless()
 public class AccountingWebService {
 
+    /**
+     * Items of one batch and accounts of one page, set by system property
+     * <code>de.exxcellent.enterprise.service.maxBatchSize</code>.
+     */
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("de.exxcellent.enterprise.service.maxBatchSize", 1000).intValue();
+
+    private final AccountJpaController accounts;
+
+    /**
+     * The engine booking the entries, <code>null</code> for the shared one.
+     */
+    private final PostingEngine engine;
+
+    public AccountingWebService() {
+        this(new AccountJpaController(), null);
+    }
+
+    AccountingWebService(AccountJpaController accounts, PostingEngine engine) {
+        this.accounts = accounts;
+        this.engine = engine;
+    }
+
+    /**
+     * Books entries. All entries are queued on the posting engine before the
+     * first result is awaited, so entries of different accounts are booked in
+     * parallel and entries of one account in one transaction. Entries not booked
+     * within {@link AccountingSessionBean#AWAIT_MILLIS} fail, they may still be
+     * booked later. With the ledger journal enabled they are appended to the
+     * journal instead, all in one append.
+     *
+     * @return one result per entry, in the order of the request
+     */
+    @WebMethod
+    public List<PostingResult> postEntries(@WebParam(name = "entry") List<EntryRequest> entries) throws BatchLimitExceededException {
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        checkBatchSize(entries);
+        PostingResult[] results = new PostingResult[entries.size()];
+        List<Future<Long>> booked = new ArrayList<Future<Long>>(Collections.<Future<Long>>nCopies(results.length, null));
+        List<Integer> journaled = new ArrayList<Integer>();
+        List<Long> journalAccountIds = new ArrayList<Long>();
+        List<Entry> journalEntries = new ArrayList<Entry>();
+        for (int i = 0; i < results.length; i++) {
+            EntryRequest request = entries.get(i);
+            try {
+                Entry entry = request.toEntry();
+                if (LedgerJournal.ENABLED) {
+                    journaled.add(Integer.valueOf(i));
+                    journalAccountIds.add(request.getAccountId());
+                    journalEntries.add(entry);
+                } else {
+                    booked.set(i, engine().post(request.getAccountId(), entry));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EJBException(e);
+            } catch (Exception e) {
+                results[i] = failed(e);
+            }
+        }
+        if (!journaled.isEmpty()) {
+            postToJournal(journalAccountIds, journalEntries, journaled, results);
+        }
+        long deadline = System.currentTimeMillis() + AccountingSessionBean.AWAIT_MILLIS;
+        for (int i = 0; i < results.length; i++) {
+            if (booked.get(i) == null) {
+                continue;
+            }
+            try {
+                long wait = Math.max(0L, deadline - System.currentTimeMillis());
+                results[i] = ok(booked.get(i).get(wait, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EJBException(e);
+            } catch (ExecutionException e) {
+                results[i] = failed(e.getCause());
+            } catch (TimeoutException e) {
+                results[i] = new PostingResult(ItemStatus.FAILED, null, "Not booked within " + AccountingSessionBean.AWAIT_MILLIS + " ms.");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Balances of accounts, loaded with one query per
+     * {@link AccountJpaController#MAX_IDS_PER_QUERY} ids.
+     *
+     * @return one result per account id, in the order of the request
+     */
+    @WebMethod
+    public List<BalanceResult> getBalances(@WebParam(name = "accountId") List<Long> accountIds) throws BatchLimitExceededException {
+        if (accountIds == null) {
+            return Collections.emptyList();
+        }
+        checkBatchSize(accountIds);
+        Set<Long> existing = accounts.findExistingAccountIds(accountIds);
+        Map<Long, List<Money>> balances = accounts.findBalances(existing);
+        BalanceResult[] results = new BalanceResult[accountIds.size()];
+        for (int i = 0; i < results.length; i++) {
+            Long accountId = accountIds.get(i);
+            if (!existing.contains(accountId)) {
+                results[i] = new BalanceResult(accountId, ItemStatus.NOT_FOUND);
+                continue;
+            }
+            results[i] = new BalanceResult(accountId, ItemStatus.OK);
+            for (Money balance : balanceOf(accountId, balances)) {
+                results[i].getBalances().add(new Amount(balance));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Keyset page of the accounts ordered by id.
+     *
+     * @param continuationToken token of the previous page, <code>null</code> for the first
+     * @param maxResults accounts per page, at most {@link #MAX_BATCH_SIZE}; the
+     *        maximum if not positive
+     */
+    @WebMethod
+    public AccountsPage getAccountsPage(@WebParam(name = "continuationToken") String continuationToken,
+            @WebParam(name = "maxResults") int maxResults) {
+        int size = (maxResults < 1 ? MAX_BATCH_SIZE : Math.min(maxResults, MAX_BATCH_SIZE));
+        Page<AccountSummary> page = accounts.findAccountSummaryPage(continuationToken, size);
+        AccountsPage result = new AccountsPage();
+        for (AccountSummary summary : page.getItems()) {
+            result.getAccounts().add(new AccountItem(summary));
+        }
+        result.setContinuationToken(page.getContinuationToken());
+        return result;
+    }
+
+    /**
+     * The journal balance for accounts posted to through the ledger journal,
+     * see {@link de.exxcellent.enterprise.bean.AccountingSessionBean#balanceOf(Long)}.
+     */
+    private static List<Money> balanceOf(Long accountId, Map<Long, List<Money>> balances) {
+        if (LedgerJournal.ENABLED) {
+            try {
+                Money balance = LedgerJournal.getInstance().balanceOf(accountId);
+                if (balance != null) {
+                    return Collections.singletonList(balance);
+                }
+            } catch (IOException e) {
+                throw new EJBException(e);
+            }
+        }
+        List<Money> balance = balances.get(accountId);
+        return (balance != null ? balance : Collections.<Money>emptyList());
+    }
+
+    /**
+     * Appends entries to the journal, forced once for all of them.
+     *
+     * @param positions position of each entry in the results
+     */
+    private static void postToJournal(List<Long> accountIds, List<Entry> entries, List<Integer> positions, PostingResult[] results) {
+        Exception[] failures;
+        try {
+            failures = LedgerJournal.getInstance().postAll(accountIds, entries);
+        } catch (Exception e) {
+            for (Integer position : positions) {
+                results[position.intValue()] = failed(e);
+            }
+            return;
+        }
+        for (int i = 0; i < failures.length; i++) {
+            results[positions.get(i).intValue()] = (failures[i] == null ? ok(entries.get(i).getId()) : failed(failures[i]));
+        }
+    }
+
+    private PostingEngine engine() {
+        return engine != null ? engine : PostingEngine.getInstance();
+    }
+
+    private static void checkBatchSize(List<?> items) throws BatchLimitExceededException {
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new BatchLimitExceededException("A batch holds at most " + MAX_BATCH_SIZE + " items, was " + items.size() + ".");
+        }
+    }
+
+    private static PostingResult ok(Long entryId) {
+        return new PostingResult(ItemStatus.OK, entryId, null);
+    }
+
+    private static PostingResult failed(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        ItemStatus status;
+        if (cause instanceof NonexistentEntityException) {
+            status = ItemStatus.NOT_FOUND;
+        } else if (cause instanceof IllegalArgumentException) {
+            status = ItemStatus.INVALID;
+        } else {
+            status = ItemStatus.FAILED;
+        }
+        return new PostingResult(status, null, cause.getMessage());
+    }
 }
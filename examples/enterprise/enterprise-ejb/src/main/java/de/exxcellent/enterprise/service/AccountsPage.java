@@ -0,0 +1,42 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of {@link AccountingWebService#getAccountsPage(String, int)}.
+ *
+ * @author ostauss
+ */
+public class AccountsPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private List<AccountItem> accounts = new ArrayList<AccountItem>();
+
+    private String continuationToken;
+
+    public List<AccountItem> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(List<AccountItem> accounts) {
+        this.accounts = accounts;
+    }
+
+    /**
+     * @return token of the next page, <code>null</code> on the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import de.exxcellent.enterprise.model.Money;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Monetary value exchanged with {@link AccountingWebService}.
+ *
+ * @author ostauss
+ */
+public class Amount implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private BigDecimal value;
+
+    private String currency;
+
+    public Amount() {
+    }
+
+    public Amount(Money money) {
+        this.value = money.getCash();
+        this.currency = money.getCurrency();
+    }
+
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    public void setValue(BigDecimal value) {
+        this.value = value;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+}
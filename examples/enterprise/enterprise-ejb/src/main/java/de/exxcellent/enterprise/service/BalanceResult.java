@@ -0,0 +1,61 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Balance of one account of {@link AccountingWebService#getBalances(java.util.List)},
+ * in the order of the request.
+ *
+ * @author ostauss
+ */
+public class BalanceResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long accountId;
+
+    private ItemStatus status;
+
+    private List<Amount> balances = new ArrayList<Amount>();
+
+    public BalanceResult() {
+    }
+
+    public BalanceResult(Long accountId, ItemStatus status) {
+        this.accountId = accountId;
+        this.status = status;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public ItemStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ItemStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * @return one amount per currency, empty unless the status is OK
+     */
+    public List<Amount> getBalances() {
+        return balances;
+    }
+
+    public void setBalances(List<Amount> balances) {
+        this.balances = balances;
+    }
+}
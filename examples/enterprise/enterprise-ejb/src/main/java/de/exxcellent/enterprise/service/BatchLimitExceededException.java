@@ -0,0 +1,8 @@
+package de.exxcellent.enterprise.service;
+
+public class BatchLimitExceededException extends Exception {
+    private static final long serialVersionUID = 1L;
+    public BatchLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.io.Serializable;
+
+/**
+ * One entry of {@link AccountingWebService#postEntries(java.util.List)}.
+ *
+ * @author ostauss
+ */
+public class EntryRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long accountId;
+
+    private EntryType entryType;
+
+    private Amount amount;
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public EntryType getEntryType() {
+        return entryType;
+    }
+
+    public void setEntryType(EntryType entryType) {
+        this.entryType = entryType;
+    }
+
+    public Amount getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Amount amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * @throws IllegalArgumentException account, type or amount is missing
+     */
+    Entry toEntry() {
+        if (accountId == null || entryType == null || amount == null || amount.getValue() == null || amount.getCurrency() == null) {
+            throw new IllegalArgumentException("Account, entry type, value and currency are required.");
+        }
+        Entry entry = new Entry();
+        entry.setEntryType(entryType);
+        entry.setMoney(new Money(amount.getValue(), amount.getCurrency()));
+        return entry;
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+/**
+ * Outcome of one item of a batch operation of {@link AccountingWebService}.
+ *
+ * @author ostauss
+ */
+public enum ItemStatus {
+    OK, NOT_FOUND, INVALID, FAILED;
+}
@@ -0,0 +1,64 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package de.exxcellent.enterprise.service;
+
+import java.io.Serializable;
+
+/**
+ * Result of one entry of {@link AccountingWebService#postEntries(java.util.List)},
+ * in the order of the request.
+ *
+ * @author ostauss
+ */
+public class PostingResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private ItemStatus status;
+
+    private Long entryId;
+
+    private String message;
+
+    public PostingResult() {
+    }
+
+    public PostingResult(ItemStatus status, Long entryId, String message) {
+        this.status = status;
+        this.entryId = entryId;
+        this.message = message;
+    }
+
+    public ItemStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ItemStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * @return id of the booked entry, also when booked through the ledger
+     *         journal and not projected yet; <code>null</code> unless the status is OK
+     */
+    public Long getEntryId() {
+        return entryId;
+    }
+
+    public void setEntryId(Long entryId) {
+        this.entryId = entryId;
+    }
+
+    /**
+     * @return why the entry was not booked
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
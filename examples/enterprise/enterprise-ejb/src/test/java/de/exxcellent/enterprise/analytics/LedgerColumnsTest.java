@@ -0,0 +1,129 @@
+package de.exxcellent.enterprise.analytics;
+
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link LedgerColumnsWriter}, {@link LedgerColumns} and {@link Turnover}.
+ */
+public class LedgerColumnsTest extends TestCase {
+
+    private File file;
+
+    public LedgerColumnsTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LedgerColumnsTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("ledger", ".cols");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testColumnsRoundTripAcrossGroups() throws IOException {
+        LedgerColumnsWriter writer = new LedgerColumnsWriter(file, 3);
+        writer.add(1L, EntryType.CREDIT, new BigDecimal("10.50"), "EUR", AccountState.ACTIVE);
+        writer.add(2L, EntryType.DEBIT, new BigDecimal("3"), "USD", null);
+        writer.add(3L, EntryType.CREDIT, new BigDecimal("1E+2"), "EUR", AccountState.CLOSED);
+        writer.add(4L, EntryType.DEBIT, new BigDecimal("-0.001"), "EUR", AccountState.FROZEN);
+        writer.close();
+        assertEquals(4L, writer.getRowCount());
+
+        LedgerColumns columns = LedgerColumns.open(file);
+        try {
+            assertEquals(4L, columns.getRowCount());
+            assertEquals(2, columns.getGroupCount());
+            assertEquals("USD", columns.getCurrencies().get(1));
+            LedgerColumns.Group first = columns.group(0);
+            assertEquals(3, first.getRows());
+            assertEquals(2L, first.getAccountIds().get(1));
+            assertEquals(1050L, first.getUnits().get(0));
+            assertEquals(2, first.getScales().get(0));
+            assertEquals(100L, first.getUnits().get(2));
+            assertEquals(0, first.getScales().get(2));
+            assertEquals(1, first.getCurrencies().get(1));
+            assertEquals(EntryType.DEBIT.ordinal(), first.getEntryTypes().get(1));
+            assertEquals(-1, first.getAccountStates().get(1));
+            LedgerColumns.Group second = columns.group(1);
+            assertEquals(1, second.getRows());
+            assertEquals(-1L, second.getUnits().get(0));
+            assertEquals(3, second.getScales().get(0));
+            assertEquals(AccountState.FROZEN.ordinal(), second.getAccountStates().get(0));
+        } finally {
+            columns.close();
+        }
+    }
+
+    public void testTurnoverPerTypeStateAndCurrency() throws IOException {
+        LedgerColumnsWriter writer = new LedgerColumnsWriter(file, 2);
+        writer.add(1L, EntryType.CREDIT, new BigDecimal("10.50"), "EUR", AccountState.ACTIVE);
+        writer.add(1L, EntryType.CREDIT, new BigDecimal("0.5"), "EUR", AccountState.ACTIVE);
+        writer.add(2L, EntryType.CREDIT, new BigDecimal("7"), "EUR", AccountState.CLOSED);
+        writer.add(3L, EntryType.DEBIT, new BigDecimal("3"), "USD", null);
+        writer.close();
+
+        LedgerColumns columns = LedgerColumns.open(file);
+        try {
+            Turnover turnover = columns.turnover();
+            assertEquals(new BigDecimal("11.00"), turnover.get(EntryType.CREDIT, AccountState.ACTIVE, "EUR").getCash());
+            assertEquals(2L, turnover.getCount(EntryType.CREDIT, AccountState.ACTIVE, "EUR"));
+            assertEquals(new BigDecimal("18.00"), turnover.total(EntryType.CREDIT, "EUR").getCash());
+            assertEquals(new BigDecimal("3"), turnover.get(EntryType.DEBIT, null, "USD").getCash());
+            assertEquals(0L, turnover.getCount(EntryType.DEBIT, AccountState.ACTIVE, "EUR"));
+            assertEquals(BigDecimal.ZERO, turnover.get(EntryType.DEBIT, AccountState.ACTIVE, "CHF").getCash());
+        } finally {
+            columns.close();
+        }
+    }
+
+    public void testSumsOverflowingLongAreCarried() throws IOException {
+        LedgerColumnsWriter writer = new LedgerColumnsWriter(file);
+        writer.add(1L, EntryType.CREDIT, BigDecimal.valueOf(Long.MAX_VALUE), "EUR", null);
+        writer.add(1L, EntryType.CREDIT, BigDecimal.valueOf(Long.MAX_VALUE), "EUR", null);
+        writer.add(1L, EntryType.CREDIT, BigDecimal.ONE, "EUR", null);
+        writer.close();
+
+        LedgerColumns columns = LedgerColumns.open(file);
+        try {
+            BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)).add(BigDecimal.ONE);
+            assertEquals(expected, columns.turnover().get(EntryType.CREDIT, null, "EUR").getCash());
+        } finally {
+            columns.close();
+        }
+    }
+
+    public void testAmountTooLargeIsRejected() throws IOException {
+        LedgerColumnsWriter writer = new LedgerColumnsWriter(file);
+        try {
+            writer.add(1L, EntryType.CREDIT, new BigDecimal("123456789012345678901234567890"), "EUR", null);
+            fail("amount too large expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void testIncompleteFileIsRejected() throws IOException {
+        try {
+            LedgerColumns.open(file);
+            fail("incomplete file expected");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.exxcellent.enterprise.bean;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link AsyncLimiter}.
+ */
+public class AsyncLimiterTest extends TestCase {
+
+    public AsyncLimiterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AsyncLimiterTest.class);
+    }
+
+    public void testRejectsWhenQueueIsFull() throws InterruptedException {
+        final AsyncLimiter limiter = new AsyncLimiter(1, 1, 60000L);
+        limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                    limiter.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiting.start();
+        while (limiter.getMetrics().getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        try {
+            limiter.acquire();
+            fail("rejection expected");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        limiter.release();
+        acquired.await();
+        waiting.join();
+
+        AsyncMetrics metrics = limiter.getMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(0, metrics.getRunning());
+        assertEquals(2, metrics.getAccepted());
+        assertEquals(1, metrics.getRejected());
+        assertTrue(metrics.getMaxWaitNanos() > 0);
+    }
+
+    public void testRejectsWhenWaitTimesOut() throws InterruptedException {
+        AsyncLimiter limiter = new AsyncLimiter(1, 1, 20L);
+        limiter.acquire();
+        long start = System.nanoTime();
+        try {
+            limiter.acquire();
+            fail("rejection expected");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start >= 20000000L);
+        limiter.release();
+        limiter.acquire();
+
+        AsyncMetrics metrics = limiter.getMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(1, metrics.getRunning());
+        assertEquals(2, metrics.getAccepted());
+        assertEquals(1, metrics.getRejected());
+    }
+}
@@ -0,0 +1,85 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.util.Collections;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link AccountBalanceReconciler} and {@link SchemaMigration}, on
+ * an in-memory database.
+ */
+public class AccountBalanceReconcilerTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private AccountJpaController accounts;
+
+    private AccountBalanceReconciler reconciler;
+
+    public AccountBalanceReconcilerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AccountBalanceReconcilerTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+        reconciler = new AccountBalanceReconciler(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testPostedBalancesVerify() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        EntryJpaController entries = new EntryJpaController(database.getEntityManagerFactory());
+        entries.post(accountId, EntryJpaControllerTest.entry(EntryType.CREDIT, "3.00", "USD"));
+        entries.post(accountId, EntryJpaControllerTest.entry(EntryType.DEBIT, "1.00", "USD"));
+        assertEquals(Collections.emptyList(), reconciler.verify());
+        assertEquals(new Money("2.00", "USD"), reconciler.computeBalance(accountId));
+    }
+
+    public void testRebuildCorrectsBalance() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        new EntryJpaController(database.getEntityManagerFactory()).post(accountId,
+                EntryJpaControllerTest.entry(EntryType.CREDIT, "3.00", "EUR"));
+        database.execute("update Account set balance_value = 99 where id = " + accountId);
+        assertEquals(Collections.singletonList(accountId), reconciler.verify());
+        assertEquals(Collections.singletonList(accountId), reconciler.rebuild());
+        assertEquals(Collections.emptyList(), reconciler.verify());
+        assertEquals(new Money("3.00", "EUR"), accounts.findAccount(accountId).getBalance());
+    }
+
+    public void testRebuildMigratesJoinTable() {
+        // an account and its entries as written by the schema with join table
+        database.execute("insert into Account (id, accountState) values (1, 'ACTIVE')");
+        database.execute("insert into Entry (id, entryType, value, currency) values (1, 'CREDIT', 10.00, 'EUR')");
+        database.execute("insert into Entry (id, entryType, value, currency) values (2, 'DEBIT', 2.50, 'EUR')");
+        database.execute("create table " + SchemaMigration.JOIN_TABLE + " (Account_id bigint not null, entries_id bigint not null)");
+        database.execute("insert into " + SchemaMigration.JOIN_TABLE + " values (1, 1)");
+        database.execute("insert into " + SchemaMigration.JOIN_TABLE + " values (1, 2)");
+
+        assertEquals(Collections.singletonList(Long.valueOf(1L)), reconciler.rebuild());
+        Account account = accounts.findAccount(Long.valueOf(1L));
+        assertEquals(new Money("7.50", "EUR"), account.getBalance());
+        assertNotNull(account.getVersion());
+        assertEquals(0, new SchemaMigration(database.getEntityManagerFactory()).migrate());
+    }
+
+    private Long createAccount() {
+        Account account = new Account();
+        accounts.create(account);
+        return account.getId();
+    }
+}
@@ -0,0 +1,105 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Person;
+import javax.persistence.EntityManager;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link AccountJpaController}, on an in-memory database.
+ */
+public class AccountJpaControllerTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private AccountJpaController accounts;
+
+    public AccountJpaControllerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AccountJpaControllerTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testEditEvictsAccountsOfOldAndNewOwnerOnly() throws Exception {
+        Person from = createPerson();
+        Person to = createPerson();
+        Person other = createPerson();
+        Account moved = createAccount(from);
+        createAccount(other);
+        assertEquals(1, countAccounts(from));
+        assertEquals(0, countAccounts(to));
+        assertEquals(1, countAccounts(other));
+
+        moved.setPerson(to);
+        accounts.edit(moved);
+        long hits = hits();
+        assertEquals(0, countAccounts(from));
+        assertEquals(1, countAccounts(to));
+        assertEquals(hits, hits());
+        assertEquals(1, countAccounts(other));
+        assertEquals(hits + 1, hits());
+    }
+
+    public void testCountIsCachedPerFactory() {
+        createAccount(null);
+        createAccount(null);
+        assertEquals(2, accounts.getAccountCount(false));
+        InMemoryDatabase other = new InMemoryDatabase();
+        try {
+            AccountJpaController otherAccounts = new AccountJpaController(other.getEntityManagerFactory());
+            assertEquals(0, otherAccounts.getAccountCount(false));
+            createAccount(null);
+            assertEquals(0, otherAccounts.getAccountCount(false));
+            assertEquals(3, new AccountJpaController(database.getEntityManagerFactory()).getAccountCount(true));
+
+            database.execute("delete from Account");
+            AccountJpaController.invalidateAccountCount(database.getEntityManagerFactory());
+            assertEquals(0, accounts.getAccountCount(true));
+            otherAccounts.create(new Account());
+            assertEquals(1, otherAccounts.getAccountCount(true));
+        } finally {
+            other.close();
+        }
+    }
+
+    private long hits() {
+        return SecondLevelCache.getStatistics(database.getEntityManagerFactory(), SecondLevelCache.PERSON_ACCOUNTS_REGION).getHitCount();
+    }
+
+    private int countAccounts(Person person) {
+        EntityManager em = database.getEntityManagerFactory().createEntityManager();
+        try {
+            return em.find(Person.class, person.getId()).getAccounts().size();
+        } finally {
+            em.close();
+        }
+    }
+
+    private Person createPerson() {
+        Person person = new Person();
+        new PersonJpaController(database.getEntityManagerFactory()).create(person);
+        return person;
+    }
+
+    private Account createAccount(Person person) {
+        Account account = new Account();
+        account.setPerson(person);
+        accounts.create(account);
+        return account;
+    }
+}
@@ -0,0 +1,294 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.EntrySummary;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.Transfer;
+import de.exxcellent.enterprise.model.TransferReceipt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Unit test for {@link EntryJpaController}, on an in-memory database.
+ */
+public class EntryJpaControllerTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private EntryJpaController entries;
+
+    private AccountJpaController accounts;
+
+    public EntryJpaControllerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(EntryJpaControllerTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        entries = new EntryJpaController(database.getEntityManagerFactory());
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testPostBooksEntriesAndBalance() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        entries.post(accountId, Arrays.asList(entry(EntryType.CREDIT, "10.00", "EUR"), entry(EntryType.DEBIT, "2.50", "EUR")));
+        entries.post(accountId, entry(EntryType.CREDIT, "1.00", "EUR"));
+        Account account = accounts.findAccount(accountId);
+        assertEquals(new Money("8.50", "EUR"), account.getBalance());
+        assertEquals(Long.valueOf(2L), account.getVersion());
+        assertEquals(3, entries.findEntrySummaries(accountId).size());
+    }
+
+    public void testBalanceFollowsCreateEditAndDestroy() throws Exception {
+        Long first = createAccount();
+        Long second = createAccount();
+        Account firstAccount = accounts.findAccount(first);
+        Account secondAccount = accounts.findAccount(second);
+        List<Entry> created = new ArrayList<Entry>();
+        // more than one flush interval and one chunk
+        for (int i = 0; i < 120; i++) {
+            Entry entry = entry(i % 3 == 0 ? EntryType.DEBIT : EntryType.CREDIT, "1.00", "EUR");
+            entry.setAccount(i % 2 == 0 ? firstAccount : secondAccount);
+            created.add(entry);
+        }
+        assertEquals(120, entries.create(created.iterator(), 100));
+        assertBalancesMatchEntries(first, second);
+        assertEquals(new Money("20.00", "EUR"), accounts.findAccount(first).getBalance());
+
+        entries.destroy(created.get(1).getId());
+        assertBalancesMatchEntries(first, second);
+
+        Entry moved = entries.findEntry(created.get(2).getId());
+        moved.setAccount(secondAccount);
+        moved.setMoney(new Money("5.00", "EUR"));
+        entries.edit(moved);
+        assertBalancesMatchEntries(first, second);
+
+        Entry single = entry(EntryType.CREDIT, "7.00", "EUR");
+        single.setAccount(firstAccount);
+        entries.create(single);
+        assertBalancesMatchEntries(first, second);
+    }
+
+    public void testPostWithOtherCurrencyBooksNothing() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        entries.post(accountId, entry(EntryType.CREDIT, "10.00", "EUR"));
+        try {
+            entries.post(accountId, Arrays.asList(entry(EntryType.CREDIT, "1.00", "EUR"), entry(EntryType.CREDIT, "1.00", "USD")));
+            fail("currency mismatch expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals(new Money("10.00", "EUR"), accounts.findAccount(accountId).getBalance());
+        assertEquals(1, entries.findEntrySummaries(accountId).size());
+    }
+
+    public void testPostToMissingAccountFails() {
+        try {
+            entries.post(Long.valueOf(4711L), entry(EntryType.CREDIT, "1.00", "EUR"));
+            fail("missing account expected");
+        } catch (NonexistentEntityException expected) {
+            // expected
+        }
+    }
+
+    public void testReservedIdsAreNeverGenerated() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        Entry generated = entry(EntryType.CREDIT, "1.00", "EUR");
+        entries.post(accountId, generated);
+        long reserved = entries.reserveEntryIds();
+        assertEquals(0L, reserved % Entry.ID_ALLOCATION_SIZE);
+        assertTrue(reserved > generated.getId().longValue());
+        for (int i = 0; i < Entry.ID_ALLOCATION_SIZE + 10; i++) {
+            Entry entry = entry(EntryType.CREDIT, "1.00", "EUR");
+            entries.post(accountId, entry);
+            assertFalse(entry.getId().longValue() >= reserved && entry.getId().longValue() < reserved + Entry.ID_ALLOCATION_SIZE);
+        }
+        assertEquals(reserved + Entry.ID_ALLOCATION_SIZE * 2, entries.reserveEntryIds());
+    }
+
+    public void testTransferRetriedAfterCommitIsBookedOnce() throws NonexistentEntityException {
+        Long from = createAccount();
+        Long to = createAccount();
+        Transfer transfer = new Transfer(from, to, new Money("3.00", "EUR"), key("retry"));
+        entries.transfer(transfer);
+        entries.transfer(new Transfer(from, to, new Money("3.00", "EUR"), key("retry")));
+        assertEquals(new Money("-3.00", "EUR"), accounts.findAccount(from).getBalance());
+        assertEquals(new Money("3.00", "EUR"), accounts.findAccount(to).getBalance());
+        assertEquals(1, entries.findEntrySummaries(to).size());
+        assertNotNull(receipt(database.getEntityManagerFactory(), transfer.getIdempotencyKey()));
+    }
+
+    public void testKeyReusedForDifferentTransferFails() throws NonexistentEntityException {
+        Long from = createAccount();
+        Long to = createAccount();
+        entries.transfer(new Transfer(from, to, new Money("3.00", "EUR"), key("reused")));
+        try {
+            entries.transfer(new Transfer(from, to, new Money("4.00", "EUR"), key("reused")));
+            fail("different transfer expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals(new Money("3.00", "EUR"), accounts.findAccount(to).getBalance());
+    }
+
+    public void testDuplicateKeyWithinOneBatchIsBookedOnce() {
+        Long from = createAccount();
+        Long to = createAccount();
+        Exception[] failures = entries.transferAll(Arrays.asList(new Transfer(from, to, new Money("1.00", "EUR"), key("batch")),
+                new Transfer(from, to, new Money("1.00", "EUR"), key("batch")),
+                new Transfer(from, to, new Money("2.00", "EUR"), key("batch")),
+                new Transfer(from, to, new Money("5.00", "EUR"))));
+        assertNull(failures[0]);
+        assertNull(failures[1]);
+        assertTrue(failures[2] instanceof IllegalArgumentException);
+        assertNull(failures[3]);
+        assertEquals(new Money("6.00", "EUR"), accounts.findAccount(to).getBalance());
+        assertEquals(2, entries.findEntrySummaries(to).size());
+    }
+
+    public void testLostRaceIsRecognizedAfterFailedCommit() throws NonexistentEntityException {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("hibernate.ejb.interceptor", BeforeFlush.class.getName());
+        InMemoryDatabase racing = new InMemoryDatabase(properties);
+        try {
+            final EntityManagerFactory emf = racing.getEntityManagerFactory();
+            AccountJpaController racingAccounts = new AccountJpaController(emf);
+            Account from = new Account();
+            racingAccounts.create(from);
+            Account to = new Account();
+            racingAccounts.create(to);
+            final Transfer transfer = new Transfer(from.getId(), to.getId(), new Money("3.00", "EUR"), key("race"));
+            // the other booking commits its receipt while this one is about to flush
+            BeforeFlush.HOOK.set(new Runnable() {
+
+                public void run() {
+                    EntityManager em = emf.createEntityManager();
+                    try {
+                        em.getTransaction().begin();
+                        em.persist(new TransferReceipt(transfer, null, null));
+                        em.getTransaction().commit();
+                    } finally {
+                        em.close();
+                    }
+                }
+            });
+            new EntryJpaController(emf).transfer(transfer);
+            assertNull(BeforeFlush.HOOK.get());
+            assertEquals(0, new EntryJpaController(emf).findEntrySummaries(to.getId()).size());
+            assertNotNull(receipt(emf, transfer.getIdempotencyKey()));
+        } finally {
+            BeforeFlush.HOOK.set(null);
+            racing.close();
+        }
+    }
+
+    public void testPagesContinueAfterLastId() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        for (int i = 0; i < 5; i++) {
+            entries.post(accountId, entry(EntryType.CREDIT, "1.00", "EUR"));
+        }
+        Page<Entry> first = entries.findEntryPage(null, 2);
+        assertEquals(2, first.getItems().size());
+        assertFalse(first.isLast());
+        Page<Entry> second = entries.findEntryPage(first.getContinuationToken(), 2);
+        assertTrue(second.getItems().get(0).getId().longValue() > first.getItems().get(1).getId().longValue());
+        Page<EntrySummary> last = entries.findEntrySummaryPage(second.getContinuationToken(), 2);
+        assertEquals(1, last.getItems().size());
+        assertTrue(last.isLast());
+        assertEquals(5, entries.findEntrySummaryPage(null, 5).getItems().size());
+        assertTrue(entries.findEntrySummaryPage(null, 5).isLast());
+    }
+
+    public void testPageSizeMustBePositive() {
+        try {
+            entries.findEntryPage(null, 0);
+            fail("illegal page size expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private static TransferReceipt receipt(EntityManagerFactory emf, String key) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.find(TransferReceipt.class, key);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * @return an idempotency key of this test; the cache of recent transfers is
+     *         shared by all tests
+     */
+    private String key(String name) {
+        return getName() + "-" + name;
+    }
+
+    private void assertBalancesMatchEntries(Long... accountIds) {
+        AccountBalanceReconciler reconciler = new AccountBalanceReconciler(database.getEntityManagerFactory());
+        Map<Long, List<Money>> balances = accounts.findBalances(Arrays.asList(accountIds));
+        for (Long accountId : accountIds) {
+            Money computed = reconciler.computeBalance(accountId);
+            assertEquals(computed, accounts.findAccount(accountId).getBalance());
+            assertEquals(Collections.singletonList(computed), balances.get(accountId));
+        }
+    }
+
+    private Long createAccount() {
+        Account account = new Account();
+        accounts.create(account);
+        return account.getId();
+    }
+
+    static Entry entry(EntryType type, String cash, String currency) {
+        Entry entry = new Entry();
+        entry.setEntryType(type);
+        entry.setMoney(new Money(cash, currency));
+        return entry;
+    }
+
+    /**
+     * Runs a hook once before the next flush of any session.
+     */
+    public static class BeforeFlush extends EmptyInterceptor {
+
+        private static final long serialVersionUID = 1L;
+
+        static final AtomicReference<Runnable> HOOK = new AtomicReference<Runnable>();
+
+        @Override
+        public void preFlush(Iterator entities) {
+            Runnable hook = HOOK.getAndSet(null);
+            if (hook != null) {
+                hook.run();
+            }
+        }
+    }
+}
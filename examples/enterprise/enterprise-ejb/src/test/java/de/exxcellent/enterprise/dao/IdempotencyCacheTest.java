@@ -0,0 +1,44 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.Transfer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link IdempotencyCache}.
+ */
+public class IdempotencyCacheTest extends TestCase {
+
+    public IdempotencyCacheTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(IdempotencyCacheTest.class);
+    }
+
+    public void testLeastRecentlyUsedKeyIsEvicted() {
+        IdempotencyCache cache = new IdempotencyCache(2);
+        cache.put(transfer("a"));
+        cache.put(transfer("b"));
+        assertNotNull(cache.get("a"));
+        cache.put(transfer("c"));
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    public void testSameTransfer() {
+        Transfer booked = transfer("a");
+        assertTrue(booked.sameAs(new Transfer(1L, 2L, new Money("10", "EUR"), "a")));
+        assertFalse(booked.sameAs(new Transfer(1L, 2L, new Money("11", "EUR"), "a")));
+        assertFalse(booked.sameAs(new Transfer(2L, 1L, new Money("10.00", "EUR"), "a")));
+    }
+
+    private static Transfer transfer(String key) {
+        return new Transfer(1L, 2L, new Money("10.00", "EUR"), key);
+    }
+}
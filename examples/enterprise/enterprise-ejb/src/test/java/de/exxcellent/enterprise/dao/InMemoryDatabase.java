@@ -0,0 +1,112 @@
+package de.exxcellent.enterprise.dao;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import org.hibernate.SessionFactory;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+
+/**
+ * The persistence unit on an empty embedded Derby database held in memory, for
+ * tests running against a database. Every instance gets a database of its own.
+ */
+public final class InMemoryDatabase {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final String url;
+
+    private final Map<String, String> overrides;
+
+    private final EntityManagerFactory emf;
+
+    public InMemoryDatabase() {
+        this(new HashMap<String, String>());
+    }
+
+    /**
+     * @param properties further properties of the persistence unit
+     */
+    public InMemoryDatabase(Map<String, String> properties) {
+        url = "jdbc:derby:memory:test" + COUNTER.incrementAndGet();
+        overrides = new HashMap<String, String>(properties);
+        overrides.put("hibernate.connection.driver_class", "org.apache.derby.jdbc.EmbeddedDriver");
+        overrides.put("hibernate.connection.url", url + ";create=true");
+        overrides.put("hibernate.connection.provider_class", "org.hibernate.connection.DriverManagerConnectionProvider");
+        overrides.put("hibernate.hbm2ddl.auto", "create");
+        emf = Persistence.createEntityManagerFactory(EntityManagerFactoryProvider.PERSISTENCE_UNIT, overrides);
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    /**
+     * Boots another factory on this database, with the schema update of
+     * persistence.xml instead of creating the schema. The caller closes it.
+     */
+    public EntityManagerFactory createEntityManagerFactory() {
+        Map<String, String> properties = new HashMap<String, String>(overrides);
+        properties.remove("hibernate.hbm2ddl.auto");
+        return Persistence.createEntityManagerFactory(EntityManagerFactoryProvider.PERSISTENCE_UNIT, properties);
+    }
+
+    public Statistics getStatistics() {
+        return sessionFactory().getStatistics();
+    }
+
+    /**
+     * Empties the second level cache and resets the statistics, so the next
+     * statements are counted as on a cold cache.
+     */
+    public void coldStart() {
+        SessionFactory sessionFactory = sessionFactory();
+        for (Object entityName : sessionFactory.getAllClassMetadata().keySet()) {
+            sessionFactory.evictEntity((String) entityName);
+        }
+        for (Object role : sessionFactory.getAllCollectionMetadata().keySet()) {
+            sessionFactory.evictCollection((String) role);
+        }
+        sessionFactory.evictQueries();
+        sessionFactory.getStatistics().clear();
+    }
+
+    /**
+     * Runs an SQL statement in a transaction of its own.
+     */
+    public void execute(String sql) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery(sql).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private SessionFactory sessionFactory() {
+        return ((HibernateEntityManagerFactory) emf).getSessionFactory();
+    }
+
+    /**
+     * Closes the factory and drops the database.
+     */
+    public void close() {
+        emf.close();
+        try {
+            DriverManager.getConnection(url + ";drop=true");
+        } catch (SQLException dropped) {
+            // Derby reports a successful drop as exception
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Account;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * Deep page benchmark of keyset against offset paging, against an embedded
+ * Derby database. Reads one page of accounts at several depths, with
+ * {@link AccountJpaController#findAccountEntities(int, int)} and with
+ * {@link AccountJpaController#findAccountPage(String, int)}, each on a cold
+ * second level cache. Prints the mean latency per depth.
+ * <p>
+ * Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=de.exxcellent.enterprise.dao.PagingBenchmark \
+ *     -Dexec.args="[accounts] [page size] [repetitions]"
+ * </pre>
+ */
+public final class PagingBenchmark {
+
+    private PagingBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int count = (args.length > 0 ? Integer.parseInt(args[0]) : 50000);
+        int pageSize = (args.length > 1 ? Integer.parseInt(args[1]) : 100);
+        int repetitions = (args.length > 2 ? Integer.parseInt(args[2]) : 5);
+        InMemoryDatabase database = new InMemoryDatabase();
+        try {
+            List<Long> ids = createAccounts(database, count);
+            AccountJpaController accounts = new AccountJpaController(database.getEntityManagerFactory());
+            // warm up class loading and the JIT
+            for (int i = 0; i < repetitions; i++) {
+                accounts.findAccountEntities(pageSize, 0);
+                accounts.findAccountPage(null, pageSize);
+            }
+            System.out.printf("%d accounts, %d per page%n%10s %12s %12s%n", count, pageSize, "first", "offset", "keyset");
+            int[] depths = {0, count / 4, count / 2, count * 3 / 4, count - pageSize};
+            for (int first : depths) {
+                String token = (first > 0 ? ContinuationToken.encode(ids.get(first - 1)) : null);
+                long offsetNanos = 0L;
+                long keysetNanos = 0L;
+                for (int i = 0; i < repetitions; i++) {
+                    database.coldStart();
+                    long begin = System.nanoTime();
+                    int offsetSize = accounts.findAccountEntities(pageSize, first).size();
+                    offsetNanos += System.nanoTime() - begin;
+
+                    database.coldStart();
+                    begin = System.nanoTime();
+                    int keysetSize = accounts.findAccountPage(token, pageSize).getItems().size();
+                    keysetNanos += System.nanoTime() - begin;
+                    if (offsetSize != pageSize || keysetSize != pageSize) {
+                        throw new IllegalStateException("Short page at " + first + ": " + offsetSize + " and " + keysetSize);
+                    }
+                }
+                System.out.printf("%10d %9.2f ms %9.2f ms%n", first, offsetNanos / 1e6 / repetitions, keysetNanos / 1e6 / repetitions);
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Creates accounts in one transaction.
+     *
+     * @return the ids of all accounts, in ascending order
+     */
+    private static List<Long> createAccounts(InMemoryDatabase database, int count) {
+        EntityManager em = database.getEntityManagerFactory().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < count; i++) {
+                em.persist(new Account());
+                if ((i + 1) % EntryJpaController.FLUSH_INTERVAL == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.getTransaction().commit();
+            Query q = em.createQuery("select o.id from Account as o order by o.id");
+            return TypedResults.list(q);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+}
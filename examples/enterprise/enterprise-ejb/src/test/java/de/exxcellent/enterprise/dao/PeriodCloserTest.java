@@ -0,0 +1,133 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.PeriodClosingBalance;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link PeriodCloser}, on an in-memory database.
+ */
+public class PeriodCloserTest extends TestCase {
+
+    /**
+     * USD, unless it is the default currency: a sum of zero must not come out
+     * in the default currency.
+     */
+    private static final String FOREIGN = "USD".equals(Money.DEFAULT_CURRENCY) ? "CHF" : "USD";
+
+    private InMemoryDatabase database;
+
+    private EntryJpaController entries;
+
+    private AccountJpaController accounts;
+
+    private PeriodCloser closer;
+
+    public PeriodCloserTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PeriodCloserTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        entries = new EntryJpaController(database.getEntityManagerFactory());
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+        closer = new PeriodCloser(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testClosingArchivesEntriesAndKeepsBalance() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        entries.post(accountId, Arrays.asList(entry(EntryType.CREDIT, "10.00", "EUR", 2020, Calendar.JANUARY),
+                entry(EntryType.DEBIT, "2.50", "EUR", 2020, Calendar.JANUARY)));
+        entries.post(accountId, entry(EntryType.CREDIT, "1.00", "EUR", 2020, Calendar.FEBRUARY));
+
+        assertEquals(2, closer.close(202001));
+        assertEquals(1, entries.findEntrySummaries(accountId).size());
+        List<PeriodClosingBalance> closing = closingBalances(accountId, 202001);
+        assertEquals(1, closing.size());
+        assertEquals(new Money("7.50", "EUR"), closing.get(0).getBalance());
+        assertEquals(Collections.singletonList(new Money("8.50", "EUR")), accounts.findBalances(Collections.singleton(accountId)).get(accountId));
+    }
+
+    public void testZeroForeignClosingBalanceIsCarriedForward() throws NonexistentEntityException {
+        Long accountId = createAccount();
+        entries.post(accountId, Arrays.asList(entry(EntryType.CREDIT, "10.00", FOREIGN, 2020, Calendar.JANUARY),
+                entry(EntryType.DEBIT, "10.00", FOREIGN, 2020, Calendar.JANUARY)));
+        closer.close(202001);
+        List<PeriodClosingBalance> closing = closingBalances(accountId, 202001);
+        assertEquals(1, closing.size());
+        assertEquals(FOREIGN, closing.get(0).getBalance().getCurrency());
+        // only the zero closing balance is left to sum up
+        List<Money> balances = accounts.findBalances(Collections.singleton(accountId)).get(accountId);
+        assertEquals(1, balances.size());
+        assertEquals(FOREIGN, balances.get(0).getCurrency());
+
+        entries.post(accountId, entry(EntryType.CREDIT, "5.00", FOREIGN, 2020, Calendar.FEBRUARY));
+        closer.close(202002);
+        closing = closingBalances(accountId, 202002);
+        assertEquals(1, closing.size());
+        assertEquals(new Money("5.00", FOREIGN), closing.get(0).getBalance());
+        assertEquals(FOREIGN, closing.get(0).getBalance().getCurrency());
+        balances = accounts.findBalances(Collections.singleton(accountId)).get(accountId);
+        assertEquals(Collections.singletonList(new Money("5.00", FOREIGN)), balances);
+        assertEquals(FOREIGN, balances.get(0).getCurrency());
+    }
+
+    public void testOpenPeriodIsRejected() {
+        Calendar now = Calendar.getInstance();
+        try {
+            closer.close(now.get(Calendar.YEAR) * 100 + now.get(Calendar.MONTH) + 1);
+            fail("open period expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private List<PeriodClosingBalance> closingBalances(Long accountId, int period) {
+        EntityManager em = database.getEntityManagerFactory().createEntityManager();
+        try {
+            Query q = em.createQuery("select c from PeriodClosingBalance as c where c.accountId = :accountId and c.period = :period");
+            q.setParameter("accountId", accountId);
+            q.setParameter("period", Integer.valueOf(period));
+            return TypedResults.list(q);
+        } finally {
+            em.close();
+        }
+    }
+
+    private Long createAccount() {
+        Account account = new Account();
+        accounts.create(account);
+        return account.getId();
+    }
+
+    private static Entry entry(EntryType type, String cash, String currency, int year, int month) {
+        Entry entry = EntryJpaControllerTest.entry(type, cash, currency);
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(year, month, 15);
+        entry.setBookingDate(date.getTime());
+        return entry;
+    }
+}
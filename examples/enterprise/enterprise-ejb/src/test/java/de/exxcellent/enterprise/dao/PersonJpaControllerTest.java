@@ -0,0 +1,114 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Person;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link PersonJpaController} and {@link FetchPlan}, on an
+ * in-memory database. The statement counts are those documented by
+ * {@link FetchPlan}.
+ */
+public class PersonJpaControllerTest extends TestCase {
+
+    private static final int PERSONS = 3;
+
+    private static final int ACCOUNTS_PER_PERSON = 2;
+
+    private static final int ENTRIES_PER_ACCOUNT = 2;
+
+    private InMemoryDatabase database;
+
+    private PersonJpaController persons;
+
+    public PersonJpaControllerTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PersonJpaControllerTest.class);
+    }
+
+    @Override
+    protected void setUp() throws NonexistentEntityException {
+        database = new InMemoryDatabase();
+        persons = new PersonJpaController(database.getEntityManagerFactory());
+        AccountJpaController accounts = new AccountJpaController(database.getEntityManagerFactory());
+        EntryJpaController entries = new EntryJpaController(database.getEntityManagerFactory());
+        for (int i = 0; i < PERSONS; i++) {
+            Person person = new Person();
+            persons.create(person);
+            for (int j = 0; j < ACCOUNTS_PER_PERSON; j++) {
+                Account account = new Account();
+                account.setPerson(person);
+                accounts.create(account);
+                for (int k = 0; k < ENTRIES_PER_ACCOUNT; k++) {
+                    entries.post(account.getId(), EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR"));
+                }
+            }
+        }
+        database.coldStart();
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testJoinLoadsGraphWithOneStatement() {
+        assertGraph(persons.findPersonEntities(FetchPlan.of(FetchPlan.Strategy.JOIN, true)), true);
+        assertEquals(1L, statements());
+    }
+
+    public void testJoinPerLevelLoadsGraphWithOneStatementPerLevel() {
+        assertGraph(persons.findPersonEntities(FetchPlan.STATEMENT_VIEW), true);
+        assertEquals(3L, statements());
+    }
+
+    public void testBatchLoadsGraphWithOneStatementPerBatch() {
+        assertGraph(persons.findPersonEntities(FetchPlan.of(FetchPlan.Strategy.BATCH, true)), true);
+        // all persons' accounts and all accounts' entries fit into one batch each
+        assertEquals(3L, statements());
+    }
+
+    public void testSummaryViewLoadsAccountsOnly() {
+        assertGraph(persons.findPersonEntities(FetchPlan.SUMMARY_VIEW), false);
+        assertEquals(1L, statements());
+    }
+
+    public void testSinglePersonIsLoadedWithItsGraph() {
+        Long id = persons.findPersonEntities(FetchPlan.SUMMARY_VIEW).get(1).getId();
+        database.coldStart();
+        Person person = persons.findPerson(id, FetchPlan.STATEMENT_VIEW);
+        assertEquals(id, person.getId());
+        for (Account account : person.getAccounts()) {
+            assertEquals(ENTRIES_PER_ACCOUNT, account.getEntries().size());
+        }
+        assertEquals(3L, statements());
+        assertNull(persons.findPerson(Long.valueOf(-1L), FetchPlan.STATEMENT_VIEW));
+    }
+
+    private long statements() {
+        return database.getStatistics().getPrepareStatementCount();
+    }
+
+    /**
+     * Walks the graph after the entity manager is closed.
+     */
+    private static void assertGraph(List<Person> loaded, boolean entries) {
+        assertEquals(PERSONS, loaded.size());
+        for (Person person : loaded) {
+            assertEquals(ACCOUNTS_PER_PERSON, person.getAccounts().size());
+            if (entries) {
+                for (Account account : person.getAccounts()) {
+                    assertEquals(ENTRIES_PER_ACCOUNT, account.getEntries().size());
+                }
+            }
+        }
+    }
+}
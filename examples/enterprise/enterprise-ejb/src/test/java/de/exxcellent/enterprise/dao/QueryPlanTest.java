@@ -0,0 +1,134 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.AccountState;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Person;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.hibernate.Session;
+
+/**
+ * Query plan regression test for the indexes declared on the entities, on an
+ * in-memory database: the hot lookups must not scan their table.
+ */
+public class QueryPlanTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private Long accountId;
+
+    public QueryPlanTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(QueryPlanTest.class);
+    }
+
+    @Override
+    protected void setUp() throws NonexistentEntityException {
+        database = new InMemoryDatabase();
+        PersonJpaController persons = new PersonJpaController(database.getEntityManagerFactory());
+        AccountJpaController accounts = new AccountJpaController(database.getEntityManagerFactory());
+        EntryJpaController entries = new EntryJpaController(database.getEntityManagerFactory());
+        for (int i = 0; i < 100; i++) {
+            Person person = new Person();
+            person.setSurename("Surename" + i);
+            person.setForename("Forename" + i);
+            persons.create(person);
+            Account account = new Account();
+            account.setEan("ean" + i);
+            account.setPerson(person);
+            account.setAccountState(AccountState.values()[i % AccountState.values().length]);
+            accounts.create(account);
+            entries.post(account.getId(), EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR"));
+            entries.post(account.getId(), EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR"));
+            accountId = account.getId();
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testAccountByEan() throws SQLException {
+        assertIndexScan(plan("select object(o) from Account as o where o.ean = :value", "ean7"), "ACCOUNT", "IDX_ACCOUNT_EAN");
+    }
+
+    public void testEntriesOfAccount() throws SQLException {
+        String plan = plan("select o from Entry as o where o.account.id = :value order by o.id", accountId);
+        assertIndexScan(plan, "ENTRY", "IDX_ENTRY_ACCOUNT_ID");
+        assertFalse(plan, plan.contains("Sort ResultSet"));
+    }
+
+    public void testEntrySummariesOfAccount() throws SQLException {
+        String plan = plan(EntryJpaController.SELECT_SUMMARIES + " where a.id = :value order by o.id", accountId);
+        assertIndexScan(plan, "ENTRY", "IDX_ENTRY_ACCOUNT_ID");
+        assertFalse(plan, plan.contains("Sort ResultSet"));
+    }
+
+    public void testPersonByName() throws SQLException {
+        assertIndexScan(plan("select o from Person as o where o.surename = :value and o.forename = 'Forename7'", "Surename7"),
+                "PERSON", "IDX_PERSON_NAME");
+    }
+
+    public void testAccountsByState() throws SQLException {
+        assertIndexScan(plan("select o from Account as o where o.accountState = :value", AccountState.CLOSED),
+                "ACCOUNT", "IDX_ACCOUNT_STATE");
+    }
+
+    public void testAccountsOfPerson() throws SQLException {
+        assertIndexScan(plan("select o from Account as o where o.person.id = :value", Long.valueOf(3L)),
+                "ACCOUNT", "IDX_ACCOUNT_PERSON");
+    }
+
+    private static void assertIndexScan(String plan, String table, String index) {
+        assertTrue(plan, plan.contains("Index Scan ResultSet for " + table + " using index " + index + " "));
+        assertFalse(plan, plan.contains("Table Scan ResultSet"));
+    }
+
+    /**
+     * Runs a query and returns the plan Derby executed it with.
+     */
+    private String plan(String query, Object value) throws SQLException {
+        EntityManager em = database.getEntityManagerFactory().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = ((Session) em.getDelegate()).connection();
+            execute(connection, "call SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+            Query q = em.createQuery(query);
+            q.setParameter("value", value);
+            q.getResultList();
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet rs = statement.executeQuery("values SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()");
+                rs.next();
+                return rs.getString(1);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+}
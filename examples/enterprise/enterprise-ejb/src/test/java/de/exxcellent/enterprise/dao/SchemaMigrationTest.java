@@ -0,0 +1,66 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link SchemaMigration}, on an in-memory database.
+ */
+public class SchemaMigrationTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private SchemaMigration migration;
+
+    public SchemaMigrationTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SchemaMigrationTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        migration = new SchemaMigration(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+    }
+
+    public void testEmptyDatabaseIsLeftAlone() {
+        assertEquals(0, migration.migrate());
+    }
+
+    public void testEntryIdsContinueAfterExistingIds() throws NonexistentEntityException {
+        database.execute("insert into Account (id, accountState) values (1, 'ACTIVE')");
+        database.execute("insert into Entry (id, entryType, value, currency, account_id) values (120, 'CREDIT', 1, 'EUR', 1)");
+        assertEquals(2, migration.migrate());
+        assertEquals(0, migration.migrate());
+
+        Entry entry = EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR");
+        new EntryJpaController(database.getEntityManagerFactory()).post(Long.valueOf(1L), entry);
+        assertTrue(entry.getId().longValue() > 120L);
+    }
+
+    public void testGeneratorAheadOfIdsIsKept() throws NonexistentEntityException {
+        Account account = new Account();
+        new AccountJpaController(database.getEntityManagerFactory()).create(account);
+        EntryJpaController entries = new EntryJpaController(database.getEntityManagerFactory());
+        Entry first = EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR");
+        entries.post(account.getId(), first);
+        assertEquals(0, migration.migrate());
+
+        Entry second = EntryJpaControllerTest.entry(EntryType.CREDIT, "1.00", "EUR");
+        entries.post(account.getId(), second);
+        assertEquals(first.getId().longValue() + 1L, second.getId().longValue());
+    }
+}
@@ -0,0 +1,78 @@
+package de.exxcellent.enterprise.dao;
+
+import de.exxcellent.enterprise.model.Account;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Startup benchmark for the shared {@link EntityManagerFactoryProvider}, against
+ * an embedded Derby database. Compares requests whose controller boots a
+ * factory of its own, as every controller did before, with requests whose
+ * controller uses one shared factory. Every request creates an account
+ * controller and finds one account. Prints the boot time of the shared factory
+ * and the mean latency of both kinds of request.
+ * <p>
+ * Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=de.exxcellent.enterprise.dao.StartupBenchmark \
+ *     -Dexec.args="[requests]"
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int requests = (args.length > 0 ? Integer.parseInt(args[0]) : 20);
+        InMemoryDatabase database = new InMemoryDatabase();
+        try {
+            Account account = new Account();
+            new AccountJpaController(database.getEntityManagerFactory()).create(account);
+            Long accountId = account.getId();
+            // warm up class loading and the JIT
+            request(database.getEntityManagerFactory(), accountId);
+            database.createEntityManagerFactory().close();
+
+            long begin = System.nanoTime();
+            EntityManagerFactory shared = database.createEntityManagerFactory();
+            long boot = System.nanoTime() - begin;
+            try {
+                begin = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    request(shared, accountId);
+                }
+                long sharedNanos = System.nanoTime() - begin;
+
+                begin = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    EntityManagerFactory own = database.createEntityManagerFactory();
+                    try {
+                        request(own, accountId);
+                    } finally {
+                        own.close();
+                    }
+                }
+                long ownNanos = System.nanoTime() - begin;
+
+                print("boot of the shared factory", boot);
+                print("request, factory per controller", ownNanos / requests);
+                print("request, shared factory", sharedNanos / requests);
+            } finally {
+                shared.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private static void print(String name, long nanos) {
+        System.out.printf("%-32s %9.2f ms%n", name, nanos / 1e6);
+    }
+
+    private static void request(EntityManagerFactory emf, Long accountId) {
+        if (new AccountJpaController(emf).findAccount(accountId) == null) {
+            throw new IllegalStateException("The account with id " + accountId + " is missing.");
+        }
+    }
+}
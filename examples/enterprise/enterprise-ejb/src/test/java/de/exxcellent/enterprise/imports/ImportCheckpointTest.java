@@ -0,0 +1,98 @@
+package de.exxcellent.enterprise.imports;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link ImportCheckpoint}.
+ */
+public class ImportCheckpointTest extends TestCase {
+
+    private File file;
+
+    public ImportCheckpointTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ImportCheckpointTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("checkpoint", ".txt");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testConfirmedBlocksAreLoaded() throws IOException {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file);
+        assertFalse(checkpoint.load());
+        checkpoint.prepare(map("p1", 1L), map("a1", 10L), 2, "Account", 10L);
+        checkpoint.confirm();
+        checkpoint.prepare(Collections.<String, Long>emptyMap(), map("a2", 11L), 3, "Account", 11L);
+        checkpoint.rollback();
+        checkpoint.close();
+
+        ImportCheckpoint loaded = new ImportCheckpoint(file);
+        assertFalse(loaded.load());
+        assertEquals(2, loaded.getLine());
+        assertEquals(Long.valueOf(1L), loaded.getPersons().get("p1"));
+        assertEquals(Long.valueOf(10L), loaded.getAccounts().get("a1"));
+        assertNull(loaded.getAccounts().get("a2"));
+        loaded.close();
+    }
+
+    public void testBlockLeftByCrashIsResolved() throws IOException {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file);
+        checkpoint.load();
+        checkpoint.prepare(map("p1", 1L), Collections.<String, Long>emptyMap(), 5, "Person", 1L);
+        checkpoint.close();
+
+        ImportCheckpoint loaded = new ImportCheckpoint(file);
+        assertTrue(loaded.load());
+        assertEquals("Person", loaded.getProbeEntity());
+        assertEquals(Long.valueOf(1L), loaded.getProbeId());
+        loaded.resolve(true);
+        loaded.close();
+
+        ImportCheckpoint resolved = new ImportCheckpoint(file);
+        assertFalse(resolved.load());
+        assertEquals(5, resolved.getLine());
+        assertEquals(Long.valueOf(1L), resolved.getPersons().get("p1"));
+        resolved.close();
+    }
+
+    public void testIncompleteBlockIsDiscarded() throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write("P\tp1\t1\nC\t0\nP\tp2\t2\nA\ta1\t1");
+        writer.close();
+
+        ImportCheckpoint loaded = new ImportCheckpoint(file);
+        assertFalse(loaded.load());
+        loaded.prepare(map("p3", 3L), Collections.<String, Long>emptyMap(), 7, "Person", 3L);
+        loaded.confirm();
+        loaded.close();
+
+        ImportCheckpoint reloaded = new ImportCheckpoint(file);
+        assertFalse(reloaded.load());
+        assertEquals(7, reloaded.getLine());
+        assertNull(reloaded.getPersons().get("p2"));
+        assertEquals(Long.valueOf(3L), reloaded.getPersons().get("p3"));
+        reloaded.close();
+    }
+
+    private static Map<String, Long> map(String key, Long id) {
+        return Collections.singletonMap(key, id);
+    }
+}
@@ -0,0 +1,207 @@
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link Journal} and {@link BalanceSnapshot}.
+ */
+public class JournalTest extends TestCase {
+
+    private File directory;
+
+    public JournalTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(JournalTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testRecordsAreReadInOrderAfterReopen() throws IOException {
+        Journal journal = new Journal(directory, 1024);
+        List<JournalRecord> appended = journal.append(Arrays.asList(JournalRecord.seed(7L, new Money("10.00", "EUR")),
+                posting(7L, EntryType.DEBIT, "2.50")), true);
+        assertEquals(1L, appended.get(0).getSequence());
+        assertEquals(2L, appended.get(1).getSequence());
+        journal.close();
+
+        Journal reopened = new Journal(directory, 1024);
+        assertEquals(2L, reopened.getLastSequence());
+        JournalReader reader = reopened.reader(1L);
+        JournalRecord seed = reader.next();
+        assertEquals(JournalRecord.Type.SEED, seed.getType());
+        assertEquals(new BigDecimal("10.00"), seed.getAmount().getCash());
+        JournalRecord posting = reader.next();
+        assertEquals(Long.valueOf(7L), posting.getAccountId());
+        assertEquals(EntryType.DEBIT, posting.getEntryType());
+        assertEquals("EUR", posting.getAmount().getCurrency());
+        assertNull(reader.next());
+        reopened.append(Collections.singletonList(posting(7L, EntryType.CREDIT, "1")), false);
+        assertEquals(3L, reader.next().getSequence());
+        reopened.close();
+    }
+
+    public void testLargeAmountsRoundTrip() throws IOException {
+        Money large = new Money(new BigDecimal("123456789012345678901234567890.123"), "EUR");
+        Journal journal = new Journal(directory, 1024);
+        journal.append(Collections.singletonList(JournalRecord.seed(1L, large)), true);
+        assertEquals(large.getCash(), journal.reader(1L).next().getAmount().getCash());
+        journal.close();
+    }
+
+    public void testSegmentsRollAndAreDeleted() throws IOException {
+        Journal journal = new Journal(directory, 1024);
+        for (int i = 0; i < 100; i++) {
+            journal.append(Collections.singletonList(posting(1L, EntryType.CREDIT, "1")), false);
+        }
+        assertTrue(journal.getSegments().size() > 1);
+        JournalReader reader = journal.reader(1L);
+        for (long sequence = 1; sequence <= 100; sequence++) {
+            assertEquals(sequence, reader.next().getSequence());
+        }
+        assertNull(reader.next());
+
+        journal.deleteUpTo(50L);
+        assertTrue(journal.getFirstSequence() <= 51L);
+        assertTrue(journal.getFirstSequence() > 1L);
+        assertEquals(51L, journal.reader(51L).next().getSequence());
+        try {
+            journal.reader(1L).next();
+            fail("deleted sequence expected");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        journal.close();
+    }
+
+    public void testTornRecordIsCutOff() throws IOException {
+        Journal journal = new Journal(directory, 1024);
+        journal.append(Arrays.asList(posting(1L, EntryType.CREDIT, "1"), posting(1L, EntryType.CREDIT, "2")), true);
+        journal.close();
+
+        corruptLastRecord(new File(directory, JournalSegment.nameOf(1L)));
+
+        Journal reopened = new Journal(directory, 1024);
+        assertEquals(1L, reopened.getLastSequence());
+        List<JournalRecord> appended = reopened.append(Collections.singletonList(posting(1L, EntryType.CREDIT, "3")), true);
+        assertEquals(2L, appended.get(0).getSequence());
+        reopened.close();
+
+        Journal again = new Journal(directory, 1024);
+        JournalReader reader = again.reader(1L);
+        reader.next();
+        assertEquals(new BigDecimal("3"), reader.next().getAmount().getCash());
+        again.close();
+    }
+
+    public void testSnapshotPlusReplay() throws IOException {
+        directory.mkdirs();
+        Map<Long, Money> balances = new HashMap<Long, Money>();
+        balances.put(1L, new Money("5.00", "EUR"));
+        BalanceSnapshot.write(directory, 1L, balances);
+
+        Journal journal = new Journal(directory, 1024);
+        journal.append(Arrays.asList(JournalRecord.seed(1L, new Money("5.00", "EUR")), posting(1L, EntryType.CREDIT, "1.50"),
+                JournalRecord.seed(2L, new Money("3", "EUR")), posting(2L, EntryType.DEBIT, "1")), true);
+
+        BalanceSnapshot snapshot = BalanceSnapshot.load(directory);
+        assertEquals(1L, snapshot.getSequence());
+        Map<Long, Money> recovered = new HashMap<Long, Money>(snapshot.getBalances());
+        LedgerJournal.replay(journal.reader(snapshot.getSequence() + 1), recovered);
+        assertEquals(new BigDecimal("6.50"), recovered.get(1L).getCash());
+        assertEquals(new BigDecimal("2"), recovered.get(2L).getCash());
+        journal.close();
+    }
+
+    public void testCorruptSnapshotIsIgnored() throws IOException {
+        directory.mkdirs();
+        BalanceSnapshot.write(directory, 3L, Collections.singletonMap(1L, new Money("1", "EUR")));
+        RandomAccessFile file = new RandomAccessFile(new File(directory, BalanceSnapshot.nameOf(3L)), "rw");
+        file.seek(10);
+        file.write(0x7F);
+        file.close();
+        assertEquals(0L, BalanceSnapshot.load(directory).getSequence());
+    }
+
+    public void testPreviousSnapshotIsKept() throws IOException {
+        directory.mkdirs();
+        BalanceSnapshot.write(directory, 3L, Collections.singletonMap(1L, new Money("1", "EUR")));
+        BalanceSnapshot.write(directory, 5L, Collections.singletonMap(1L, new Money("2", "EUR")));
+        BalanceSnapshot.write(directory, 7L, Collections.singletonMap(1L, new Money("3", "EUR")));
+        assertFalse(new File(directory, BalanceSnapshot.nameOf(3L)).exists());
+        assertEquals(5L, BalanceSnapshot.oldestSequence(directory));
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, BalanceSnapshot.nameOf(7L)), "rw");
+        file.seek(10);
+        file.write(0x7F);
+        file.close();
+        BalanceSnapshot fallback = BalanceSnapshot.load(directory);
+        assertEquals(5L, fallback.getSequence());
+        assertEquals(new BigDecimal("2"), fallback.getBalances().get(1L).getCash());
+    }
+
+    private static JournalRecord posting(Long accountId, EntryType type, String amount) {
+        Entry entry = new Entry();
+        entry.setEntryType(type);
+        entry.setMoney(new Money(amount, "EUR"));
+        entry.setBookingDate(new Date());
+        return JournalRecord.posting(accountId, entry);
+    }
+
+    /**
+     * Flips a byte of the payload of the last record, as a write torn by a crash would.
+     */
+    private static void corruptLastRecord(File segment) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            List<Integer> starts = new ArrayList<Integer>();
+            int position = 0;
+            while (true) {
+                file.seek(position);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                starts.add(position);
+                position += JournalRecord.HEADER_SIZE + length;
+            }
+            file.seek(starts.get(starts.size() - 1) + JournalRecord.HEADER_SIZE + 2);
+            file.write(0x55);
+        } finally {
+            file.close();
+        }
+    }
+}
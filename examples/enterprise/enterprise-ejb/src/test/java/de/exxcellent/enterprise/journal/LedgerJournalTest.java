@@ -0,0 +1,173 @@
+package de.exxcellent.enterprise.journal;
+
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.InMemoryDatabase;
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.dto.EntrySummary;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link LedgerJournal} and {@link JournalProjector}, on an
+ * in-memory database. The projection runs when the test runs the tasks handed
+ * to the executor.
+ */
+public class LedgerJournalTest extends TestCase {
+
+    private File directory;
+
+    private InMemoryDatabase database;
+
+    private AccountJpaController accounts;
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private final Executor executor = new Executor() {
+
+        public void execute(Runnable command) {
+            synchronized (tasks) {
+                tasks.add(command);
+            }
+        }
+    };
+
+    public LedgerJournalTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LedgerJournalTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        database = new InMemoryDatabase();
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+    }
+
+    @Override
+    protected void tearDown() {
+        database.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testPostingsAreProjected() throws IOException, NonexistentEntityException {
+        Long accountId = createAccount();
+        LedgerJournal journal = open();
+        Long first = journal.post(accountId, entry(EntryType.CREDIT, "10.00"));
+        Long second = journal.post(accountId, entry(EntryType.DEBIT, "2.50"));
+        assertEquals(first.longValue() + 1, second.longValue());
+        assertEquals(new Money("7.50", "EUR"), journal.balanceOf(accountId));
+        assertEquals(0L, journal.getProjectedSequence());
+
+        runTasks();
+        assertEquals(journal.getLastSequence(), journal.getProjectedSequence());
+        assertEquals(new Money("7.50", "EUR"), accounts.findAccount(accountId).getBalance());
+        List<EntrySummary> projected = new EntryJpaController(database.getEntityManagerFactory()).findEntrySummaries(accountId);
+        assertEquals(2, projected.size());
+        assertEquals(first, projected.get(0).getId());
+        assertEquals(second, projected.get(1).getId());
+        assertTrue(journal.getParkedRecords().isEmpty());
+        journal.shutdown();
+    }
+
+    public void testBatchLeavesOutFailingEntries() throws IOException {
+        Long accountId = createAccount();
+        LedgerJournal journal = open();
+        Entry mismatch = entry(EntryType.CREDIT, "1.00");
+        mismatch.setMoney(new Money("1.00", "CHF"));
+        List<Entry> entries = Arrays.asList(entry(EntryType.CREDIT, "10.00"), entry(EntryType.CREDIT, "1.00"), mismatch,
+                entry(EntryType.DEBIT, "2.50"));
+        Exception[] failures = journal.postAll(Arrays.asList(accountId, Long.valueOf(4711L), accountId, accountId), entries);
+        assertNull(failures[0]);
+        assertTrue(failures[1] instanceof NonexistentEntityException);
+        assertTrue(failures[2] instanceof IllegalArgumentException);
+        assertNull(failures[3]);
+        assertNull(entries.get(2).getId());
+        assertEquals(entries.get(0).getId().longValue() + 1, entries.get(3).getId().longValue());
+        // the seed and the two postings
+        assertEquals(3L, journal.getLastSequence());
+        assertEquals(new Money("7.50", "EUR"), journal.balanceOf(accountId));
+        runTasks();
+        journal.shutdown();
+    }
+
+    public void testRecordFailingTwiceIsParked() throws IOException, NonexistentEntityException {
+        Long accountId = createAccount();
+        LedgerJournal journal = open();
+        journal.post(accountId, entry(EntryType.CREDIT, "10.00"));
+        // the projection of the EUR posting fails on a USD balance, every time
+        database.execute("update Account set balance_value = 5, balance_currency = 'USD' where id = " + accountId);
+        database.coldStart();
+
+        runTasks();
+        assertEquals(journal.getLastSequence(), journal.getProjectedSequence());
+        List<JournalRecord> parked = journal.getParkedRecords();
+        assertEquals(1, parked.size());
+        assertEquals(JournalRecord.Type.POSTING, parked.get(0).getType());
+        assertEquals(journal.getLastSequence(), parked.get(0).getSequence());
+        assertEquals(0, new EntryJpaController(database.getEntityManagerFactory()).findEntrySummaries(accountId).size());
+
+        journal.post(accountId, entry(EntryType.CREDIT, "1.00"));
+        database.execute("update Account set balance_currency = 'EUR' where id = " + accountId);
+        database.coldStart();
+        runTasks();
+        assertEquals(journal.getLastSequence(), journal.getProjectedSequence());
+        assertEquals(1, journal.getParkedRecords().size());
+        assertEquals(1, new EntryJpaController(database.getEntityManagerFactory()).findEntrySummaries(accountId).size());
+        journal.shutdown();
+    }
+
+    private LedgerJournal open() throws IOException {
+        return new LedgerJournal(directory, database.getEntityManagerFactory(), executor, 1024, 1000L);
+    }
+
+    /**
+     * Runs the tasks handed to the executor, and those they hand on, until none is left.
+     */
+    private void runTasks() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                if (tasks.isEmpty()) {
+                    return;
+                }
+                task = tasks.remove(0);
+            }
+            task.run();
+        }
+    }
+
+    private Long createAccount() {
+        Account account = new Account();
+        accounts.create(account);
+        return account.getId();
+    }
+
+    private static Entry entry(EntryType type, String cash) {
+        Entry entry = new Entry();
+        entry.setEntryType(type);
+        entry.setMoney(new Money(cash, "EUR"));
+        return entry;
+    }
+}
@@ -0,0 +1,49 @@
+package de.exxcellent.enterprise.model;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link Account}.
+ */
+public class AccountTest extends TestCase {
+
+    public AccountTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AccountTest.class);
+    }
+
+    public void testPostUpdatesRunningBalance() {
+        Account account = new Account();
+        assertEquals(Money.ZERO, account.getBalance());
+        account.post(entry(EntryType.CREDIT, "10.00", "USD"));
+        account.post(entry(EntryType.DEBIT, "2.50", "USD"));
+        account.post(entry(EntryType.CREDIT, "0.25", "USD"));
+        assertEquals(new Money("7.75", "USD"), account.getBalance());
+    }
+
+    public void testPostWithOtherCurrencyIsRejected() {
+        Account account = new Account();
+        account.post(entry(EntryType.CREDIT, "10.00", "EUR"));
+        Entry entry = entry(EntryType.CREDIT, "1.00", "USD");
+        try {
+            account.post(entry);
+            fail("currency mismatch expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertNull(entry.getAccount());
+        assertEquals(new Money("10.00", "EUR"), account.getBalance());
+    }
+
+    private static Entry entry(EntryType type, String cash, String currency) {
+        Entry entry = new Entry();
+        entry.setEntryType(type);
+        entry.setMoney(new Money(cash, currency));
+        return entry;
+    }
+}
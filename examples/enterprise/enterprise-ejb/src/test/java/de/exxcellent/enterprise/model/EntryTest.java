@@ -0,0 +1,40 @@
+package de.exxcellent.enterprise.model;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link Entry}.
+ */
+public class EntryTest extends TestCase {
+
+    public EntryTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(EntryTest.class);
+    }
+
+    public void testBookingDateSetsPeriod() {
+        Entry entry = new Entry();
+        entry.setBookingDate(new GregorianCalendar(2010, Calendar.DECEMBER, 31).getTime());
+        assertEquals(Integer.valueOf(201012), entry.getBookingPeriod());
+        entry.setBookingDate(null);
+        assertNull(entry.getBookingPeriod());
+    }
+
+    public void testPostBooksToday() {
+        Account account = new Account();
+        Entry entry = new Entry();
+        entry.setEntryType(EntryType.DEBIT);
+        entry.setMoney(new Money("2.50", "EUR"));
+        account.post(entry);
+        assertNotNull(entry.getBookingDate());
+        assertSame(account, entry.getAccount());
+        assertEquals(new Money("-2.50", "EUR"), account.getBalance());
+    }
+}
@@ -0,0 +1,67 @@
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link MoneyAccumulator}.
+ */
+public class MoneyAccumulatorTest extends TestCase {
+
+    public MoneyAccumulatorTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MoneyAccumulatorTest.class);
+    }
+
+    public void testSumEqualsFoldWithAdd() {
+        String[] values = {"10.00", "0.5", "-3.125", "1000", "0"};
+        MoneyAccumulator accumulator = new MoneyAccumulator();
+        Money fold = Money.ZERO;
+        for (String value : values) {
+            Money money = new Money(value, "EUR");
+            accumulator.add(money);
+            fold = fold.add(money);
+        }
+        assertEquals(fold.getCash(), accumulator.toMoney().getCash());
+        assertEquals(fold.getCurrency(), accumulator.toMoney().getCurrency());
+    }
+
+    public void testPostCreditAndDebit() {
+        MoneyAccumulator accumulator = new MoneyAccumulator("EUR");
+        accumulator.postAll(Arrays.asList(entry(EntryType.CREDIT, "100.00"), entry(EntryType.DEBIT, "30.50"), entry(EntryType.CREDIT, "0.25")));
+        assertEquals(new BigDecimal("69.75"), accumulator.toMoney().getCash());
+    }
+
+    public void testOverflowSwitchesToBigDecimal() {
+        MoneyAccumulator accumulator = new MoneyAccumulator();
+        Money max = new Money(BigDecimal.valueOf(Long.MAX_VALUE), "EUR");
+        accumulator.add(max).add(max).subtract(new Money("0.1", "EUR"));
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2L)).subtract(new BigDecimal("0.1")),
+                accumulator.toMoney().getCash());
+    }
+
+    public void testCurrencyMismatch() {
+        MoneyAccumulator accumulator = new MoneyAccumulator();
+        accumulator.add(new Money("0", "USD")).add(new Money("1", "EUR"));
+        try {
+            accumulator.add(new Money("1", "USD"));
+            fail("currency mismatch expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals("EUR", accumulator.toMoney().getCurrency());
+    }
+
+    private static Entry entry(EntryType type, String value) {
+        Entry entry = new Entry();
+        entry.setEntryType(type);
+        entry.setMoney(new Money(value, "EUR"));
+        return entry;
+    }
+}
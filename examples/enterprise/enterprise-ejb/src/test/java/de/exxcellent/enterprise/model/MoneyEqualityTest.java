@@ -0,0 +1,90 @@
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Property test for the {@link Money#equals(Object)} / {@link Money#hashCode()} contract over random values in compact and {@link BigDecimal} form.
+ */
+public class MoneyEqualityTest extends TestCase {
+
+    private static final int RUNS = 20000;
+    private static final String[] CURRENCIES = {"EUR", "USD", "JPY", "FOO"};
+
+    public MoneyEqualityTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MoneyEqualityTest.class);
+    }
+
+    public void testEqualsMatchesCompareToAndHashCode() {
+        Random random = new Random(4711L);
+        for (int i = 0; i < RUNS; i++) {
+            Money one = randomMoney(random);
+            Money two = random.nextInt(4) == 0 ? rescaled(one, random) : randomMoney(random);
+            boolean expected = (one.zero() && two.zero())
+                    || (one.getCurrency().equals(two.getCurrency()) && one.getCash().compareTo(two.getCash()) == 0);
+            assertEquals(one + " equals " + two, expected, one.equals(two));
+            assertEquals(two + " equals " + one, expected, two.equals(one));
+            if (expected) {
+                assertEquals(one + " hashCode " + two, one.hashCode(), two.hashCode());
+            }
+            assertTrue(one.equals(one));
+            assertFalse(one.equals(null));
+        }
+    }
+
+    public void testCompactAndBigDecimalFormAgree() {
+        Random random = new Random(42L);
+        for (int i = 0; i < RUNS; i++) {
+            Money compact = randomMoney(random);
+            Money sum = compact.add(new Money("0", compact.getCurrency()));
+            Money inflated = new Money(new BigDecimal(compact.getCash().toString()), new String(compact.getCurrency()));
+            assertEquals(compact, sum);
+            assertEquals(compact, inflated);
+            assertEquals(compact.hashCode(), sum.hashCode());
+            assertEquals(compact.hashCode(), inflated.hashCode());
+        }
+    }
+
+    public void testZeroAndScale() {
+        assertEquals(new Money("0", "EUR"), new Money("0.00", "USD"));
+        assertEquals(new Money("0", "EUR").hashCode(), new Money("0.00", "USD").hashCode());
+        assertEquals(new Money("1.0", "EUR"), new Money("1.00", "EUR"));
+        assertEquals(new Money("1.0", "EUR").hashCode(), new Money("1.00", "EUR").hashCode());
+        assertEquals(new Money("1E+2", "EUR"), new Money("100", "EUR"));
+        assertEquals(new Money("1E+2", "EUR").hashCode(), new Money("100", "EUR").hashCode());
+        Money big = new Money(new BigDecimal("9223372036854775807000"), "EUR");
+        assertEquals(big, new Money(new BigDecimal("9223372036854775807E+3"), "EUR"));
+        assertEquals(big.hashCode(), new Money(new BigDecimal("9223372036854775807E+3"), "EUR").hashCode());
+    }
+
+    private static Money randomMoney(Random random) {
+        BigInteger unscaled;
+        switch (random.nextInt(4)) {
+            case 0:
+                unscaled = BigInteger.valueOf(random.nextInt(3) - 1);
+                break;
+            case 1:
+                unscaled = BigInteger.valueOf(random.nextInt(2000) - 1000);
+                break;
+            case 2:
+                unscaled = BigInteger.valueOf(random.nextLong());
+                break;
+            default:
+                unscaled = new BigInteger(90, random).subtract(BigInteger.ONE.shiftLeft(89));
+                break;
+        }
+        return new Money(new BigDecimal(unscaled, random.nextInt(8) - 2), CURRENCIES[random.nextInt(CURRENCIES.length)]);
+    }
+
+    private static Money rescaled(Money money, Random random) {
+        return new Money(money.getCash().setScale(money.getCash().scale() + random.nextInt(4)), money.getCurrency());
+    }
+}
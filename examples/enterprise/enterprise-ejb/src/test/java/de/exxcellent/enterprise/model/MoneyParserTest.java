@@ -0,0 +1,78 @@
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link MoneyParser}.
+ */
+public class MoneyParserTest extends TestCase {
+
+    public MoneyParserTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MoneyParserTest.class);
+    }
+
+    public void testParseBothOrders() {
+        Money one = Money.parse("10.00 EUR", " ");
+        assertEquals(new BigDecimal("10.00"), one.getCash());
+        assertSame(CurrencyUnit.of("EUR").getCode(), one.getCurrency());
+        Money two = Money.parse("EUR  -0.5", " ");
+        assertEquals(new BigDecimal("-0.5"), two.getCash());
+        assertEquals("EUR", two.getCurrency());
+    }
+
+    public void testParseFallsBackToBigDecimal() {
+        assertEquals(new BigDecimal("1E+3"), Money.parse("1E+3;USD", ";").getCash());
+        assertEquals(new BigDecimal("12345678901234567890.12"), Money.parse("12345678901234567890.12 USD", " ").getCash());
+    }
+
+    public void testIllegalValues() {
+        try {
+            Money.parse("10.00 EUR x", " ");
+            fail("three tokens");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        try {
+            Money.parse("EUR USD", " ");
+            fail("no amount");
+        } catch (NumberFormatException expected) {
+            // expected
+        }
+    }
+
+    public void testParseRanges() {
+        char[] chars = "xx7.25 CHFyy".toCharArray();
+        assertEquals(new BigDecimal("7.25"), MoneyParser.parse(chars, 2, 10, " ").getCash());
+        ByteBuffer bytes = ByteBuffer.wrap("xx7.25 CHFyy".getBytes());
+        Money money = MoneyParser.parse(bytes, 2, 10, " ");
+        assertEquals(new BigDecimal("7.25"), money.getCash());
+        assertEquals("CHF", money.getCurrency());
+    }
+
+    public void testParseLines() {
+        MoneyColumns columns = new MoneyColumns(1);
+        ByteBuffer bytes = ByteBuffer.wrap("10.00 EUR\r\n\n-3 USD\n99999999999999999999 EUR".getBytes());
+        assertEquals(3, MoneyParser.parseLines(bytes, " ", columns));
+        assertEquals(3, columns.size());
+        assertEquals(1000L, columns.getUnits(0));
+        assertEquals(2, columns.getScale(0));
+        assertSame(CurrencyUnit.of("EUR"), columns.getCurrencyUnit(0));
+        assertEquals(new Money("-3", "USD"), columns.get(1));
+        assertFalse(columns.isCompact(2));
+        assertEquals(new BigDecimal("99999999999999999999"), columns.get(2).getCash());
+        try {
+            MoneyParser.parseLines("1 EUR\nEUR", 0, 9, " ", columns);
+            fail("illegal line");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("Line 2"));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.exxcellent.enterprise.model;
+
+import java.math.BigDecimal;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link Money}.
+ */
+public class MoneyTest extends TestCase {
+
+    public MoneyTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MoneyTest.class);
+    }
+
+    public void testAddAlignsScale() {
+        Money sum = new Money("10.5", "EUR").add(new Money("0.25", "EUR"));
+        assertEquals(new BigDecimal("10.75"), sum.getCash());
+        assertEquals(2, sum.scale());
+        assertEquals("EUR", sum.getCurrency());
+    }
+
+    public void testSubtractAndNegate() {
+        Money difference = new Money("1.00", "EUR").subtract(new Money("3", "EUR"));
+        assertEquals(new BigDecimal("-2.00"), difference.getCash());
+        assertTrue(difference.negative());
+        assertEquals(new BigDecimal("2.00"), difference.negate().getCash());
+        assertEquals(new BigDecimal("2.00"), difference.abs().getCash());
+    }
+
+    public void testMultiplyAddsScales() {
+        Money product = new Money("1.5", "EUR").multiply(new Money("2.25", "EUR"));
+        assertEquals(new BigDecimal("3.375"), product.getCash());
+    }
+
+    public void testOverflowFallsBackToBigDecimal() {
+        Money max = new Money(BigDecimal.valueOf(Long.MAX_VALUE), "EUR");
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.ONE), max.add(new Money("1", "EUR")).getCash());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.TEN), max.multiply(new Money("10", "EUR")).getCash());
+        assertEquals(new BigDecimal("9223372036854775807.1"), max.add(new Money("0.1", "EUR")).getCash());
+        Money min = new Money(BigDecimal.valueOf(Long.MIN_VALUE), "EUR");
+        assertEquals(BigDecimal.valueOf(Long.MIN_VALUE).negate(), min.negate().getCash());
+    }
+
+    public void testZeroTakesCurrencyOfOtherOperand() {
+        Money sum = new Money("0.00", "USD").add(new Money("1.5", "EUR"));
+        assertEquals("EUR", sum.getCurrency());
+        assertEquals(new BigDecimal("1.5"), sum.getCash());
+        assertEquals("USD", new Money("1", "USD").add(new Money("0", "EUR")).getCurrency());
+    }
+
+    public void testCurrencyMismatch() {
+        try {
+            new Money("1", "USD").add(new Money("1", "EUR"));
+            fail("currency mismatch expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    public void testCompareTo() {
+        assertTrue(new Money("1.10", "EUR").compareTo(new Money("1.1", "EUR")) == 0);
+        assertTrue(new Money("1.01", "EUR").compareTo(new Money("1.1", "EUR")) < 0);
+        assertTrue(new Money("0", "USD").compareTo(new Money("0.00", "EUR")) == 0);
+        assertTrue(new Money("0", "USD").compareTo(new Money("-1", "EUR")) > 0);
+    }
+
+    public void testSetCashResetsCompactForm() {
+        Money money = new Money("1", "EUR");
+        assertFalse(money.zero());
+        money.setCash(BigDecimal.ZERO);
+        assertTrue(money.zero());
+    }
+
+    public void testNormalizeUsesCurrencyDigits() {
+        assertEquals(new BigDecimal("1.00"), new Money("1", "EUR").normalize().getCash());
+        assertEquals(new BigDecimal("1.13"), new Money("1.125", "EUR").normalize().getCash());
+        assertEquals(new BigDecimal("2"), new Money("1.5", "JPY").normalize().getCash());
+        try {
+            new Money("1", "FOO").normalize();
+            fail("unknown currency expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    public void testCurrencyIsInterned() {
+        Money money = new Money("1", new String("EUR"));
+        assertSame(CurrencyUnit.of("EUR").getCode(), money.getCurrency());
+        assertSame(CurrencyUnit.of("EUR"), CurrencyUnit.of(new String("EUR")));
+        assertEquals("FOO", new Money("1", "FOO").add(new Money("1", new String("FOO"))).getCurrency());
+    }
+}
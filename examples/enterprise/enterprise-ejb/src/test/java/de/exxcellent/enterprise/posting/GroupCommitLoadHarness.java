@@ -0,0 +1,195 @@
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntityManagerFactoryProvider;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.Transfer;
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Load harness for the {@link GroupCommitter}, against an embedded Derby
+ * database on disk, so every commit flushes the log. Client threads book
+ * transfers between random accounts and each waits for its own transfer, as
+ * {@link de.exxcellent.enterprise.bean.AccountingSessionBean#transfer} does:
+ * first with one transaction per transfer, then through the group committer for
+ * every window. Prints throughput and latency percentiles of every run.
+ * <p>
+ * Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=de.exxcellent.enterprise.posting.GroupCommitLoadHarness \
+ *     -Dexec.args="[clients] [transfers per client] [window millis ...]"
+ * </pre>
+ */
+public final class GroupCommitLoadHarness {
+
+    private static final int ACCOUNTS = 100;
+
+    private final int clients;
+
+    private final int transfersPerClient;
+
+    private final List<Long> accountIds = new ArrayList<Long>(ACCOUNTS);
+
+    /**
+     * Books a transfer and returns once it is booked.
+     */
+    private interface Booking {
+
+        void book(Transfer transfer) throws Exception;
+    }
+
+    private GroupCommitLoadHarness(int clients, int transfersPerClient) {
+        this.clients = clients;
+        this.transfersPerClient = transfersPerClient;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0 ? Integer.parseInt(args[0]) : 16);
+        int transfersPerClient = (args.length > 1 ? Integer.parseInt(args[1]) : 200);
+        List<Long> windows = new ArrayList<Long>();
+        for (int i = 2; i < args.length; i++) {
+            windows.add(Long.valueOf(args[i]));
+        }
+        if (windows.isEmpty()) {
+            windows.addAll(Arrays.asList(Long.valueOf(1L), Long.valueOf(5L), Long.valueOf(20L)));
+        }
+        new GroupCommitLoadHarness(clients, transfersPerClient).run(windows);
+    }
+
+    private void run(List<Long> windows) throws Exception {
+        File directory = File.createTempFile("harness", "");
+        directory.delete();
+        String url = "jdbc:derby:" + new File(directory, "db").getPath();
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("hibernate.connection.driver_class", "org.apache.derby.jdbc.EmbeddedDriver");
+        overrides.put("hibernate.connection.url", url + ";create=true");
+        overrides.put("hibernate.connection.provider_class", "org.hibernate.connection.DriverManagerConnectionProvider");
+        overrides.put("hibernate.connection.pool_size", String.valueOf(clients + 1));
+        overrides.put("hibernate.hbm2ddl.auto", "create");
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(EntityManagerFactoryProvider.PERSISTENCE_UNIT, overrides);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AccountJpaController accounts = new AccountJpaController(emf);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                Account account = new Account();
+                accounts.create(account);
+                accountIds.add(account.getId());
+            }
+            final EntryJpaController entries = new EntryJpaController(emf);
+            System.out.printf("%d clients, %d transfers each, %d accounts%n", clients, transfersPerClient, ACCOUNTS);
+            measure("one transaction each", new Booking() {
+
+                public void book(Transfer transfer) throws Exception {
+                    entries.transfer(transfer);
+                }
+            });
+            for (Long window : windows) {
+                final GroupCommitter committer = new GroupCommitter(entries, executor, GroupCommitter.DEFAULT_MAX_BATCH, window.longValue(),
+                        GroupCommitter.DEFAULT_QUEUE_CAPACITY);
+                try {
+                    measure("window " + window + " ms", new Booking() {
+
+                        public void book(Transfer transfer) throws Exception {
+                            committer.submit(transfer).get();
+                        }
+                    });
+                } finally {
+                    committer.shutdown();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            emf.close();
+            try {
+                DriverManager.getConnection(url + ";shutdown=true");
+            } catch (SQLException shutDown) {
+                // Derby reports a successful shutdown as exception
+            }
+            delete(directory);
+        }
+    }
+
+    /**
+     * Runs all clients with one booking and prints the results.
+     */
+    private void measure(String name, final Booking booking) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        for (int c = 0; c < clients; c++) {
+            final Random random = new Random(c);
+            results.add(pool.submit(new Callable<long[]>() {
+
+                public long[] call() throws Exception {
+                    long[] latencies = new long[transfersPerClient];
+                    start.await();
+                    for (int i = 0; i < latencies.length; i++) {
+                        int from = random.nextInt(ACCOUNTS);
+                        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                        long begin = System.nanoTime();
+                        try {
+                            booking.book(new Transfer(accountIds.get(from), accountIds.get(to), new Money("1.00", "EUR")));
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return latencies;
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] all = new long[clients * transfersPerClient];
+        int n = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, all, n, latencies.length);
+            n += latencies.length;
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        Arrays.sort(all);
+        System.out.printf("%-22s %8.0f transfers/s   p50 %7.2f ms   p99 %7.2f ms   max %7.2f ms   failed %d%n", name,
+                all.length / (elapsed / 1e9), millis(all, 0.50), millis(all, 0.99), all[all.length - 1] / 1e6, failed.get());
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
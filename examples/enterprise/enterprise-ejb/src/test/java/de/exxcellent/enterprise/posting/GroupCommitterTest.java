@@ -0,0 +1,157 @@
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.concurrent.WorkerPool;
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.InMemoryDatabase;
+import de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.model.Transfer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link GroupCommitter}, on an in-memory database.
+ */
+public class GroupCommitterTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private ExecutorService executor;
+
+    private GroupCommitter committer;
+
+    private AccountJpaController accounts;
+
+    private Long from;
+
+    private Long to;
+
+    public GroupCommitterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(GroupCommitterTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        executor = Executors.newCachedThreadPool();
+        committer = new GroupCommitter(new EntryJpaController(database.getEntityManagerFactory()), executor, 10, 5L, 20);
+        accounts = new AccountJpaController(database.getEntityManagerFactory());
+        from = createAccount();
+        to = createAccount();
+    }
+
+    @Override
+    protected void tearDown() throws InterruptedException {
+        committer.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        database.close();
+    }
+
+    public void testTransfersAreBookedAndFailIndividually() throws Exception {
+        List<Future<Void>> booked = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 50; i++) {
+            booked.add(committer.submit(new Transfer(from, to, new Money("1.00", "EUR"))));
+        }
+        Future<Void> missing = committer.submit(new Transfer(from, Long.valueOf(-1L), new Money("1.00", "EUR")));
+        for (Future<Void> transfer : booked) {
+            transfer.get(10, TimeUnit.SECONDS);
+        }
+        try {
+            missing.get(10, TimeUnit.SECONDS);
+            fail("missing account expected");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof NonexistentEntityException);
+        }
+        assertEquals(new Money("-50.00", "EUR"), accounts.findAccount(from).getBalance());
+        assertEquals(new Money("50.00", "EUR"), accounts.findAccount(to).getBalance());
+    }
+
+    public void testSubmitRacingShutdownCompletes() throws Exception {
+        final List<Future<Void>> booked = new ArrayList<Future<Void>>();
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread submitter = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        Future<Void> transfer = committer.submit(new Transfer(from, to, new Money("1.00", "EUR")));
+                        synchronized (booked) {
+                            booked.add(transfer);
+                        }
+                        started.countDown();
+                    }
+                } catch (IllegalStateException shutDown) {
+                    // expected once the committer is shut down
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        submitter.start();
+        started.await();
+        committer.shutdown();
+        submitter.join();
+        synchronized (booked) {
+            for (Future<Void> transfer : booked) {
+                try {
+                    transfer.get(0, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException shutDown) {
+                    assertTrue(shutDown.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+    }
+
+    public void testCallersSaturatingTheContainerPoolDoNotStarveTheCollector() throws Exception {
+        // a container pool of three threads, one of them taken by the worker
+        ExecutorService container = Executors.newFixedThreadPool(3);
+        WorkerPool workers = new WorkerPool(1);
+        workers.start(container);
+        final GroupCommitter onWorkers = new GroupCommitter(new EntryJpaController(database.getEntityManagerFactory()), workers, 10, 5L, 20);
+        try {
+            // the other threads block on their transfers, as transferAsync does
+            List<Future<Void>> callers = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 4; i++) {
+                callers.add(container.submit(new Callable<Void>() {
+
+                    public Void call() throws Exception {
+                        return onWorkers.submit(new Transfer(from, to, new Money("1.00", "EUR"))).get(10, TimeUnit.SECONDS);
+                    }
+                }));
+            }
+            for (Future<Void> caller : callers) {
+                caller.get(20, TimeUnit.SECONDS);
+            }
+        } finally {
+            onWorkers.shutdown();
+            workers.shutdown();
+            container.shutdown();
+            container.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(new Money("-4.00", "EUR"), accounts.findAccount(from).getBalance());
+        assertNull(workers.getLastFailure());
+    }
+
+    private Long createAccount() {
+        Account account = new Account();
+        accounts.create(account);
+        return account.getId();
+    }
+}
@@ -0,0 +1,154 @@
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.concurrent.WorkerPool;
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.InMemoryDatabase;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded benchmark of the {@link PostingEngine}, against an embedded
+ * Derby database. Client threads post entries to random accounts and wait for
+ * all of them to be booked, once for every number of lanes; the lanes run on a
+ * {@link WorkerPool} as in the application. Prints the postings per second of
+ * every run.
+ * <p>
+ * Not a test; run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=de.exxcellent.enterprise.posting.PostingBenchmark \
+ *     -Dexec.args="[clients] [postings per client] [accounts] [lanes ...]"
+ * </pre>
+ */
+public final class PostingBenchmark {
+
+    private final int clients;
+
+    private final int postingsPerClient;
+
+    private final List<Long> accountIds = new ArrayList<Long>();
+
+    private PostingBenchmark(int clients, int postingsPerClient) {
+        this.clients = clients;
+        this.postingsPerClient = postingsPerClient;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0 ? Integer.parseInt(args[0]) : 16);
+        int postingsPerClient = (args.length > 1 ? Integer.parseInt(args[1]) : 500);
+        int accounts = (args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+        Set<Integer> lanes = new LinkedHashSet<Integer>();
+        for (int i = 3; i < args.length; i++) {
+            lanes.add(Integer.valueOf(args[i]));
+        }
+        if (lanes.isEmpty()) {
+            lanes.add(Integer.valueOf(1));
+            lanes.add(Integer.valueOf(2));
+            lanes.add(Integer.valueOf(4));
+            lanes.add(Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+        }
+        new PostingBenchmark(clients, postingsPerClient).run(accounts, lanes);
+    }
+
+    private void run(int accounts, Set<Integer> lanes) throws Exception {
+        InMemoryDatabase database = new InMemoryDatabase();
+        ExecutorService container = Executors.newCachedThreadPool();
+        try {
+            AccountJpaController controller = new AccountJpaController(database.getEntityManagerFactory());
+            for (int i = 0; i < accounts; i++) {
+                Account account = new Account();
+                controller.create(account);
+                accountIds.add(account.getId());
+            }
+            EntryJpaController entries = new EntryJpaController(database.getEntityManagerFactory());
+            System.out.printf("%d clients, %d postings each, %d accounts, %d cores%n", clients, postingsPerClient, accounts,
+                    Runtime.getRuntime().availableProcessors());
+            // warm up class loading and the JIT
+            measure(entries, container, 2, false);
+            for (Integer lane : lanes) {
+                measure(entries, container, lane.intValue(), true);
+            }
+        } finally {
+            container.shutdown();
+            container.awaitTermination(10, TimeUnit.SECONDS);
+            database.close();
+        }
+    }
+
+    /**
+     * Runs all clients against an engine with the given lanes and prints the
+     * result.
+     */
+    private void measure(EntryJpaController entries, ExecutorService container, int lanes, boolean print) throws Exception {
+        WorkerPool workers = new WorkerPool(lanes);
+        workers.start(container);
+        PostingEngine engine = new PostingEngine(entries, workers, lanes, PostingEngine.DEFAULT_QUEUE_CAPACITY);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int c = 0; c < clients; c++) {
+                results.add(pool.submit(client(engine, start, new Random(c))));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            int failed = 0;
+            for (Future<Integer> result : results) {
+                failed += result.get().intValue();
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (print) {
+                System.out.printf("%2d lanes %10.0f postings/s   failed %d%n", lanes, clients * postingsPerClient / (elapsed / 1e9), failed);
+            }
+        } finally {
+            pool.shutdown();
+            engine.shutdown();
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Posts all entries of one client, then waits for them to be booked.
+     *
+     * @return the number of postings that failed
+     */
+    private Callable<Integer> client(final PostingEngine engine, final CountDownLatch start, final Random random) {
+        return new Callable<Integer>() {
+
+            public Integer call() throws Exception {
+                List<Future<Long>> booked = new ArrayList<Future<Long>>(postingsPerClient);
+                start.await();
+                for (int i = 0; i < postingsPerClient; i++) {
+                    Entry entry = new Entry();
+                    entry.setEntryType(EntryType.CREDIT);
+                    entry.setMoney(new Money("1.00", "EUR"));
+                    booked.add(engine.post(accountIds.get(random.nextInt(accountIds.size())), entry));
+                }
+                int failed = 0;
+                for (Future<Long> id : booked) {
+                    try {
+                        id.get();
+                    } catch (ExecutionException e) {
+                        failed++;
+                    }
+                }
+                return Integer.valueOf(failed);
+            }
+        };
+    }
+}
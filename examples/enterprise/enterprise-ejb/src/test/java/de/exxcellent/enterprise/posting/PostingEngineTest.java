@@ -0,0 +1,172 @@
+package de.exxcellent.enterprise.posting;
+
+import de.exxcellent.enterprise.concurrent.WorkerPool;
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.InMemoryDatabase;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.Entry;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link PostingEngine}, on an in-memory database.
+ */
+public class PostingEngineTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private ExecutorService executor;
+
+    private PostingEngine engine;
+
+    private Long accountId;
+
+    public PostingEngineTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PostingEngineTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        executor = Executors.newCachedThreadPool();
+        engine = new PostingEngine(new EntryJpaController(database.getEntityManagerFactory()), executor, 2, 100);
+        Account account = new Account();
+        new AccountJpaController(database.getEntityManagerFactory()).create(account);
+        accountId = account.getId();
+    }
+
+    @Override
+    protected void tearDown() throws InterruptedException {
+        engine.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        database.close();
+    }
+
+    public void testPostingsAreBooked() throws Exception {
+        List<Future<Long>> booked = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 20; i++) {
+            booked.add(engine.post(accountId, entry("1.00")));
+        }
+        for (Future<Long> id : booked) {
+            assertNotNull(id.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(new Money("20.00", "EUR"), new AccountJpaController(database.getEntityManagerFactory()).findAccount(accountId).getBalance());
+    }
+
+    public void testPostingToMissingAccountFails() throws Exception {
+        try {
+            engine.post(Long.valueOf(-1L), entry("1.00")).get(10, TimeUnit.SECONDS);
+            fail("missing account expected");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof de.exxcellent.enterprise.dao.exceptions.NonexistentEntityException);
+        }
+    }
+
+    public void testPostingRacingShutdownCompletes() throws Exception {
+        final List<Future<Long>> booked = new ArrayList<Future<Long>>();
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread poster = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        Future<Long> id = engine.post(accountId, entry("1.00"));
+                        synchronized (booked) {
+                            booked.add(id);
+                        }
+                        started.countDown();
+                    }
+                } catch (IllegalStateException shutDown) {
+                    // expected once the engine is shut down
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        poster.start();
+        started.await();
+        engine.shutdown();
+        poster.join();
+        synchronized (booked) {
+            for (Future<Long> id : booked) {
+                try {
+                    id.get(0, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException shutDown) {
+                    assertTrue(shutDown.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+        try {
+            engine.post(accountId, entry("1.00"));
+            fail("shut down expected");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    public void testLanesOnWorkersLeaveTheContainerPoolFree() throws Exception {
+        // a container pool of three threads: two workers, one serving requests
+        ExecutorService container = Executors.newFixedThreadPool(3);
+        WorkerPool workers = new WorkerPool(2);
+        workers.start(container);
+        PostingEngine onWorkers = new PostingEngine(new EntryJpaController(database.getEntityManagerFactory()), workers, 2, 100);
+        final CountDownLatch served = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        Future<?> request = container.submit(new Runnable() {
+
+            public void run() {
+                served.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            assertTrue(served.await(10, TimeUnit.SECONDS));
+            Account other = new Account();
+            new AccountJpaController(database.getEntityManagerFactory()).create(other);
+            List<Future<Long>> booked = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 50; i++) {
+                booked.add(onWorkers.post(accountId, entry("1.00")));
+                booked.add(onWorkers.post(other.getId(), entry("1.00")));
+            }
+            for (Future<Long> id : booked) {
+                assertNotNull(id.get(10, TimeUnit.SECONDS));
+            }
+            assertFalse(request.isDone());
+        } finally {
+            released.countDown();
+            onWorkers.shutdown();
+            workers.shutdown();
+            container.shutdown();
+            container.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(new Money("50.00", "EUR"), new AccountJpaController(database.getEntityManagerFactory()).findAccount(accountId).getBalance());
+    }
+
+    private static Entry entry(String cash) {
+        Entry entry = new Entry();
+        entry.setEntryType(EntryType.CREDIT);
+        entry.setMoney(new Money(cash, "EUR"));
+        return entry;
+    }
+}
@@ -0,0 +1,150 @@
+package de.exxcellent.enterprise.service;
+
+import de.exxcellent.enterprise.dao.AccountJpaController;
+import de.exxcellent.enterprise.dao.EntryJpaController;
+import de.exxcellent.enterprise.dao.InMemoryDatabase;
+import de.exxcellent.enterprise.model.Account;
+import de.exxcellent.enterprise.model.EntryType;
+import de.exxcellent.enterprise.model.Money;
+import de.exxcellent.enterprise.posting.PostingEngine;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for {@link AccountingWebService}, on an in-memory database.
+ */
+public class AccountingWebServiceTest extends TestCase {
+
+    private InMemoryDatabase database;
+
+    private ExecutorService executor;
+
+    private PostingEngine engine;
+
+    private AccountingWebService service;
+
+    public AccountingWebServiceTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(AccountingWebServiceTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        database = new InMemoryDatabase();
+        executor = Executors.newCachedThreadPool();
+        engine = new PostingEngine(new EntryJpaController(database.getEntityManagerFactory()), executor);
+        service = new AccountingWebService(new AccountJpaController(database.getEntityManagerFactory()), engine);
+    }
+
+    @Override
+    protected void tearDown() throws InterruptedException {
+        engine.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        database.close();
+    }
+
+    public void testEveryEntryGetsItsOwnStatus() throws BatchLimitExceededException {
+        Long accountId = createAccounts(1).get(0);
+        EntryRequest missingAmount = request(accountId, "1.00", "EUR");
+        missingAmount.setAmount(null);
+        List<PostingResult> results = service.postEntries(Arrays.asList(request(accountId, "10.00", "EUR"),
+                request(Long.valueOf(4711L), "1.00", "EUR"), request(accountId, "1.00", "USD"), missingAmount));
+        assertEquals(4, results.size());
+        assertEquals(ItemStatus.OK, results.get(0).getStatus());
+        assertNotNull(results.get(0).getEntryId());
+        assertEquals(ItemStatus.NOT_FOUND, results.get(1).getStatus());
+        assertNull(results.get(1).getEntryId());
+        assertEquals(ItemStatus.INVALID, results.get(2).getStatus());
+        assertEquals(ItemStatus.INVALID, results.get(3).getStatus());
+
+        List<BalanceResult> balances = service.getBalances(Arrays.asList(accountId, Long.valueOf(4711L)));
+        assertEquals(ItemStatus.OK, balances.get(0).getStatus());
+        assertEquals(1, balances.get(0).getBalances().size());
+        assertEquals(new Money("10.00", "EUR"), toMoney(balances.get(0).getBalances().get(0)));
+        assertEquals(ItemStatus.NOT_FOUND, balances.get(1).getStatus());
+    }
+
+    public void testOversizedBatchIsRefused() {
+        Long accountId = Long.valueOf(1L);
+        List<EntryRequest> entries = new ArrayList<EntryRequest>(Collections.nCopies(AccountingWebService.MAX_BATCH_SIZE + 1,
+                request(accountId, "1.00", "EUR")));
+        try {
+            service.postEntries(entries);
+            fail("batch limit expected");
+        } catch (BatchLimitExceededException expected) {
+            // expected
+        }
+        try {
+            service.getBalances(Collections.nCopies(AccountingWebService.MAX_BATCH_SIZE + 1, accountId));
+            fail("batch limit expected");
+        } catch (BatchLimitExceededException expected) {
+            // expected
+        }
+    }
+
+    public void testPageIsCapped() {
+        createAccounts(AccountingWebService.MAX_BATCH_SIZE + 1);
+        AccountsPage first = service.getAccountsPage(null, AccountingWebService.MAX_BATCH_SIZE + 500);
+        assertEquals(AccountingWebService.MAX_BATCH_SIZE, first.getAccounts().size());
+        assertNotNull(first.getContinuationToken());
+        AccountsPage second = service.getAccountsPage(first.getContinuationToken(), AccountingWebService.MAX_BATCH_SIZE);
+        assertEquals(1, second.getAccounts().size());
+        assertEquals(AccountingWebService.MAX_BATCH_SIZE, service.getAccountsPage(null, 0).getAccounts().size());
+    }
+
+    /**
+     * Creates accounts in one transaction.
+     */
+    private List<Long> createAccounts(int count) {
+        List<Account> created = new ArrayList<Account>(count);
+        EntityManager em = database.getEntityManagerFactory().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < count; i++) {
+                Account account = new Account();
+                em.persist(account);
+                created.add(account);
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+        List<Long> ids = new ArrayList<Long>(count);
+        for (Account account : created) {
+            ids.add(account.getId());
+        }
+        return ids;
+    }
+
+    private static EntryRequest request(Long accountId, String value, String currency) {
+        Amount amount = new Amount();
+        amount.setValue(new BigDecimal(value));
+        amount.setCurrency(currency);
+        EntryRequest request = new EntryRequest();
+        request.setAccountId(accountId);
+        request.setEntryType(EntryType.CREDIT);
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static Money toMoney(Amount amount) {
+        return new Money(amount.getValue(), amount.getCurrency());
+    }
+}